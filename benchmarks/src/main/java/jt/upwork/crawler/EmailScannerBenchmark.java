@@ -0,0 +1,69 @@
+package jt.upwork.crawler;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Email search in the element texts of the pages: the former regular expression against the scanner
+ *
+ * @author jamestravol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailScannerBenchmark {
+
+    private static final Pattern singleEmailPattern = Pattern.compile("\\b[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,4}\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    // the own texts of all the elements, the way the extractors see them
+    private List<String> texts;
+
+    @Setup
+    public void setUp() {
+        texts = new ArrayList<>();
+        for (Page page : Fixtures.pages()) {
+            Jsoup.parse(page.getBody()).getAllElements().forEach(element -> texts.add(element.ownText()));
+        }
+    }
+
+    @Benchmark
+    public void regex(Blackhole blackhole) {
+        for (String text : texts) {
+            Matcher matcher = singleEmailPattern.matcher(text);
+            while (matcher.find()) {
+                blackhole.consume(matcher.group());
+            }
+        }
+    }
+
+    @Benchmark
+    public void scanner(Blackhole blackhole) {
+        for (String text : texts) {
+            for (long match = EmailScanner.find(text); match != EmailScanner.NOT_FOUND;
+                 match = EmailScanner.find(text, 0, EmailScanner.end(match), text.length())) {
+                blackhole.consume(text.substring(EmailScanner.start(match), EmailScanner.end(match)));
+            }
+        }
+    }
+
+}
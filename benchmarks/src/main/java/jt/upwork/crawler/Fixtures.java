@@ -0,0 +1,67 @@
+package jt.upwork.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The checked-in pages and the data made from them
+ *
+ * @author jamestravol
+ */
+final class Fixtures {
+
+    private static final String[] PAGES = {"contact.html", "shop.html", "blog.html", "messy.html"};
+
+    private static final String[] PATHS = {"contact", "about", "team", "impressum", "products", "blog", "news", "legal",
+            "privacy", "careers", "shop", "support", "faq", "Contact-Us", "ABOUT", "email-us", "kontakt", "partners"};
+
+    private Fixtures() {
+    }
+
+    static List<Page> pages() {
+        List<Page> pages = new ArrayList<>();
+        for (String name : PAGES) {
+            try (InputStream in = Fixtures.class.getResourceAsStream("/pages/" + name)) {
+                String html = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                pages.add(new Page(new URL("http://example.com/" + name), 200, "text/html", html));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * @param count amount of links
+     * @return links like the ones of a large site
+     */
+    static List<String> hrefs(int count) {
+        Random random = new Random(count);
+        List<String> hrefs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String path = PATHS[random.nextInt(PATHS.length)];
+            switch (random.nextInt(4)) {
+                case 0:
+                    hrefs.add("/" + path + "/" + i);
+                    break;
+                case 1:
+                    hrefs.add("//example.com/" + path + "?page=" + i);
+                    break;
+                case 2:
+                    hrefs.add("example.com/" + path + "/item-" + i + ".html");
+                    break;
+                default:
+                    hrefs.add("https://www.other-site.org/" + path + "#" + i);
+                    break;
+            }
+        }
+        return hrefs;
+    }
+
+}
@@ -0,0 +1,48 @@
+package jt.upwork.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranking of the page links
+ *
+ * @author jamestravol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkScorerBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private List<String> hrefs;
+    private LinkScorer scorer;
+
+    @Setup
+    public void setUp() {
+        hrefs = Fixtures.hrefs(size);
+        scorer = new LinkScorer(new CrawlerConfig().getLinkKeywords(), 2);
+    }
+
+    @Benchmark
+    public List<String> rank() {
+        return scorer.rank(hrefs);
+    }
+
+}
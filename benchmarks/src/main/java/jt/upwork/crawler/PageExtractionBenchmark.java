@@ -0,0 +1,58 @@
+package jt.upwork.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page parsing and extraction, one operation is one page
+ *
+ * @author jamestravol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageExtractionBenchmark {
+
+    private static final int PAGES = 4;
+
+    @Param({"DOM", "STREAMING"})
+    private ExtractionEngine engine;
+
+    private PageExtractor extractor;
+    private List<Page> pages;
+
+    @Setup
+    public void setUp() {
+        extractor = engine.extractor();
+        pages = Fixtures.pages();
+        if (pages.size() != PAGES) {
+            throw new IllegalStateException("Unexpected amount of pages " + pages.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGES)
+    public void extract(Blackhole blackhole) {
+        for (Page page : pages) {
+            blackhole.consume(extractor.extract(page));
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package jt.upwork.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.stream.Stream;
+
+/**
+ * The cost of the per page logging on the crawling threads, one operation is one page
+ *
+ * @author jamestravol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PageLoggingBenchmark {
+
+    private static final Logger DISABLED = Logger.getLogger("benchmark.disabled");
+    private static final Logger FILE = Logger.getLogger("benchmark.file");
+
+    private final String url = "http://example.com/contact";
+    private final List<String> emails = Arrays.asList("info@example.com", "sales@example.com");
+
+    private Path directory;
+    private FileHandler handler;
+    private PageEventLog eventLog;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DISABLED.setLevel(java.util.logging.Level.INFO);
+        DISABLED.setUseParentHandlers(false);
+        directory = Files.createTempDirectory("page-logging");
+        handler = new FileHandler(directory.resolve("jul.log").toString());
+        handler.setFormatter(new SimpleFormatter());
+        FILE.setUseParentHandlers(false);
+        FILE.addHandler(handler);
+        eventLog = new PageEventLog(directory.resolve("events.jsonl"), 65536);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FILE.removeHandler(handler);
+        handler.close();
+        eventLog.close();
+        System.out.printf("%nEvents written: %d, dropped: %d%n", eventLog.getWritten(), eventLog.getDropped());
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * The former way: the message is formatted even though the level is disabled
+     */
+    @Benchmark
+    public void eagerDisabled() {
+        DISABLED.fine(String.format("For url %s we got %s", url, emails));
+    }
+
+    @Benchmark
+    public void lazyDisabled() {
+        DISABLED.fine(() -> String.format("For url %s we got %s", url, emails));
+    }
+
+    /**
+     * The enabled java.util.logging record written to the file on the calling thread
+     */
+    @Benchmark
+    public void julFile() {
+        FILE.info(String.format("For url %s we got %s", url, emails));
+    }
+
+    @Benchmark
+    public void eventLog() {
+        eventLog.publish("1", url, 200, 12345, 50_000_000, 200_000, emails.size(), null);
+    }
+
+}
@@ -0,0 +1,82 @@
+package jt.upwork.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplication of the processed urls of a site by the concurrent tasks, one operation is one url
+ *
+ * @author jamestravol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ProcessedUrlsBenchmark {
+
+    private static final int URLS = 1000;
+
+    private List<URL> urls;
+
+    private ConcurrentMap<URL, Object> processedUrls;
+    private FingerprintSet processedFingerprints;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        URL root = UrlUtils.makeUrl("http://example.com/").get();
+        urls = new ArrayList<>(URLS);
+        // every url is seen a few times, like the links repeated on the pages.
+        // the crawler forms a new url object for every link, so are the copies here
+        for (String href : Fixtures.hrefs(URLS / 4)) {
+            String path = href.startsWith("/") ? href : "/" + href;
+            for (int i = 0; i < 4; i++) {
+                UrlUtils.makeUrl(root, path).ifPresent(urls::add);
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        processedUrls = new ConcurrentHashMap<>();
+        processedFingerprints = new FingerprintSet();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void putIfAbsent(Blackhole blackhole) {
+        for (URL url : urls) {
+            blackhole.consume(processedUrls.putIfAbsent(url, new Object()));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void fingerprint(Blackhole blackhole) {
+        for (URL url : urls) {
+            blackhole.consume(processedFingerprints.add(UrlUtils.fingerprint(url)));
+        }
+    }
+
+}
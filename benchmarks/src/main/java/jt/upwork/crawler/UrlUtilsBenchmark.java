@@ -0,0 +1,63 @@
+package jt.upwork.crawler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolution of the page links, one operation is one link
+ *
+ * @author jamestravol
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlUtilsBenchmark {
+
+    private static final int LINKS = 1000;
+
+    private URL root;
+    private List<String> hrefs;
+
+    @Setup
+    public void setUp() {
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.OFF);
+        root = UrlUtils.makeUrl("http://example.com/").get();
+        hrefs = Fixtures.hrefs(LINKS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void makeUrl(Blackhole blackhole) {
+        for (String href : hrefs) {
+            blackhole.consume(UrlUtils.makeUrl(root, href));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void resolveLink(Blackhole blackhole) {
+        for (String href : hrefs) {
+            blackhole.consume(UrlUtils.resolveLink(root, href));
+        }
+    }
+
+}
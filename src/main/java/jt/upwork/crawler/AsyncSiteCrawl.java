@@ -0,0 +1,151 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Crawling of a single website in the {@link ExecutionMode#ASYNC} mode.
+ * Downloads are started through the {@link Fetcher} without blocking,
+ * the downloaded pages are processed by the executor.
+ * The links to follow are chosen from the {@link SiteFrontier} of the whole website,
+ * the pages found in the sitemaps are requested before all of them.
+ *
+ * @author jamestravol
+ */
+final class AsyncSiteCrawl {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncSiteCrawl.class.getName());
+
+    private final SiteContext context;
+    private final Executor executor;
+    private final ExtractionCompleted callback;
+
+    private final SiteFrontier frontier = new SiteFrontier();
+    // the amount of the pages requested but not processed yet
+    private final AtomicInteger pending = new AtomicInteger();
+
+    AsyncSiteCrawl(SiteContext context, Executor executor, ExtractionCompleted callback) {
+        this.context = context;
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    void start() {
+        CompletableFuture<List<URL>> discovery = context.discoverPages();
+        if (discovery.isDone()) {
+            seed(discovery.join());
+        } else {
+            discovery.whenCompleteAsync((pages, throwable) ->
+                    seed(pages == null ? Collections.emptyList() : pages), executor);
+        }
+    }
+
+    /**
+     * Requests the pages found in the sitemaps before the root, the links are followed from all of them
+     */
+    private void seed(List<URL> pages) {
+        context.markProcessed(context.getRootDomain());
+        // the site is not completed by a fast page while the next ones are submitted
+        pending.incrementAndGet();
+        try {
+            for (URL url : pages) {
+                if (context.markProcessed(url) && !submit(url, 1)) {
+                    break;
+                }
+            }
+            submit(context.getRootDomain(), 0);
+        } finally {
+            if (pending.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+    }
+
+    /**
+     * @return false if the page is not requested, because the website is stopped
+     */
+    private boolean submit(URL url, int inheritance) {
+
+        if (!context.tryStartPage()) {
+            return false;
+        }
+
+        LOGGER.fine(() -> String.format("Processing the URL %s", url));
+
+        pending.incrementAndGet();
+
+        CompletableFuture<Page> future;
+        try {
+            // the download is aborted at the deadline of the site
+            future = context.fetch(url);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenCompleteAsync((page, throwable) -> {
+            try {
+                if (throwable != null) {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                    LOGGER.severe(String.format("Exception occurred during request to URL: %s. Message: %s", url, cause));
+                } else {
+                    context.pageFetched();
+                    process(page, inheritance);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.severe(String.format("Exception occurred during processing of URL: %s. Message: %s", url, e));
+            } finally {
+                // the best links of the site are requested before this page is counted as done
+                for (SiteFrontier.Link link : frontier.take()) {
+                    if (!submit(link.getUrl(), link.getDepth())) {
+                        break;
+                    }
+                }
+                if (pending.decrementAndGet() == 0) {
+                    complete();
+                }
+            }
+        }, executor);
+
+        return true;
+    }
+
+    private void process(Page page, int inheritance) {
+
+        PageContent content = context.extract(page);
+
+        context.addEmails(content.getEmails());
+
+        LOGGER.fine(() -> String.format("For url %s we got %s", page.getUrl(), content.getEmails()));
+
+        if (inheritance >= context.getMaxInheritance() || context.isStopped()) {
+            return;
+        }
+
+        for (String href : content.getHrefs()) {
+            final Optional<URL> urlOptional = context.resolveLink(href);
+            if (urlOptional.isPresent() && context.markProcessed(urlOptional.get())) {
+                frontier.add(urlOptional.get(), inheritance + 1, context.getScorer().score(href, inheritance + 1));
+            }
+        }
+
+        frontier.grant(context.getMaxLinksForPage());
+    }
+
+    private void complete() {
+        Set<String> emails = context.getEmails();
+        LOGGER.info(() -> String.format("Website %s completed. Pages fetched: %d, emails found: %d, " +
+                        "bytes received: %d, TLS handshakes: %d", context.getWebSite(), context.getFetchedPages(),
+                emails.size(), context.getWireBytes(), context.getHandshakes()));
+        callback.onComplete(context.getWebSite(), emails);
+    }
+
+}
@@ -0,0 +1,239 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive limit of the downloads in flight over all the hosts, the requests above the limit wait in the queue.
+ * <p>
+ * The limit is adjusted after every window of the completed downloads. The median latency of the window
+ * is compared to the baseline, the lowest median seen: while the latency stays within the tolerance
+ * the limit grows by its square root, a longer latency means the requests queue up somewhere on the way
+ * and the limit is scaled down by the ratio (the gradient). A window with more than the tenth of the downloads
+ * failed by the timeouts or the connection errors cuts the limit by the quarter.
+ * The limit grows only when it is used, so an idle crawler does not inflate it.
+ * <p>
+ * A host gets no more than the hostShare of the limit, so a single slow host does not take all of it.
+ *
+ * @author jamestravol
+ */
+final class ConcurrencyLimiter implements Fetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ConcurrencyLimiter.class.getName());
+
+    private static final int MIN_WINDOW = 10;
+    // the latency up to this times the baseline is not a sign of the overload
+    private static final double TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.5;
+    private static final double ERROR_RATE = 0.1;
+    private static final double ERROR_DECREASE = 0.75;
+    // the baseline follows the growing latency slowly, for the case the network got slower
+    private static final double BASELINE_DRIFT = 1.0 / 1024;
+
+    private final Fetcher fetcher;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double hostShare;
+
+    private final ArrayDeque<Request> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+
+    private LatencyHistogram window = new LatencyHistogram();
+    private int windowErrors;
+    private int windowMaxInFlight;
+    private double baselineMills = Double.NaN;
+
+    private final AtomicLong limitDecreases = new AtomicLong();
+
+    ConcurrencyLimiter(Fetcher fetcher, CrawlerConfig config) {
+        this.fetcher = fetcher;
+        this.minLimit = Math.max(1, config.getMinConcurrency());
+        this.maxLimit = Math.max(minLimit, config.getMaxConcurrency());
+        this.hostShare = config.getHostConcurrencyShare();
+        this.limit = minLimit;
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url) {
+        return fetch(url, Collections.emptyMap());
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url, Map<String, String> headers) {
+        return limit(new Request(url, headers, false));
+    }
+
+    @Override
+    public CompletableFuture<Page> fetchFile(URL url) {
+        return limit(new Request(url, Collections.emptyMap(), true));
+    }
+
+    private CompletableFuture<Page> limit(Request request) {
+        boolean start;
+        synchronized (this) {
+            start = inFlight < (int) limit;
+            if (start) {
+                started();
+            } else {
+                waiting.add(request);
+            }
+        }
+        if (start) {
+            start(request);
+        }
+        return request.result;
+    }
+
+    @Override
+    public void close() {
+        fetcher.close();
+    }
+
+    /**
+     * @return the current limit of the downloads in flight
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the limit of the downloads in flight to a host
+     */
+    synchronized int getHostLimit() {
+        return Math.max(1, (int) Math.ceil(limit * hostShare));
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the amount of the requests waiting for the limit
+     */
+    synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return the amount of the times the limit was cut for the errors
+     */
+    long getLimitDecreases() {
+        return limitDecreases.get();
+    }
+
+    private void started() {
+        inFlight++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+    }
+
+    private void start(Request request) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<Page> future;
+        try {
+            future = request.file ? fetcher.fetchFile(request.url) : fetcher.fetch(request.url, request.headers);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((page, throwable) -> {
+            completed(startNanos, throwable);
+            if (throwable != null) {
+                request.result.completeExceptionally(throwable);
+            } else {
+                request.result.complete(page);
+            }
+        });
+        // the caller gave up on the page, abort the download
+        CompletableFuture<Page> download = future;
+        request.result.whenComplete((page, throwable) -> {
+            if (throwable != null) {
+                download.cancel(true);
+            }
+        });
+    }
+
+    private void completed(long startNanos, Throwable throwable) {
+        List<Request> next = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (throwable == null) {
+                window.recordSince(startNanos);
+            } else if (!(unwrap(throwable) instanceof CancellationException)) {
+                windowErrors++;
+            }
+            if (window.getCount() + windowErrors >= Math.max(MIN_WINDOW, (int) limit)) {
+                adjust();
+            }
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                Request request = waiting.poll();
+                if (request.result.isDone()) {
+                    // cancelled or timed out while waiting
+                    continue;
+                }
+                started();
+                next.add(request);
+            }
+        }
+        next.forEach(this::start);
+    }
+
+    private void adjust() {
+        long samples = window.getCount();
+        double previous = limit;
+        if (windowErrors > ERROR_RATE * (samples + windowErrors)) {
+            limit = Math.max(minLimit, limit * ERROR_DECREASE);
+            limitDecreases.incrementAndGet();
+        } else if (samples > 0) {
+            double latency = window.getPercentileMills(0.5);
+            if (Double.isNaN(baselineMills) || latency < baselineMills) {
+                baselineMills = latency;
+            } else {
+                baselineMills += (latency - baselineMills) * BASELINE_DRIFT;
+            }
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * baselineMills / latency));
+            double target = limit * gradient;
+            if (windowMaxInFlight >= limit / 2) {
+                target += Math.sqrt(limit);
+            }
+            limit = target >= limit ? target : limit * (1 - SMOOTHING) + target * SMOOTHING;
+            limit = Math.max(minLimit, Math.min(maxLimit, limit));
+        }
+        if ((int) previous != (int) limit) {
+            LOGGER.fine(() -> String.format("Concurrency limit %d -> %d. Errors: %d of %d",
+                    (int) previous, (int) limit, windowErrors, samples + windowErrors));
+        }
+        window = new LatencyHistogram();
+        windowErrors = 0;
+        windowMaxInFlight = inFlight;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+    }
+
+    private static final class Request {
+
+        private final URL url;
+        private final Map<String, String> headers;
+        private final boolean file;
+        private final CompletableFuture<Page> result = new CompletableFuture<>();
+
+        private Request(URL url, Map<String, String> headers, boolean file) {
+            this.url = url;
+            this.headers = headers;
+            this.file = file;
+        }
+    }
+
+}
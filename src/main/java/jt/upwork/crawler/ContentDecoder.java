@@ -0,0 +1,184 @@
+package jt.upwork.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes the gzip or deflate Content-Encoding of a body chunk by chunk while it is downloaded,
+ * the compressed body is never held as a whole.
+ * <p>
+ * The gzip header is skipped as its bytes arrive, the trailer is ignored. The deflate body may be
+ * in the zlib format, like the standard says, or the raw one, like some servers send it: it is told
+ * by the first two bytes. The decoder holds the native memory of the inflater till it is closed.
+ *
+ * @author jamestravol
+ */
+final class ContentDecoder implements AutoCloseable {
+
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int GZIP_HEADER = 10;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final boolean gzip;
+    // the bytes before the compressed data, till its format is known
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    private final byte[] chunk = new byte[16 * 1024];
+    private Inflater inflater;
+
+    private ContentDecoder(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @param contentEncoding the Content-Encoding header, may be empty
+     * @return true if the body is plain or it can be decoded
+     */
+    static boolean isSupported(String contentEncoding) {
+        String encoding = normalize(contentEncoding);
+        return encoding.isEmpty() || encoding.equals("identity") || encoding.equals("gzip")
+                || encoding.equals("x-gzip") || encoding.equals("deflate");
+    }
+
+    /**
+     * @param contentEncoding the Content-Encoding header, may be empty
+     * @return the decoder or null if the body is plain or not supported
+     */
+    static ContentDecoder create(String contentEncoding) {
+        String encoding = normalize(contentEncoding);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new ContentDecoder(true);
+        }
+        if (encoding.equals("deflate")) {
+            return new ContentDecoder(false);
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the next chunk of the body, the inflating stops at the limit, so a small chunk of a compression bomb
+     * never expands in the memory
+     *
+     * @param buffer the compressed bytes, all of them are consumed
+     * @param out    receives the decoded bytes
+     * @param limit  max amount of the bytes written to out
+     * @return true if the decoded chunk is cut at the limit
+     * @throws ZipException if the body is broken
+     */
+    boolean decode(ByteBuffer buffer, ByteArrayOutputStream out, long limit) throws ZipException {
+        byte[] input = new byte[buffer.remaining()];
+        buffer.get(input);
+        int offset = 0;
+        if (inflater == null) {
+            header.write(input, 0, input.length);
+            byte[] bytes = header.toByteArray();
+            int length = gzip ? gzipHeaderLength(bytes) : deflateHeaderLength(bytes);
+            if (length < 0) {
+                return false;
+            }
+            // the header is skipped, the rest of the bytes is the compressed data
+            input = bytes;
+            offset = length;
+            inflater = new Inflater(gzip || !isZlib(bytes));
+            header.reset();
+        }
+        if (inflater.finished() || offset == input.length) {
+            return false;
+        }
+        inflater.setInput(input, offset, input.length - offset);
+        long remaining = limit;
+        try {
+            while (!inflater.finished()) {
+                // a byte over the limit tells the cut body from the body of exactly the limit size
+                int n = inflater.inflate(chunk, 0, (int) Math.min(chunk.length - 1, remaining) + 1);
+                if (n > remaining) {
+                    out.write(chunk, 0, (int) remaining);
+                    return true;
+                }
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(chunk, 0, n);
+                remaining -= n;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return the length of the gzip header or -1 if it is not complete yet
+     * @throws ZipException if it is not a gzip header
+     */
+    private static int gzipHeaderLength(byte[] bytes) throws ZipException {
+        if (bytes.length < GZIP_HEADER) {
+            return -1;
+        }
+        if ((bytes[0] & 0xff) != 0x1f || (bytes[1] & 0xff) != 0x8b || bytes[2] != 8) {
+            throw new ZipException("Not in the gzip format");
+        }
+        int flags = bytes[3] & 0xff;
+        int length = GZIP_HEADER;
+        if ((flags & FEXTRA) != 0) {
+            if (bytes.length < length + 2) {
+                return -1;
+            }
+            length += 2 + ((bytes[length] & 0xff) | (bytes[length + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            length = skipZeroTerminated(bytes, length);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            length = skipZeroTerminated(bytes, length);
+        }
+        if ((flags & FHCRC) != 0 && length >= 0) {
+            length += 2;
+        }
+        return length >= 0 && length <= bytes.length ? length : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int offset) {
+        if (offset < 0) {
+            return -1;
+        }
+        for (int i = offset; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 0 when the first two bytes are known, the format is told by them, or -1
+     */
+    private static int deflateHeaderLength(byte[] bytes) {
+        return bytes.length < 2 ? -1 : 0;
+    }
+
+    private static boolean isZlib(byte[] bytes) {
+        int cmf = bytes[0] & 0xff;
+        int flg = bytes[1] & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0;
+    }
+
+    private static String normalize(String contentEncoding) {
+        return contentEncoding == null ? "" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -1,5 +1,7 @@
 package jt.upwork.crawler;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
@@ -16,20 +18,54 @@ public final class Crawler implements AutoCloseable {
 
     private static final Logger LOGGER = Logger.getLogger(Crawler.class.getName());
 
+    private final CrawlerConfig config;
     private final int maxLinksForPage;
     private final int maxInheritance;
+    private final ExecutionMode executionMode;
+    private final HostScheduler fetcher;
+    // null if the downloads are not limited
+    private final ConcurrencyLimiter limiter;
+    private final HostHealth health;
+    private final PageExtractor extractor;
+    private final LinkScorer scorer;
+    private final ResponseCache cache;
     private final ForkJoinPool pool;
+    private final CrawlerMetrics metrics = new CrawlerMetrics();
+    // null if the page events are not logged
+    private final PageEventLog eventLog;
+
+    // the amount of websites which are not completed yet
+    private final Object activeSitesLock = new Object();
+    private int activeSites;
+    private long completedSites;
 
     public Crawler(int maxLinksForPage, int maxInheritance, int threadCount) {
-        this.maxLinksForPage = maxLinksForPage;
-        this.maxInheritance = maxInheritance;
-        this.pool = new ForkJoinPool(threadCount);
+        this(createConfig(maxLinksForPage, maxInheritance, threadCount));
     }
 
     public Crawler(int maxLinksForPage, int maxInheritance) {
-        this.maxLinksForPage = maxLinksForPage;
-        this.maxInheritance = maxInheritance;
-        this.pool = new ForkJoinPool();
+        this(createConfig(maxLinksForPage, maxInheritance, 0));
+    }
+
+    public Crawler(CrawlerConfig config) {
+        this(config, new HttpClientFetcher(config));
+    }
+
+    public Crawler(CrawlerConfig config, Fetcher fetcher) {
+        this.config = config;
+        this.maxLinksForPage = config.getMaxLinksForPage();
+        this.maxInheritance = config.getMaxInheritance();
+        this.executionMode = config.getExecutionMode();
+        this.limiter = config.getMaxConcurrency() > 0 ? new ConcurrencyLimiter(fetcher, config) : null;
+        // the dead hosts are checked when their requests leave the queue of the host, not taking the limit
+        this.health = new HostHealth(limiter == null ? fetcher : limiter, config);
+        this.fetcher = limiter == null ? new HostScheduler(health, config)
+                : new HostScheduler(health, config, limiter::getHostLimit);
+        this.extractor = config.getExtractionEngine().extractor();
+        this.scorer = new LinkScorer(config.getLinkKeywords(), config.getLinkDepthPenalty());
+        this.cache = createCache(config);
+        this.eventLog = createEventLog(config);
+        this.pool = config.getThreadsCount() == 0 ? new ForkJoinPool() : new ForkJoinPool(config.getThreadsCount());
     }
 
     /**
@@ -39,11 +75,51 @@ public final class Crawler implements AutoCloseable {
      * @param callback callback to process the result
      */
     public void crawl(WebSite webSite, ExtractionCompleted callback) {
-        pool.execute(new RootEmailExtractionTask(webSite, maxLinksForPage, maxInheritance, callback));
+        crawl(webSite, callback, null);
+    }
+
+    /**
+     * Crawl a single website streaming its emails
+     *
+     * @param webSite    website
+     * @param callback   callback to process the result
+     * @param emailFound callback for every new email of the website as soon as it is found, may be null
+     */
+    public void crawl(WebSite webSite, ExtractionCompleted callback, EmailFound emailFound) {
+
+        synchronized (activeSitesLock) {
+            activeSites++;
+        }
+
+        ExtractionCompleted tracking = (site, emails) -> {
+            try {
+                callback.onComplete(site, emails);
+            } catch (RuntimeException e) {
+                LOGGER.severe(String.format("Exception occurred in the callback for website %s. Message: %s", site, e));
+            } finally {
+                siteCompleted();
+            }
+        };
+
+        SiteContext context = new SiteContext(webSite, config, fetcher, extractor, scorer, cache, metrics,
+                eventLog, emailFound);
+
+        switch (executionMode) {
+            case ASYNC:
+                new AsyncSiteCrawl(context, pool, tracking).start();
+                break;
+            case FORK_JOIN:
+            case MANAGED_BLOCKER:
+                pool.execute(new RootEmailExtractionTask(context, executionMode == ExecutionMode.MANAGED_BLOCKER,
+                        tracking));
+                break;
+            default:
+                throw new IllegalStateException("Unknown execution mode " + executionMode);
+        }
     }
 
     public void crawl(List<WebSite> webSites, ExtractionCompleted callback) {
-        webSites.forEach(webSite -> pool.execute(new RootEmailExtractionTask(webSite, maxLinksForPage, maxInheritance, callback)));
+        webSites.forEach(webSite -> crawl(webSite, callback));
     }
 
     /**
@@ -54,18 +130,117 @@ public final class Crawler implements AutoCloseable {
      * @return true if process finished
      */
     public boolean await(long timeout, TimeUnit unit) {
-        return pool.awaitQuiescence(timeout, unit);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (activeSitesLock) {
+            while (activeSites > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(activeSitesLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void siteCompleted() {
+        metrics.siteCompleted();
+        synchronized (activeSitesLock) {
+            completedSites++;
+            if (--activeSites == 0) {
+                activeSitesLock.notifyAll();
+            }
+        }
     }
 
     @Override
     public void close() {
         pool.shutdown();
+        fetcher.close();
+        if (cache != null) {
+            cache.close();
+        }
+        if (eventLog != null) {
+            eventLog.close();
+        }
     }
 
     public ForkJoinPool getPool() {
         return pool;
     }
 
+    public CrawlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the amount of the requests which waited for their host
+     */
+    public long getDelayedRequests() {
+        return fetcher.getDelayedRequests();
+    }
+
+    /**
+     * @return the amount of the 429 and 503 responses
+     */
+    public long getRateLimitedResponses() {
+        return fetcher.getRateLimitedResponses();
+    }
+
+    /**
+     * @return the adaptive limit of the downloads in flight, 0 if the downloads are not limited
+     */
+    public int getConcurrencyLimit() {
+        return limiter == null ? 0 : limiter.getLimit();
+    }
+
+    /**
+     * @return the amount of the downloads in flight under the adaptive limit
+     */
+    public int getFetchesInFlight() {
+        return limiter == null ? 0 : limiter.getInFlight();
+    }
+
+    /**
+     * @return the amount of the host names looked up in the DNS
+     */
+    public long getDnsLookups() {
+        return health.getDnsLookups();
+    }
+
+    /**
+     * @return the amount of the host names found in the DNS cache
+     */
+    public long getDnsCacheHits() {
+        return health.getDnsCacheHits();
+    }
+
+    /**
+     * @return the amount of the downloads failed at once for the dead or unknown hosts
+     */
+    public long getFastFailures() {
+        return health.getFastFailures();
+    }
+
+    /**
+     * @return the amount of the hosts closed for the connection failures
+     */
+    public int getDeadHosts() {
+        return health.getDeadHosts();
+    }
+
+    /**
+     * @return the cache of the pages or null if the pages are not cached
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+
     public int getMaxLinksForPage() {
         return maxLinksForPage;
     }
@@ -74,4 +249,61 @@ public final class Crawler implements AutoCloseable {
         return maxInheritance;
     }
 
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * @return the amount of websites which are not completed yet
+     */
+    public int getActiveSites() {
+        synchronized (activeSitesLock) {
+            return activeSites;
+        }
+    }
+
+    /**
+     * @return the amount of websites completed since the start
+     */
+    public long getCompletedSites() {
+        synchronized (activeSitesLock) {
+            return completedSites;
+        }
+    }
+
+    private static ResponseCache createCache(CrawlerConfig config) {
+        if (config.getCacheDirectory() == null || config.getCacheDirectory().trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new ResponseCache(Paths.get(config.getCacheDirectory().trim()),
+                    config.getCacheMaxSizeMb() * 1024 * 1024);
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to open the response cache %s. Crawling without it. Message: %s",
+                    config.getCacheDirectory(), e));
+            return null;
+        }
+    }
+
+    private static PageEventLog createEventLog(CrawlerConfig config) {
+        if (config.getEventLogFile() == null || config.getEventLogFile().trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new PageEventLog(Paths.get(config.getEventLogFile().trim()), config.getEventLogBufferSize());
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to open the page event log %s. Crawling without it. Message: %s",
+                    config.getEventLogFile(), e));
+            return null;
+        }
+    }
+
+    private static CrawlerConfig createConfig(int maxLinksForPage, int maxInheritance, int threadCount) {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(maxLinksForPage);
+        config.setMaxInheritance(maxInheritance);
+        config.setThreadsCount(threadCount);
+        return config;
+    }
+
 }
@@ -0,0 +1,521 @@
+package jt.upwork.crawler;
+
+/**
+ * Crawler settings.
+ * A java bean, so it can be populated from the properties.
+ *
+ * @author jamestravol
+ */
+public final class CrawlerConfig {
+
+    private int maxLinksForPage = 5;
+    private int maxInheritance = 5;
+    private int threadsCount;
+    private int maxPagesPerSite = 500;
+    private long siteTimeoutMills = 120_000;
+    private int maxEmailsPerSite;
+    private int maxEmailsLength;
+
+    private ExecutionMode executionMode = ExecutionMode.ASYNC;
+    private ExtractionEngine extractionEngine = ExtractionEngine.STREAMING;
+
+    private String linkKeywords = LinkScorer.DEFAULT_KEYWORDS;
+    private int linkDepthPenalty = 2;
+
+    private boolean sitemapDiscovery;
+    private int sitemapMaxPages = 5;
+    private int sitemapMaxFiles = 4;
+    private int sitemapMaxUrls = 50_000;
+    private long sitemapMaxBytes = 10 * 1024 * 1024;
+
+    private int hostMaxConcurrency = 2;
+    private long hostMinDelayMills = 100;
+    private int rateLimitRetries = 2;
+    private long rateLimitBackoffMills = 1_000;
+
+    private int minConcurrency = 4;
+    private int maxConcurrency;
+    private double hostConcurrencyShare = 0.5;
+
+    private long dnsCacheTtlMills = 300_000;
+    private long dnsNegativeTtlMills = 60_000;
+    private int dnsThreads = 8;
+    private int hostFailureThreshold = 3;
+    private long hostOpenMills = 60_000;
+
+    private String cacheDirectory;
+    private long cacheMaxSizeMb = 1024;
+
+    private String eventLogFile;
+    private int eventLogBufferSize = 65536;
+
+    private long maxBodyBytes = 2 * 1024 * 1024;
+    private String allowedContentTypes = FetchPolicy.DEFAULT_CONTENT_TYPES;
+    private String skippedExtensions = FetchPolicy.DEFAULT_SKIPPED_EXTENSIONS;
+
+    private long connectTimeoutMills = 10_000;
+    private long requestTimeoutMills = 30_000;
+    private String userAgent = HttpClientFetcher.DEFAULT_USER_AGENT;
+    private boolean httpCompression = true;
+    private boolean http2;
+
+    public int getMaxLinksForPage() {
+        return maxLinksForPage;
+    }
+
+    public void setMaxLinksForPage(int maxLinksForPage) {
+        this.maxLinksForPage = maxLinksForPage;
+    }
+
+    public int getMaxInheritance() {
+        return maxInheritance;
+    }
+
+    public void setMaxInheritance(int maxInheritance) {
+        this.maxInheritance = maxInheritance;
+    }
+
+    /**
+     * @return the parallelism of the processing pool, 0 means the default one
+     */
+    public int getThreadsCount() {
+        return threadsCount;
+    }
+
+    public void setThreadsCount(int threadsCount) {
+        this.threadsCount = threadsCount;
+    }
+
+    /**
+     * @return the amount of the pages requested from a website, 0 means no limit
+     */
+    public int getMaxPagesPerSite() {
+        return maxPagesPerSite;
+    }
+
+    public void setMaxPagesPerSite(int maxPagesPerSite) {
+        this.maxPagesPerSite = maxPagesPerSite;
+    }
+
+    /**
+     * @return the time a website is crawled, the partial result is taken after it. 0 means no limit
+     */
+    public long getSiteTimeoutMills() {
+        return siteTimeoutMills;
+    }
+
+    public void setSiteTimeoutMills(long siteTimeoutMills) {
+        this.siteTimeoutMills = siteTimeoutMills;
+    }
+
+    /**
+     * @return the amount of the distinct emails a website is crawled for, 0 means no limit
+     */
+    public int getMaxEmailsPerSite() {
+        return maxEmailsPerSite;
+    }
+
+    public void setMaxEmailsPerSite(int maxEmailsPerSite) {
+        this.maxEmailsPerSite = maxEmailsPerSite;
+    }
+
+    /**
+     * @return the length of the comma separated emails a website is crawled for, 0 means no limit
+     */
+    public int getMaxEmailsLength() {
+        return maxEmailsLength;
+    }
+
+    public void setMaxEmailsLength(int maxEmailsLength) {
+        this.maxEmailsLength = maxEmailsLength;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public ExtractionEngine getExtractionEngine() {
+        return extractionEngine;
+    }
+
+    public void setExtractionEngine(ExtractionEngine extractionEngine) {
+        this.extractionEngine = extractionEngine;
+    }
+
+    /**
+     * @return comma separated keywords with the weights for the link scoring, like "contact:10,about:5"
+     */
+    public String getLinkKeywords() {
+        return linkKeywords;
+    }
+
+    public void setLinkKeywords(String linkKeywords) {
+        this.linkKeywords = linkKeywords;
+    }
+
+    /**
+     * @return the link score taken for every level of the inheritance
+     */
+    public int getLinkDepthPenalty() {
+        return linkDepthPenalty;
+    }
+
+    public void setLinkDepthPenalty(int linkDepthPenalty) {
+        this.linkDepthPenalty = linkDepthPenalty;
+    }
+
+    /**
+     * @return true if the sitemaps of the website listed in its robots.txt are scanned for the pages to fetch first
+     */
+    public boolean isSitemapDiscovery() {
+        return sitemapDiscovery;
+    }
+
+    public void setSitemapDiscovery(boolean sitemapDiscovery) {
+        this.sitemapDiscovery = sitemapDiscovery;
+    }
+
+    /**
+     * @return max amount of the best scored pages of the sitemaps fetched first
+     */
+    public int getSitemapMaxPages() {
+        return sitemapMaxPages;
+    }
+
+    public void setSitemapMaxPages(int sitemapMaxPages) {
+        this.sitemapMaxPages = sitemapMaxPages;
+    }
+
+    /**
+     * @return max amount of the sitemaps and the sitemap indexes downloaded for a website
+     */
+    public int getSitemapMaxFiles() {
+        return sitemapMaxFiles;
+    }
+
+    public void setSitemapMaxFiles(int sitemapMaxFiles) {
+        this.sitemapMaxFiles = sitemapMaxFiles;
+    }
+
+    /**
+     * @return max amount of the urls scanned in the sitemaps of a website
+     */
+    public int getSitemapMaxUrls() {
+        return sitemapMaxUrls;
+    }
+
+    public void setSitemapMaxUrls(int sitemapMaxUrls) {
+        this.sitemapMaxUrls = sitemapMaxUrls;
+    }
+
+    /**
+     * @return max size of a robots.txt or a sitemap, both downloaded and unpacked
+     */
+    public long getSitemapMaxBytes() {
+        return sitemapMaxBytes;
+    }
+
+    public void setSitemapMaxBytes(long sitemapMaxBytes) {
+        this.sitemapMaxBytes = sitemapMaxBytes;
+    }
+
+    /**
+     * @return the amount of the parallel requests to a host, 0 means no limit
+     */
+    public int getHostMaxConcurrency() {
+        return hostMaxConcurrency;
+    }
+
+    public void setHostMaxConcurrency(int hostMaxConcurrency) {
+        this.hostMaxConcurrency = hostMaxConcurrency;
+    }
+
+    /**
+     * @return the minimal delay between the starts of the requests to a host
+     */
+    public long getHostMinDelayMills() {
+        return hostMinDelayMills;
+    }
+
+    public void setHostMinDelayMills(long hostMinDelayMills) {
+        this.hostMinDelayMills = hostMinDelayMills;
+    }
+
+    /**
+     * @return the amount of the repeats of a request answered with 429 or 503
+     */
+    public int getRateLimitRetries() {
+        return rateLimitRetries;
+    }
+
+    public void setRateLimitRetries(int rateLimitRetries) {
+        this.rateLimitRetries = rateLimitRetries;
+    }
+
+    /**
+     * @return the pause of a host after the first 429 or 503 response, doubles with every next one
+     */
+    public long getRateLimitBackoffMills() {
+        return rateLimitBackoffMills;
+    }
+
+    public void setRateLimitBackoffMills(long rateLimitBackoffMills) {
+        this.rateLimitBackoffMills = rateLimitBackoffMills;
+    }
+
+    /**
+     * @return the lower bound of the adaptive limit of the downloads in flight
+     */
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public void setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = minConcurrency;
+    }
+
+    /**
+     * @return the upper bound of the adaptive limit of the downloads in flight, 0 means the downloads are not limited
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return the part of the adaptive limit of the downloads in flight a host may take
+     */
+    public double getHostConcurrencyShare() {
+        return hostConcurrencyShare;
+    }
+
+    public void setHostConcurrencyShare(double hostConcurrencyShare) {
+        this.hostConcurrencyShare = hostConcurrencyShare;
+    }
+
+    /**
+     * @return the time a resolved host name is cached
+     */
+    public long getDnsCacheTtlMills() {
+        return dnsCacheTtlMills;
+    }
+
+    public void setDnsCacheTtlMills(long dnsCacheTtlMills) {
+        this.dnsCacheTtlMills = dnsCacheTtlMills;
+    }
+
+    /**
+     * @return the time an unknown host name is cached
+     */
+    public long getDnsNegativeTtlMills() {
+        return dnsNegativeTtlMills;
+    }
+
+    public void setDnsNegativeTtlMills(long dnsNegativeTtlMills) {
+        this.dnsNegativeTtlMills = dnsNegativeTtlMills;
+    }
+
+    /**
+     * @return the amount of the threads resolving the host names
+     */
+    public int getDnsThreads() {
+        return dnsThreads;
+    }
+
+    public void setDnsThreads(int dnsThreads) {
+        this.dnsThreads = dnsThreads;
+    }
+
+    /**
+     * @return the amount of the connection failures in a row closing the host, 0 means the hosts are never closed
+     */
+    public int getHostFailureThreshold() {
+        return hostFailureThreshold;
+    }
+
+    public void setHostFailureThreshold(int hostFailureThreshold) {
+        this.hostFailureThreshold = hostFailureThreshold;
+    }
+
+    /**
+     * @return the time the failed host is closed for, doubles with every failed probe
+     */
+    public long getHostOpenMills() {
+        return hostOpenMills;
+    }
+
+    public void setHostOpenMills(long hostOpenMills) {
+        this.hostOpenMills = hostOpenMills;
+    }
+
+    /**
+     * @return the directory of the persistent cache of the pages, the pages are not cached if it is empty
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public long getCacheMaxSizeMb() {
+        return cacheMaxSizeMb;
+    }
+
+    public void setCacheMaxSizeMb(long cacheMaxSizeMb) {
+        this.cacheMaxSizeMb = cacheMaxSizeMb;
+    }
+
+    /**
+     * @return the file of the page events, the events are not logged if it is empty
+     */
+    public String getEventLogFile() {
+        return eventLogFile;
+    }
+
+    public void setEventLogFile(String eventLogFile) {
+        this.eventLogFile = eventLogFile;
+    }
+
+    public int getEventLogBufferSize() {
+        return eventLogBufferSize;
+    }
+
+    public void setEventLogBufferSize(int eventLogBufferSize) {
+        this.eventLogBufferSize = eventLogBufferSize;
+    }
+
+    /**
+     * @return the max amount of the body bytes read, the rest of the body is not downloaded. 0 means no limit
+     */
+    public long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public void setMaxBodyBytes(long maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * @return comma separated media types, like "text/html,text/*", the bodies of the others are not read.
+     * Empty means any
+     */
+    public String getAllowedContentTypes() {
+        return allowedContentTypes;
+    }
+
+    public void setAllowedContentTypes(String allowedContentTypes) {
+        this.allowedContentTypes = allowedContentTypes;
+    }
+
+    /**
+     * @return comma separated file extensions, the links to such files are not followed
+     */
+    public String getSkippedExtensions() {
+        return skippedExtensions;
+    }
+
+    public void setSkippedExtensions(String skippedExtensions) {
+        this.skippedExtensions = skippedExtensions;
+    }
+
+    public long getConnectTimeoutMills() {
+        return connectTimeoutMills;
+    }
+
+    public void setConnectTimeoutMills(long connectTimeoutMills) {
+        this.connectTimeoutMills = connectTimeoutMills;
+    }
+
+    public long getRequestTimeoutMills() {
+        return requestTimeoutMills;
+    }
+
+    public void setRequestTimeoutMills(long requestTimeoutMills) {
+        this.requestTimeoutMills = requestTimeoutMills;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * @return true if the bodies are asked for compressed by gzip or deflate
+     */
+    public boolean isHttpCompression() {
+        return httpCompression;
+    }
+
+    public void setHttpCompression(boolean httpCompression) {
+        this.httpCompression = httpCompression;
+    }
+
+    /**
+     * @return true if HTTP/2 is used with the hosts supporting it, the pages of a host share a single connection then
+     */
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlerConfig{" +
+                "maxLinksForPage=" + maxLinksForPage +
+                ", maxInheritance=" + maxInheritance +
+                ", threadsCount=" + threadsCount +
+                ", maxPagesPerSite=" + maxPagesPerSite +
+                ", siteTimeoutMills=" + siteTimeoutMills +
+                ", maxEmailsPerSite=" + maxEmailsPerSite +
+                ", maxEmailsLength=" + maxEmailsLength +
+                ", executionMode=" + executionMode +
+                ", extractionEngine=" + extractionEngine +
+                ", linkKeywords='" + linkKeywords + '\'' +
+                ", linkDepthPenalty=" + linkDepthPenalty +
+                ", sitemapDiscovery=" + sitemapDiscovery +
+                ", sitemapMaxPages=" + sitemapMaxPages +
+                ", sitemapMaxFiles=" + sitemapMaxFiles +
+                ", sitemapMaxUrls=" + sitemapMaxUrls +
+                ", sitemapMaxBytes=" + sitemapMaxBytes +
+                ", hostMaxConcurrency=" + hostMaxConcurrency +
+                ", hostMinDelayMills=" + hostMinDelayMills +
+                ", rateLimitRetries=" + rateLimitRetries +
+                ", rateLimitBackoffMills=" + rateLimitBackoffMills +
+                ", minConcurrency=" + minConcurrency +
+                ", maxConcurrency=" + maxConcurrency +
+                ", hostConcurrencyShare=" + hostConcurrencyShare +
+                ", dnsCacheTtlMills=" + dnsCacheTtlMills +
+                ", dnsNegativeTtlMills=" + dnsNegativeTtlMills +
+                ", dnsThreads=" + dnsThreads +
+                ", hostFailureThreshold=" + hostFailureThreshold +
+                ", hostOpenMills=" + hostOpenMills +
+                ", cacheDirectory='" + cacheDirectory + '\'' +
+                ", cacheMaxSizeMb=" + cacheMaxSizeMb +
+                ", eventLogFile='" + eventLogFile + '\'' +
+                ", eventLogBufferSize=" + eventLogBufferSize +
+                ", maxBodyBytes=" + maxBodyBytes +
+                ", allowedContentTypes='" + allowedContentTypes + '\'' +
+                ", skippedExtensions='" + skippedExtensions + '\'' +
+                ", connectTimeoutMills=" + connectTimeoutMills +
+                ", requestTimeoutMills=" + requestTimeoutMills +
+                ", userAgent='" + userAgent + '\'' +
+                ", httpCompression=" + httpCompression +
+                ", http2=" + http2 +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package jt.upwork.crawler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and the latencies of the crawler hot paths, updated by the crawling threads without locking
+ *
+ * @author jamestravol
+ */
+public final class CrawlerMetrics {
+
+    private final long startNanos = System.nanoTime();
+
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+    private final LatencyHistogram extractLatency = new LatencyHistogram();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder http2Pages = new LongAdder();
+    private final LongAdder sites = new LongAdder();
+    private final LongAdder skippedLinks = new LongAdder();
+    private final LongAdder sitemapFiles = new LongAdder();
+    private final LongAdder sitemapPages = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void pageFetched(Page page, long startNanos) {
+        fetchLatency.recordSince(startNanos);
+        pages.increment();
+        bytes.add(page.getBody().length());
+        transferred(page);
+        if (page.getStatusCode() >= 400) {
+            error("HTTP " + page.getStatusCode() / 100 + "xx");
+        }
+    }
+
+    void transferred(Page page) {
+        wireBytes.add(page.getWireBytes());
+        handshakes.add(page.getHandshakes());
+        if (page.isHttp2()) {
+            http2Pages.increment();
+        }
+    }
+
+    /**
+     * @return the name of the failure
+     */
+    String fetchFailed(Throwable throwable, long startNanos) {
+        fetchLatency.recordSince(startNanos);
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        String type = cause.getClass().getSimpleName();
+        error(type);
+        return type;
+    }
+
+    void pageExtracted(long startNanos) {
+        extractLatency.recordSince(startNanos);
+    }
+
+    void linkSkipped() {
+        skippedLinks.increment();
+    }
+
+    void pagesDiscovered(int files, int pages) {
+        sitemapFiles.add(files);
+        sitemapPages.add(pages);
+    }
+
+    void siteCompleted() {
+        sites.increment();
+    }
+
+    private void error(String type) {
+        errors.computeIfAbsent(type, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return the latency of the downloads including the waiting for the host
+     */
+    public LatencyHistogram getFetchLatency() {
+        return fetchLatency;
+    }
+
+    /**
+     * @return the latency of the parsing of the pages and the extracting of the emails and the links
+     */
+    public LatencyHistogram getExtractLatency() {
+        return extractLatency;
+    }
+
+    /**
+     * @return the amount of the pages downloaded, the not modified ones included
+     */
+    public long getPages() {
+        return pages.sum();
+    }
+
+    /**
+     * @return the amount of the characters of the downloaded bodies
+     */
+    public long getBytesDownloaded() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the amount of the bytes of the bodies received, compressed
+     */
+    public long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    /**
+     * @return the amount of the TLS handshakes of the downloads
+     */
+    public long getHandshakes() {
+        return handshakes.sum();
+    }
+
+    /**
+     * @return the amount of the pages received over HTTP/2
+     */
+    public long getHttp2Pages() {
+        return http2Pages.sum();
+    }
+
+    public long getSites() {
+        return sites.sum();
+    }
+
+    /**
+     * @return the amount of the links not followed for their file extension
+     */
+    public long getSkippedLinks() {
+        return skippedLinks.sum();
+    }
+
+    /**
+     * @return the amount of the sitemaps downloaded
+     */
+    public long getSitemapFiles() {
+        return sitemapFiles.sum();
+    }
+
+    /**
+     * @return the amount of the pages of the sitemaps fetched first
+     */
+    public long getSitemapPages() {
+        return sitemapPages.sum();
+    }
+
+    public double getPagesPerSecond() {
+        return perSecond(getPages());
+    }
+
+    public double getSitesPerSecond() {
+        return perSecond(getSites());
+    }
+
+    /**
+     * @return the amount of the failed downloads by the exception name or the http status class
+     */
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<>();
+        errors.forEach((type, count) -> result.put(type, count.sum()));
+        return result;
+    }
+
+    private double perSecond(long count) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0;
+    }
+
+}
@@ -0,0 +1,65 @@
+package jt.upwork.crawler;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Extracts emails and links from a page using the Jsoup document
+ *
+ * @author jamestravol
+ */
+public final class DomPageExtractor implements PageExtractor {
+
+    private static final Logger LOGGER = Logger.getLogger(DomPageExtractor.class.getName());
+
+    static final DomPageExtractor INSTANCE = new DomPageExtractor();
+
+    private DomPageExtractor() {
+    }
+
+    @Override
+    public PageContent extract(Page page) {
+        // keep the order
+        Set<String> emails = new LinkedHashSet<>();
+        List<String> hrefs = new ArrayList<>();
+
+        Document document = Jsoup.parse(page.getBody(), page.getUrl().toString());
+
+        for (Element link : document.select("a[href]")) {
+            String href = link.attr("href");
+            // we check mailto for each link
+            if (href.startsWith("mailto:")) {
+                for (long match = EmailScanner.find(href); match != EmailScanner.NOT_FOUND;
+                     match = EmailScanner.find(href, 0, EmailScanner.end(match), href.length())) {
+                    String email = href.substring(EmailScanner.start(match), EmailScanner.end(match));
+                    LOGGER.fine(() -> String.format("Got email %s from 'mailto' tag", email));
+                    emails.add(email);
+                }
+            } else {
+                hrefs.add(href);
+            }
+        }
+
+        for (Element element : document.getAllElements()) {
+
+            String text = element.ownText().trim();
+
+            for (long match = EmailScanner.find(text); match != EmailScanner.NOT_FOUND;
+                 match = EmailScanner.find(text, 0, EmailScanner.end(match), text.length())) {
+                String email = text.substring(EmailScanner.start(match), EmailScanner.end(match));
+                LOGGER.fine(() -> String.format("Got email %s from the text", email));
+                emails.add(email);
+            }
+        }
+
+        return new PageContent(emails, hrefs);
+    }
+
+}
@@ -0,0 +1,168 @@
+package jt.upwork.crawler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Crawls the websites of the same canonical host once. The income table repeats the hosts: the "www." variants,
+ * the http and https ones, the different paths. The first website of the host is crawled, the next ones
+ * read while it is crawled wait for it and get its emails with their own ids.
+ * <p>
+ * The emails of the crawled hosts may be kept for cacheMills, the websites of a host crawled recently
+ * get them at once. The cache holds no more than cacheSize hosts, the least recently used ones are dropped first.
+ *
+ * @author jamestravol
+ */
+public final class DomainDeduplicator {
+
+    private static final Logger LOGGER = Logger.getLogger(DomainDeduplicator.class.getName());
+
+    private final Crawler crawler;
+    private final long cacheNanos;
+    private final int cacheSize;
+
+    // the hosts being crawled with the websites waiting for them
+    private final Map<String, List<Member>> crawling = new HashMap<>();
+    // the emails of the crawled hosts in the order of the access, a host served by them is kept longer
+    private final LinkedHashMap<String, Result> results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private long joinedSites;
+    private long cachedSites;
+
+    /**
+     * @param crawler    crawler
+     * @param cacheMills the time the emails of a crawled host are kept, 0 means they are not kept
+     * @param cacheSize  max amount of the hosts kept
+     */
+    public DomainDeduplicator(Crawler crawler, long cacheMills, int cacheSize) {
+        this.crawler = crawler;
+        this.cacheNanos = TimeUnit.MILLISECONDS.toNanos(cacheMills);
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Serves the website by the crawl of its host in progress or by the kept emails of the host
+     *
+     * @param webSite  website
+     * @param callback called with the emails of the host, at once if they are kept
+     * @return false if the host is neither crawled nor kept, the website must be crawled
+     */
+    public boolean join(WebSite webSite, ExtractionCompleted callback) {
+        String host = UrlUtils.canonicalHost(webSite.getUrl());
+        Set<String> emails;
+        synchronized (this) {
+            List<Member> members = crawling.get(host);
+            if (members != null) {
+                members.add(new Member(webSite, callback));
+                joinedSites++;
+                return true;
+            }
+            Result result = results.get(host);
+            if (result == null) {
+                return false;
+            }
+            if (System.nanoTime() - result.expiresNanos >= 0) {
+                results.remove(host);
+                return false;
+            }
+            emails = result.emails;
+            cachedSites++;
+        }
+        LOGGER.fine(() -> String.format("Website %s is served by the kept emails of %s", webSite, host));
+        callback.onComplete(webSite, emails);
+        return true;
+    }
+
+    /**
+     * Crawls the website for its host, the websites of the host joined meanwhile get the same emails
+     *
+     * @param webSite  website
+     * @param callback callback to process the result
+     */
+    public void crawl(WebSite webSite, ExtractionCompleted callback) {
+        String host = UrlUtils.canonicalHost(webSite.getUrl());
+        synchronized (this) {
+            List<Member> members = crawling.get(host);
+            if (members != null) {
+                members.add(new Member(webSite, callback));
+                joinedSites++;
+                return;
+            }
+            crawling.put(host, new ArrayList<>());
+        }
+        crawler.crawl(webSite, (site, emails) -> completed(host, site, emails, callback));
+    }
+
+    /**
+     * @return the amount of the websites which got the emails of the crawl of their host in progress
+     */
+    public synchronized long getJoinedSites() {
+        return joinedSites;
+    }
+
+    /**
+     * @return the amount of the websites which got the kept emails of their host
+     */
+    public synchronized long getCachedSites() {
+        return cachedSites;
+    }
+
+    private void completed(String host, WebSite webSite, Set<String> found, ExtractionCompleted callback) {
+        Set<String> emails = Collections.unmodifiableSet(new LinkedHashSet<>(found));
+        List<Member> members;
+        synchronized (this) {
+            members = crawling.remove(host);
+            if (cacheNanos > 0) {
+                results.put(host, new Result(emails, System.nanoTime() + cacheNanos));
+            }
+        }
+        try {
+            callback.onComplete(webSite, emails);
+        } finally {
+            for (Member member : members) {
+                try {
+                    member.callback.onComplete(member.webSite, emails);
+                } catch (RuntimeException e) {
+                    LOGGER.severe(String.format("Exception occurred in the callback for website %s. Message: %s",
+                            member.webSite, e));
+                }
+            }
+        }
+    }
+
+    private static final class Member {
+
+        private final WebSite webSite;
+        private final ExtractionCompleted callback;
+
+        private Member(WebSite webSite, ExtractionCompleted callback) {
+            this.webSite = webSite;
+            this.callback = callback;
+        }
+    }
+
+    private static final class Result {
+
+        private final Set<String> emails;
+        private final long expiresNanos;
+
+        private Result(Set<String> emails, long expiresNanos) {
+            this.emails = emails;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+}
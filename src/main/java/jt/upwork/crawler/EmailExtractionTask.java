@@ -1,164 +1,152 @@
 package jt.upwork.crawler;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-
-import java.io.IOException;
 import java.net.URL;
-import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * A task for processing a sublink.
  *
  * @author jamestravol
  */
-public class EmailExtractionTask extends RecursiveTask<Set<String>> {
+public class EmailExtractionTask extends RecursiveAction {
 
     private static final Logger LOGGER = Logger.getLogger(EmailExtractionTask.class.getName());
 
-    private static final Pattern singleEmailPattern = Pattern.compile("\\b[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,4}\\b",
-            Pattern.CASE_INSENSITIVE);
-
-    private final URL rootDomain;
+    private final SiteContext context;
     private final URL fullLink;
     private final int currentInheritance;
-    private final int maxLinksForPage;
-    private final int maxInheritance;
-    private final ConcurrentMap<URL, Object> processedUrls;
+    private final boolean managedBlocking;
 
-    public EmailExtractionTask(URL rootDomain, URL fullLink, int currentInheritance, int maxLinksForPage, int maxInheritance) {
-        this(rootDomain, fullLink, currentInheritance, maxLinksForPage, maxInheritance, new ConcurrentHashMap<>());
-    }
-
-    private EmailExtractionTask(URL rootDomain, URL fullLink, int currentInheritance, int maxLinksForPage, int maxInheritance,
-                                ConcurrentMap<URL, Object> processedUrls) {
-        this.rootDomain = rootDomain;
+    EmailExtractionTask(SiteContext context, URL fullLink, int currentInheritance, boolean managedBlocking) {
+        this.context = context;
         this.fullLink = fullLink;
         this.currentInheritance = currentInheritance;
-        this.maxLinksForPage = maxLinksForPage;
-        this.maxInheritance = maxInheritance;
-        this.processedUrls = processedUrls;
+        this.managedBlocking = managedBlocking;
     }
 
     @Override
-    protected Set<String> compute() {
+    protected void compute() {
         try {
-            return computeInternal();
-        } catch (IOException | RuntimeException e) {
-            LOGGER.severe(String.format("Exception occurred during request to URL: %s. Message: %s", fullLink, e));
-            return Collections.emptySet();
+            computeInternal();
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            LOGGER.severe(String.format("Exception occurred during request to URL: %s. Message: %s", fullLink, cause));
         }
     }
 
-    private Set<String> computeInternal() throws IOException {
-        // keep the order
-        Set<String> result = new LinkedHashSet<>();
+    private void computeInternal() {
 
         // unblocking checking
-        if (processedUrls.putIfAbsent(fullLink, new Object()) != null) {
-            LOGGER.fine(String.format("URL %s already processed", fullLink));
-            return result;
+        if (!context.markProcessed(fullLink)) {
+            LOGGER.fine(() -> String.format("URL %s already processed", fullLink));
+            return;
         }
 
-        LOGGER.info(String.format("Processing the URL %s", fullLink));
+        // cooperative cancellation, the subtree is not started after the deadline or out of the budget
+        if (!context.tryStartPage()) {
+            LOGGER.fine(() -> String.format("URL %s skipped, the website is stopped", fullLink));
+            return;
+        }
 
-        Document document = Jsoup.connect(fullLink.toString()).ignoreHttpErrors(true).get();
+        LOGGER.fine(() -> String.format("Processing the URL %s", fullLink));
 
-        List<String> hrefs = document.select("a[href]").stream().map(element -> element.attr("href"))
-                .sorted(UrlComparator.INSTANCE).collect(Collectors.toList());
+        Page page = download();
+        context.pageFetched();
+
+        PageContent content = context.extract(page);
+
+        // the emails go straight to the result of the site, nothing is merged up the tree
+        context.addEmails(content.getEmails());
+
+        LOGGER.fine(() -> String.format("For url %s we got %s", fullLink, content.getEmails()));
 
         LinkedList<EmailExtractionTask> tasks = new LinkedList<>();
 
-        int processesLinks = 0;
+        if (currentInheritance < context.getMaxInheritance()) {
+
+            int processesLinks = 0;
 
-        for (String href : hrefs) {
-            // we check mailto for each link
-            if (href.startsWith("mailto:")) {
-                Matcher matcher = singleEmailPattern.matcher(href);
-                while (matcher.find()) {
-                    LOGGER.fine(String.format("Got email %s from 'mailto' tag", matcher.group()));
-                    result.add(matcher.group());
+            for (String href : context.getScorer().rank(content.getHrefs())) {
+                // we process only maxLinksForPage amount of links
+                if (processesLinks >= context.getMaxLinksForPage() || context.isStopped()) {
+                    break;
                 }
-            } else if (processesLinks < maxLinksForPage && currentInheritance < maxInheritance) {
-                // we process only maxLinksForPage amount of links and if inheritance in not exceeded
-                if (href.startsWith("//")) {
-                    final String tail = href.substring(1);
-                    final Optional<URL> urlOptional = UrlUtils.makeUrl(rootDomain, tail);
-                    if (urlOptional.isPresent()) {
-                        URL url = urlOptional.get();
-                        LOGGER.fine(String.format("Following a // link. URL: %s", url));
-                        EmailExtractionTask task = new EmailExtractionTask(rootDomain, url, currentInheritance + 1,
-                                maxLinksForPage, maxInheritance, processedUrls);
-                        task.fork();
-                        tasks.add(task);
-                        processesLinks++;
-                    } else {
-                        LOGGER.severe(String.format("Unable to concatenate URL parts '%s' and '%s'", rootDomain, tail));
-                    }
-                } else if (href.startsWith("/")) {
-                    final Optional<URL> urlOptional = UrlUtils.makeUrl(rootDomain, href);
-                    if (urlOptional.isPresent()) {
-                        URL url = urlOptional.get();
-                        LOGGER.fine(String.format("Following a / link. URL: %s", url));
-                        EmailExtractionTask task = new EmailExtractionTask(rootDomain, url, currentInheritance + 1,
-                                maxLinksForPage, maxInheritance, processedUrls);
-                        task.fork();
-                        tasks.add(task);
-                        processesLinks++;
-                    } else {
-                        LOGGER.severe(String.format("Unable to concatenate URL parts '%s' and '%s'", rootDomain, href));
-                    }
-                } else if (href.startsWith(rootDomain.getHost())) {
-                    final Optional<URL> urlOptional = UrlUtils.makeUrl(href);
-                    if (urlOptional.isPresent()) {
-                        URL url = urlOptional.get();
-                        LOGGER.fine(String.format("Following a full link. URL: %s", url));
-                        EmailExtractionTask task = new EmailExtractionTask(rootDomain, url, currentInheritance + 1,
-                                maxLinksForPage, maxInheritance, processedUrls);
-                        task.fork();
-                        tasks.add(task);
-                        processesLinks++;
-                    } else {
-                        LOGGER.severe(String.format("Unable to form URL from '%s'", href));
-                    }
+                final Optional<URL> urlOptional = context.resolveLink(href);
+                if (urlOptional.isPresent()) {
+                    EmailExtractionTask task = new EmailExtractionTask(context, urlOptional.get(),
+                            currentInheritance + 1, managedBlocking);
+                    task.fork();
+                    tasks.add(task);
+                    processesLinks++;
                 }
             }
         }
 
-        for (Element element : document.getAllElements()) {
+        // the subtree is completed with the children
+        for (EmailExtractionTask task : tasks) {
+            task.join();
+        }
+    }
 
-            String text = element.ownText().trim();
+    /**
+     * Blocks the pool thread until the page is downloaded.
+     * In the managed mode the pool is notified about the blocking and may start a spare thread.
+     */
+    private Page download() {
+        // the download is aborted at the deadline of the site
+        return await(context.fetch(fullLink), managedBlocking, fullLink);
+    }
 
-            Matcher matcher = singleEmailPattern.matcher(text);
-            while (matcher.find()) {
-                LOGGER.fine(String.format("Got email %s from email regexp", matcher.group()));
-                result.add(matcher.group());
+    /**
+     * Blocks the pool thread until the future is completed, in the managed mode notifying the pool
+     *
+     * @param future          future
+     * @param managedBlocking true for the managed mode
+     * @param url             the url the future is waited for
+     * @return the result of the future
+     */
+    static <T> T await(CompletableFuture<T> future, boolean managedBlocking, URL url) {
+        if (managedBlocking) {
+            try {
+                ForkJoinPool.managedBlock(new DownloadBlocker(future));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                throw new CancellationException(String.format("Download of %s interrupted", url));
             }
         }
+        return future.join();
+    }
 
-        addResultsFromTasks(result, tasks);
+    private static final class DownloadBlocker implements ForkJoinPool.ManagedBlocker {
 
-        LOGGER.info(String.format("For url %s we got %s", fullLink, result));
+        private final CompletableFuture<?> future;
 
-        return result;
-    }
+        private DownloadBlocker(CompletableFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException | CancellationException e) {
+                // the failure is reported by the join
+            }
+            return true;
+        }
 
-    private void addResultsFromTasks(Set<String> list, List<EmailExtractionTask> tasks) {
-        for (EmailExtractionTask item : tasks) {
-            list.addAll(item.join());
+        @Override
+        public boolean isReleasable() {
+            return future.isDone();
         }
     }
 
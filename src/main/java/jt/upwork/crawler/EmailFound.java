@@ -0,0 +1,19 @@
+package jt.upwork.crawler;
+
+/**
+ * Callback interface function
+ *
+ * @author jamestravol
+ */
+public interface EmailFound {
+
+    /**
+     * Invokes when a new email of a site is found, before the crawling for the site completed.
+     * Can be called by several threads at once.
+     *
+     * @param webSite original website
+     * @param email   the email in the lower case
+     */
+    void onEmailFound(WebSite webSite, String email);
+
+}
@@ -0,0 +1,130 @@
+package jt.upwork.crawler;
+
+/**
+ * Finds emails in a text without the regular expressions.
+ * The search is anchored on the '@': the local part is read backward, the domain part is read forward.
+ * Nothing is allocated until an email is found, the match is returned as a packed range.
+ * <p>
+ * Matches the same as {@code \b[A-Z0-9._%+-]+@[A-Z0-9.-]+\.[A-Z]{2,}\b} (case insensitive),
+ * so unlike the former {@code {2,4}} limit the long top level domains are found too.
+ *
+ * @author jamestravol
+ */
+public final class EmailScanner {
+
+    /**
+     * Returned when no email is found
+     */
+    public static final long NOT_FOUND = -1;
+
+    private EmailScanner() {
+    }
+
+    /**
+     * Finds the first email in the text
+     *
+     * @param text text
+     * @return packed range of the email or {@link #NOT_FOUND}
+     */
+    public static long find(CharSequence text) {
+        return find(text, 0, 0, text.length());
+    }
+
+    /**
+     * Finds the first email in the text range
+     *
+     * @param text  text
+     * @param start start of the text, the characters before it are not seen
+     * @param from  the email starts not before this position, normally the end of the previous one
+     * @param end   end of the text, the characters after it are not seen
+     * @return packed range of the email or {@link #NOT_FOUND}
+     */
+    public static long find(CharSequence text, int start, int from, int end) {
+
+        for (int at = from + 1; at < end - 3; at++) {
+
+            if (text.charAt(at) != '@') {
+                continue;
+            }
+
+            // the local part
+            int localStart = at;
+            while (localStart > from && isLocal(text.charAt(localStart - 1))) {
+                localStart--;
+            }
+
+            // the email starts at the first word boundary of the local part
+            int emailStart = -1;
+            for (int i = localStart; i < at; i++) {
+                boolean previousIsWord = i > start && isWord(text.charAt(i - 1));
+                if (previousIsWord != isWord(text.charAt(i))) {
+                    emailStart = i;
+                    break;
+                }
+            }
+            if (emailStart < 0) {
+                continue;
+            }
+
+            // the domain part
+            int domainEnd = at + 1;
+            while (domainEnd < end && isDomain(text.charAt(domainEnd))) {
+                domainEnd++;
+            }
+
+            // the last dot followed by letters and a word boundary, at least one character after the '@'
+            for (int dot = domainEnd - 1; dot > at + 1; dot--) {
+                if (text.charAt(dot) != '.') {
+                    continue;
+                }
+                int emailEnd = dot + 1;
+                while (emailEnd < domainEnd && isLetter(text.charAt(emailEnd))) {
+                    emailEnd++;
+                }
+                if (emailEnd - dot > 2 && (emailEnd == end || !isWord(text.charAt(emailEnd)))) {
+                    return pack(emailStart, emailEnd);
+                }
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * @param match packed range
+     * @return start of the email
+     */
+    public static int start(long match) {
+        return (int) (match >>> 32);
+    }
+
+    /**
+     * @param match packed range
+     * @return end of the email, exclusive
+     */
+    public static int end(long match) {
+        return (int) match;
+    }
+
+    private static long pack(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDomain(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '.' || c == '-';
+    }
+
+    private static boolean isLocal(char c) {
+        return isDomain(c) || c == '_' || c == '%' || c == '+';
+    }
+
+    // the same as the regular expressions word boundary
+    private static boolean isWord(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+}
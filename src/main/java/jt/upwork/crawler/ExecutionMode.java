@@ -0,0 +1,27 @@
+package jt.upwork.crawler;
+
+/**
+ * The way the crawler runs the page processing
+ *
+ * @author jamestravol
+ */
+public enum ExecutionMode {
+
+    /**
+     * Pages are downloaded asynchronously, the pool threads only parse pages and extract the data
+     */
+    ASYNC,
+
+    /**
+     * Every page is a {@link java.util.concurrent.RecursiveAction} which downloads the page on the pool thread,
+     * adds its emails to the shared context of the site and joins the tasks of the sublinks
+     */
+    FORK_JOIN,
+
+    /**
+     * Same as {@link #FORK_JOIN}, but the downloads are run as {@link java.util.concurrent.ForkJoinPool.ManagedBlocker},
+     * so the pool adds compensating threads instead of being starved by the blocked ones
+     */
+    MANAGED_BLOCKER
+
+}
@@ -0,0 +1,32 @@
+package jt.upwork.crawler;
+
+/**
+ * The way the crawler extracts emails and links from the pages
+ *
+ * @author jamestravol
+ */
+public enum ExtractionEngine {
+
+    /**
+     * Builds the full Jsoup document for every page
+     */
+    DOM {
+        @Override
+        PageExtractor extractor() {
+            return DomPageExtractor.INSTANCE;
+        }
+    },
+
+    /**
+     * Reads the html once without building the document
+     */
+    STREAMING {
+        @Override
+        PageExtractor extractor() {
+            return StreamingPageExtractor.INSTANCE;
+        }
+    };
+
+    abstract PageExtractor extractor();
+
+}
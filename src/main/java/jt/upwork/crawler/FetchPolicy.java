@@ -0,0 +1,109 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * What is worth downloading: the links to the files are not followed by their extension,
+ * the bodies of the not allowed content types are not read and the long bodies are cut.
+ *
+ * @author jamestravol
+ */
+final class FetchPolicy {
+
+    static final String DEFAULT_CONTENT_TYPES = "text/html,application/xhtml+xml,text/plain";
+
+    static final String DEFAULT_SKIPPED_EXTENSIONS = "pdf,doc,docx,xls,xlsx,ppt,pptx,odt,rtf," +
+            "jpg,jpeg,png,gif,bmp,svg,webp,ico,tif,tiff,mp3,wav,ogg,mp4,avi,mov,wmv,flv,webm," +
+            "zip,rar,7z,gz,tgz,tar,bz2,xz,exe,msi,dmg,apk,iso,bin,css,js,json,xml,woff,woff2,ttf,eot";
+
+    private final long maxBodyBytes;
+    // the media types and the "type/*" prefixes, empty means any
+    private final Set<String> contentTypes = new HashSet<>();
+    private final List<String> contentTypePrefixes = new ArrayList<>();
+    private final Set<String> skippedExtensions = new HashSet<>();
+
+    FetchPolicy(CrawlerConfig config) {
+        this.maxBodyBytes = config.getMaxBodyBytes();
+        for (String type : split(config.getAllowedContentTypes())) {
+            if (type.endsWith("/*")) {
+                contentTypePrefixes.add(type.substring(0, type.length() - 1));
+            } else {
+                contentTypes.add(type);
+            }
+        }
+        skippedExtensions.addAll(split(config.getSkippedExtensions()));
+    }
+
+    /**
+     * @return the max amount of the body bytes read, 0 means no limit
+     */
+    long getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * @param contentType the Content-Type header, may be empty
+     * @return true if the body is read. The body of the response without the type is read
+     */
+    boolean isAllowedContentType(String contentType) {
+        if (contentTypes.isEmpty() && contentTypePrefixes.isEmpty()) {
+            return true;
+        }
+        String mediaType = mediaType(contentType);
+        if (mediaType.isEmpty() || contentTypes.contains(mediaType)) {
+            return true;
+        }
+        for (String prefix : contentTypePrefixes) {
+            if (mediaType.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param url link
+     * @return true if the link is not followed for its file extension
+     */
+    boolean isSkipped(URL url) {
+        if (skippedExtensions.isEmpty()) {
+            return false;
+        }
+        String path = url.getPath();
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash + 1 || dot == path.length() - 1) {
+            return false;
+        }
+        return skippedExtensions.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String mediaType(String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> split(String items) {
+        List<String> result = new ArrayList<>();
+        if (items == null) {
+            return result;
+        }
+        for (String item : Arrays.asList(items.split(","))) {
+            String trimmed = item.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed.startsWith(".") ? trimmed.substring(1) : trimmed);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,51 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Downloads pages for the crawler.
+ * Implementations must not block the calling thread: the result is delivered through the returned future.
+ *
+ * @author jamestravol
+ */
+public interface Fetcher extends AutoCloseable {
+
+    /**
+     * Starts downloading of the page
+     *
+     * @param url page url
+     * @return the future completed with the page or with the exception occurred
+     */
+    CompletableFuture<Page> fetch(URL url);
+
+    /**
+     * Starts downloading of the page with the additional request headers, like the conditional ones.
+     * The fetchers which do not support the headers ignore them.
+     *
+     * @param url     page url
+     * @param headers request headers
+     * @return the future completed with the page or with the exception occurred
+     */
+    default CompletableFuture<Page> fetch(URL url, Map<String, String> headers) {
+        return fetch(url);
+    }
+
+    /**
+     * Starts downloading of a file for the crawler itself, like robots.txt or a sitemap.
+     * The bytes of the file are kept as they are, in {@link Page#getData()}, and its type is not checked.
+     * The fetchers which do not support the files download them as the pages.
+     *
+     * @param url file url
+     * @return the future completed with the file or with the exception occurred
+     */
+    default CompletableFuture<Page> fetchFile(URL url) {
+        return fetch(url);
+    }
+
+    @Override
+    default void close() {
+    }
+
+}
@@ -0,0 +1,140 @@
+package jt.upwork.crawler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent set of the 64 bit fingerprints, the open addressing table of the primitive longs.
+ * The adding is lock free, only the rare growing of the table blocks the adding threads.
+ * An entry takes 8 to 16 bytes instead of the map node, the key and the value objects.
+ *
+ * @author jamestravol
+ */
+public final class FingerprintSet {
+
+    private static final long EMPTY = 0;
+    // the slot of the table which is copied to the next one
+    private static final long MOVED = 1;
+
+    private volatile AtomicLongArray table;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public FingerprintSet() {
+        this(64);
+    }
+
+    /**
+     * @param expectedSize the amount of the fingerprints added without growing of the table
+     */
+    public FingerprintSet(int expectedSize) {
+        table = new AtomicLongArray(capacityFor(expectedSize));
+    }
+
+    /**
+     * Adds the fingerprint
+     *
+     * @param fingerprint fingerprint
+     * @return true if the fingerprint was not added before
+     */
+    public boolean add(long fingerprint) {
+        long value = fingerprint == EMPTY || fingerprint == MOVED ? fingerprint + 2 : fingerprint;
+        while (true) {
+            AtomicLongArray current = table;
+            int mask = current.length() - 1;
+            int index = (int) value & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long slot;
+                while ((slot = current.get(index)) == EMPTY) {
+                    if (current.compareAndSet(index, EMPTY, value)) {
+                        if (size.incrementAndGet() * 2 > current.length()) {
+                            grow(current);
+                        }
+                        return true;
+                    }
+                }
+                if (slot == value) {
+                    return false;
+                } else if (slot == MOVED) {
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+            // the table is growing or full, wait for the next one
+            grow(current);
+        }
+    }
+
+    /**
+     * @param fingerprint fingerprint
+     * @return true if the fingerprint was added
+     */
+    public boolean contains(long fingerprint) {
+        long value = fingerprint == EMPTY || fingerprint == MOVED ? fingerprint + 2 : fingerprint;
+        while (true) {
+            AtomicLongArray current = table;
+            int mask = current.length() - 1;
+            int index = (int) value & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                long slot = current.get(index);
+                if (slot == value) {
+                    return true;
+                } else if (slot == EMPTY) {
+                    return false;
+                } else if (slot == MOVED) {
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+            if (current.get(index) != MOVED) {
+                // the full table
+                return false;
+            }
+            // the table is growing, wait for the next one
+            grow(current);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the amount of the slots of the table
+     */
+    public int capacity() {
+        return table.length();
+    }
+
+    /**
+     * Copies the fingerprints to the twice bigger table. The slots of the old table are frozen one by one,
+     * the adding threads which meet a frozen slot wait here until the new table is published.
+     */
+    private synchronized void grow(AtomicLongArray old) {
+        if (table != old) {
+            // already grown by another thread
+            return;
+        }
+        AtomicLongArray next = new AtomicLongArray(old.length() * 2);
+        int mask = next.length() - 1;
+        for (int i = 0; i < old.length(); i++) {
+            long slot = old.getAndSet(i, MOVED);
+            if (slot != EMPTY) {
+                int index = (int) slot & mask;
+                while (next.get(index) != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                next.set(index, slot);
+            }
+        }
+        table = next;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+}
@@ -0,0 +1,367 @@
+package jt.upwork.crawler;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.NoRouteToHostException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * The health of the hosts shared by all the websites, the downloads from the hosts known to be dead fail at once.
+ * <p>
+ * The host names are resolved on the own threads before the download and the results are cached,
+ * the resolved ones for dnsCacheTtlMills and the unknown ones for dnsNegativeTtlMills, so the repeated hosts
+ * of the income table are resolved once and the unknown ones fail without the lookup.
+ * <p>
+ * A host (and port) which refused the connection, did not accept it in time or is unreachable
+ * hostFailureThreshold times in a row is closed for hostOpenMills: its downloads fail with
+ * {@link HostUnavailableException} without the connecting. Then a single download is let through as a probe,
+ * the successful one opens the host, the failed one closes it again for the doubled time. A single connect timeout
+ * is often a transient one, so the threshold of 1 loses the emails of the hosts alive.
+ *
+ * @author jamestravol
+ */
+final class HostHealth implements Fetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(HostHealth.class.getName());
+
+    // the cache is swept of the expired entries every this amount of the downloads
+    private static final int SWEEP_LOOKUPS = 4096;
+    private static final int MAX_OPEN_DOUBLINGS = 4;
+
+    /**
+     * Host name resolution, {@link InetAddress#getAllByName(String)} by default
+     */
+    interface Resolver {
+
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    private final Fetcher fetcher;
+    private final Resolver resolver;
+    private final long positiveTtlNanos;
+    private final long negativeTtlNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final ExecutorService resolverPool;
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final AtomicLong dnsLookups = new AtomicLong();
+    private final AtomicLong dnsCacheHits = new AtomicLong();
+    private final AtomicLong fastFailures = new AtomicLong();
+
+    HostHealth(Fetcher fetcher, CrawlerConfig config) {
+        this(fetcher, config, InetAddress::getAllByName);
+    }
+
+    HostHealth(Fetcher fetcher, CrawlerConfig config, Resolver resolver) {
+        this.fetcher = fetcher;
+        this.resolver = resolver;
+        this.positiveTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getDnsCacheTtlMills());
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getDnsNegativeTtlMills());
+        this.failureThreshold = config.getHostFailureThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(config.getHostOpenMills());
+        this.resolverPool = Executors.newFixedThreadPool(Math.max(1, config.getDnsThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "dns-resolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url) {
+        return fetch(url, Collections.emptyMap());
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url, Map<String, String> headers) {
+        return check(url, () -> fetcher.fetch(url, headers));
+    }
+
+    @Override
+    public CompletableFuture<Page> fetchFile(URL url) {
+        return check(url, () -> fetcher.fetchFile(url));
+    }
+
+    private CompletableFuture<Page> check(URL url, Supplier<CompletableFuture<Page>> downloader) {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        if (lookups.incrementAndGet() % SWEEP_LOOKUPS == 0) {
+            sweep();
+        }
+        // the breakers are per port, the hosts serve the ports independently
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        String address = host + ':' + port;
+        Breaker breaker = breakers.get(address);
+        if (breaker != null && !breaker.allow()) {
+            fastFailures.incrementAndGet();
+            return CompletableFuture.failedFuture(new HostUnavailableException(address));
+        }
+
+        CompletableFuture<Page> result = new CompletableFuture<>();
+        resolve(host).whenComplete((resolved, throwable) -> {
+            if (result.isDone()) {
+                // the caller gave up while the host was resolved
+                released(address);
+                return;
+            }
+            if (throwable != null) {
+                // the probe never reached the host, the next download probes it again
+                released(address);
+                fastFailures.incrementAndGet();
+                result.completeExceptionally(throwable);
+                return;
+            }
+            CompletableFuture<Page> download;
+            try {
+                download = downloader.get();
+            } catch (RuntimeException e) {
+                download = CompletableFuture.failedFuture(e);
+            }
+            download.whenComplete((page, failure) -> {
+                completed(address, failure);
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(page);
+                }
+            });
+            // the caller gave up on the page, abort the download
+            CompletableFuture<Page> started = download;
+            result.whenComplete((page, failure) -> {
+                if (failure != null) {
+                    started.cancel(true);
+                }
+            });
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        resolverPool.shutdownNow();
+        fetcher.close();
+    }
+
+    /**
+     * @return the amount of the host names looked up in the DNS
+     */
+    long getDnsLookups() {
+        return dnsLookups.get();
+    }
+
+    /**
+     * @return the amount of the host names found in the cache
+     */
+    long getDnsCacheHits() {
+        return dnsCacheHits.get();
+    }
+
+    /**
+     * @return the amount of the downloads failed without the connecting
+     */
+    long getFastFailures() {
+        return fastFailures.get();
+    }
+
+    /**
+     * @return the amount of the hosts closed for the failures
+     */
+    int getDeadHosts() {
+        int count = 0;
+        for (Breaker breaker : breakers.values()) {
+            if (breaker.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the future completed when the host is resolved or with {@link UnknownHostException}
+     */
+    private CompletableFuture<Void> resolve(String host) {
+        if (isAddress(host)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long now = System.nanoTime();
+        Resolution cached = resolutions.get(host);
+        if (cached != null && !cached.isExpired(now)) {
+            dnsCacheHits.incrementAndGet();
+            return cached.future;
+        }
+        // the concurrent lookups of the host share one resolution
+        Resolution resolution = resolutions.compute(host, (key, existing) ->
+                existing != null && !existing.isExpired(now) ? existing : new Resolution());
+        if (resolution.started.compareAndSet(0, 1)) {
+            dnsLookups.incrementAndGet();
+            resolverPool.execute(() -> lookup(host, resolution));
+        } else {
+            dnsCacheHits.incrementAndGet();
+        }
+        return resolution.future;
+    }
+
+    private void lookup(String host, Resolution resolution) {
+        try {
+            resolver.resolve(host);
+            resolution.expiresNanos = System.nanoTime() + positiveTtlNanos;
+            resolution.future.complete(null);
+        } catch (UnknownHostException e) {
+            LOGGER.fine(() -> String.format("Host %s is unknown", host));
+            resolution.expiresNanos = System.nanoTime() + negativeTtlNanos;
+            resolution.future.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            // not cached
+            resolution.expiresNanos = System.nanoTime();
+            resolution.future.completeExceptionally(e);
+        }
+    }
+
+    private void completed(String address, Throwable failure) {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        if (failure == null) {
+            // any response means the host is alive
+            Breaker breaker = breakers.remove(address);
+            if (breaker != null && breaker.isOpen()) {
+                LOGGER.info(String.format("Host %s is available again", address));
+            }
+            return;
+        }
+        if (!isConnectionFailure(failure)) {
+            released(address);
+            return;
+        }
+        long closedNanos = breakers.computeIfAbsent(address, key -> new Breaker()).failed();
+        if (closedNanos > 0) {
+            LOGGER.info(() -> String.format("Host %s is unavailable for %d ms. Message: %s", address,
+                    TimeUnit.NANOSECONDS.toMillis(closedNanos), failure));
+        }
+    }
+
+    /**
+     * Ends the probe of the host without the connection result
+     */
+    private void released(String address) {
+        Breaker breaker = breakers.get(address);
+        if (breaker != null) {
+            breaker.probeFinished();
+        }
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        resolutions.values().removeIf(resolution -> resolution.isExpired(now));
+        breakers.values().removeIf(breaker -> breaker.isForgotten(now));
+    }
+
+    private static boolean isConnectionFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException) {
+                return false;
+            }
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException
+                    || cause instanceof NoRouteToHostException || cause instanceof UnresolvedAddressException
+                    || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAddress(String host) {
+        if (host.startsWith("[")) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if ((c < '0' || c > '9') && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Resolution {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger started = new AtomicInteger();
+        private volatile long expiresNanos;
+
+        private boolean isExpired(long now) {
+            return future.isDone() && now - expiresNanos >= 0;
+        }
+    }
+
+    private final class Breaker {
+
+        private int failures;
+        private int opens;
+        private long openUntil;
+        private boolean probing;
+
+        /**
+         * @return true if the download may be started
+         */
+        private synchronized boolean allow() {
+            if (failures < failureThreshold) {
+                return true;
+            }
+            if (System.nanoTime() - openUntil < 0 || probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+
+        /**
+         * @return the time the host is closed for by this failure, 0 if it is not closed by it
+         */
+        private synchronized long failed() {
+            probing = false;
+            long now = System.nanoTime();
+            if (++failures < failureThreshold || now - openUntil < 0) {
+                return 0;
+            }
+            long closedNanos = openNanos << Math.min(opens++, MAX_OPEN_DOUBLINGS);
+            openUntil = now + closedNanos;
+            return closedNanos;
+        }
+
+        private synchronized void probeFinished() {
+            probing = false;
+        }
+
+        private synchronized boolean isOpen() {
+            return failures >= failureThreshold;
+        }
+
+        /**
+         * @return true if the host was not tried for the longest closing time, its failures are forgotten
+         */
+        private synchronized boolean isForgotten(long now) {
+            return !probing && now - openUntil > openNanos << MAX_OPEN_DOUBLINGS;
+        }
+    }
+
+}
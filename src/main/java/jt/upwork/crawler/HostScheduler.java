@@ -0,0 +1,272 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Polite fetching: the requests to a host are queued, so no more than hostMaxConcurrency of them are in flight
+ * and the next one starts not earlier than hostMinDelayMills after the previous one.
+ * A host answering 429 or 503 is paused for the growing backoff and the request is repeated,
+ * the amount of its parallel requests is halved and grows back by one with every limit of the successful ones.
+ * The limited amount of the parallel requests lets the http client reuse its keep-alive connections to the host.
+ * The amount may be capped by the host limit supplier, like the share of the adaptive limit of all the downloads.
+ *
+ * @author jamestravol
+ */
+final class HostScheduler implements Fetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(HostScheduler.class.getName());
+
+    private final Fetcher fetcher;
+    private final int maxConcurrency;
+    private final long minDelayNanos;
+    private final int maxRetries;
+    private final long backoffNanos;
+    private final IntSupplier hostLimit;
+
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "host-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong delayedRequests = new AtomicLong();
+    private final AtomicLong rateLimitedResponses = new AtomicLong();
+
+    HostScheduler(Fetcher fetcher, CrawlerConfig config) {
+        this(fetcher, config, () -> Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param hostLimit supplies the current cap of the parallel requests to a host
+     */
+    HostScheduler(Fetcher fetcher, CrawlerConfig config, IntSupplier hostLimit) {
+        this.fetcher = fetcher;
+        this.hostLimit = hostLimit;
+        this.maxConcurrency = config.getHostMaxConcurrency() <= 0 ? Integer.MAX_VALUE : config.getHostMaxConcurrency();
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getHostMinDelayMills());
+        this.maxRetries = config.getRateLimitRetries();
+        this.backoffNanos = TimeUnit.MILLISECONDS.toNanos(config.getRateLimitBackoffMills());
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url) {
+        return fetch(url, Collections.emptyMap());
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url, Map<String, String> headers) {
+        return schedule(new Request(url, headers, false));
+    }
+
+    @Override
+    public CompletableFuture<Page> fetchFile(URL url) {
+        return schedule(new Request(url, Collections.emptyMap(), true));
+    }
+
+    private CompletableFuture<Page> schedule(Request request) {
+        String key = hostKey(request.url);
+        // the request is queued under the lock of the map entry, so an idle host is never removed with it
+        Host host = hosts.compute(key, (k, existing) -> {
+            Host result = existing == null ? new Host(k) : existing;
+            result.enqueue(request);
+            return result;
+        });
+        host.dispatch();
+        return request.result;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        fetcher.close();
+    }
+
+    /**
+     * @return the amount of the requests which waited for the host
+     */
+    long getDelayedRequests() {
+        return delayedRequests.get();
+    }
+
+    /**
+     * @return the amount of the 429 and 503 responses
+     */
+    long getRateLimitedResponses() {
+        return rateLimitedResponses.get();
+    }
+
+    /**
+     * @return the amount of the hosts with the requests in flight or waiting
+     */
+    int getActiveHosts() {
+        return hosts.size();
+    }
+
+    private void evictIfIdle(String key) {
+        hosts.computeIfPresent(key, (k, host) -> host.isIdle() ? null : host);
+    }
+
+    private static String hostKey(URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getHost().toLowerCase(Locale.ROOT) + ':' + port;
+    }
+
+    private static final class Request {
+
+        private final URL url;
+        private final Map<String, String> headers;
+        private final boolean file;
+        private final CompletableFuture<Page> result = new CompletableFuture<>();
+        private int attempts;
+        private boolean delayed;
+
+        private Request(URL url, Map<String, String> headers, boolean file) {
+            this.url = url;
+            this.headers = headers;
+            this.file = file;
+        }
+    }
+
+    private final class Host {
+
+        private final String key;
+        private final ArrayDeque<Request> waiting = new ArrayDeque<>();
+        private int active;
+        private int limit = maxConcurrency;
+        private int successes;
+        private long nextStart = System.nanoTime();
+        private boolean timerScheduled;
+
+        private Host(String key) {
+            this.key = key;
+        }
+
+        private synchronized void enqueue(Request request) {
+            waiting.add(request);
+        }
+
+        private synchronized boolean isIdle() {
+            return active == 0 && waiting.isEmpty() && !timerScheduled && System.nanoTime() - nextStart >= 0;
+        }
+
+        /**
+         * Starts the waiting requests the host allows now, schedules itself for the later ones
+         */
+        private void dispatch() {
+            List<Request> started = new ArrayList<>();
+            synchronized (this) {
+                int allowed = Math.min(limit, hostLimit.getAsInt());
+                while (active < allowed && !waiting.isEmpty()) {
+                    long now = System.nanoTime();
+                    if (now - nextStart < 0) {
+                        for (Request request : waiting) {
+                            if (!request.delayed) {
+                                request.delayed = true;
+                                delayedRequests.incrementAndGet();
+                            }
+                        }
+                        if (!timerScheduled) {
+                            timerScheduled = true;
+                            timer.schedule(this::timerFired, nextStart - now, TimeUnit.NANOSECONDS);
+                        }
+                        break;
+                    }
+                    Request request = waiting.poll();
+                    if (request.result.isDone()) {
+                        // cancelled or timed out while waiting
+                        continue;
+                    }
+                    active++;
+                    nextStart = now + minDelayNanos;
+                    started.add(request);
+                }
+            }
+            started.forEach(this::start);
+        }
+
+        private void timerFired() {
+            synchronized (this) {
+                timerScheduled = false;
+            }
+            dispatch();
+            evictIfIdle(key);
+        }
+
+        private void start(Request request) {
+            request.attempts++;
+            CompletableFuture<Page> future;
+            try {
+                future = request.file ? fetcher.fetchFile(request.url) : fetcher.fetch(request.url, request.headers);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((page, throwable) -> completed(request, page, throwable));
+            // the caller gave up on the page, abort the download
+            CompletableFuture<Page> download = future;
+            request.result.whenComplete((page, throwable) -> {
+                if (throwable != null) {
+                    download.cancel(true);
+                }
+            });
+        }
+
+        private void completed(Request request, Page page, Throwable throwable) {
+            boolean retry = false;
+            synchronized (this) {
+                active--;
+                if (page != null && (page.getStatusCode() == 429 || page.getStatusCode() == 503)) {
+                    rateLimitedResponses.incrementAndGet();
+                    limit = Math.max(1, Math.min(limit, active + 1) / 2);
+                    successes = 0;
+                    // the whole host is paused, the pause doubles with every attempt
+                    long pause = backoffNanos << Math.min(request.attempts - 1, 10);
+                    long resume = System.nanoTime() + pause;
+                    if (resume - nextStart > 0) {
+                        nextStart = resume;
+                    }
+                    if (request.attempts <= maxRetries) {
+                        retry = true;
+                        waiting.addFirst(request);
+                    }
+                } else if (page != null && limit < maxConcurrency && ++successes >= limit) {
+                    limit++;
+                    successes = 0;
+                }
+            }
+            if (retry) {
+                LOGGER.fine(() -> String.format("Host %s is limiting the rate. Retrying %s", key, request.url));
+            } else if (throwable != null) {
+                request.result.completeExceptionally(throwable);
+            } else {
+                request.result.complete(page);
+            }
+            dispatch();
+            synchronized (this) {
+                // the host is kept till the end of the delay, so the next page of the site keeps it too
+                long now = System.nanoTime();
+                if (active == 0 && waiting.isEmpty() && !timerScheduled && now - nextStart < 0) {
+                    timerScheduled = true;
+                    timer.schedule(this::timerFired, nextStart - now, TimeUnit.NANOSECONDS);
+                }
+            }
+            evictIfIdle(key);
+        }
+    }
+
+}
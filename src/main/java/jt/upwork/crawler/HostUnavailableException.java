@@ -0,0 +1,18 @@
+package jt.upwork.crawler;
+
+import java.io.IOException;
+
+/**
+ * The download is not started for the host failed recently
+ *
+ * @author jamestravol
+ */
+final class HostUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    HostUnavailableException(String host) {
+        super("Host " + host + " is unavailable");
+    }
+
+}
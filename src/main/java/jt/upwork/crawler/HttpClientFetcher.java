@@ -0,0 +1,207 @@
+package jt.upwork.crawler;
+
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Non-blocking fetcher based on the JDK http client.
+ * Requests wait for the network without holding any crawler thread.
+ * The body is checked by its Content-Type before it is read and is cut at the max size while it is streamed.
+ * The files for the crawler itself are read as bytes of any type up to the sitemap max size.
+ * The bodies are asked for compressed and decoded while they are streamed, the client may use HTTP/2,
+ * so the pages of a host are multiplexed over a single connection when the host supports it.
+ *
+ * @author jamestravol
+ */
+public final class HttpClientFetcher implements Fetcher {
+
+    static final String DEFAULT_USER_AGENT = "Mozilla/5.0 (Windows NT 6.1; Win64; x64) AppleWebKit/537.36 " +
+            "(KHTML, like Gecko) Chrome/53.0.2785.143 Safari/537.36";
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final String userAgent;
+    private final FetchPolicy policy;
+    private final long maxFileBytes;
+    private final boolean compression;
+    private final TlsHandshakes handshakes = new TlsHandshakes();
+
+    private final AtomicLong skippedBodies = new AtomicLong();
+    private final AtomicLong truncatedBodies = new AtomicLong();
+
+    public HttpClientFetcher(CrawlerConfig config) {
+        this.client = HttpClient.newBuilder()
+                .version(config.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .sslContext(handshakes.getContext())
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMills()))
+                .build();
+        this.requestTimeout = Duration.ofMillis(config.getRequestTimeoutMills());
+        this.userAgent = config.getUserAgent();
+        this.policy = new FetchPolicy(config);
+        this.maxFileBytes = config.getSitemapMaxBytes();
+        this.compression = config.isHttpCompression();
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url) {
+        return fetch(url, Collections.emptyMap());
+    }
+
+    @Override
+    public CompletableFuture<Page> fetch(URL url, Map<String, String> headers) {
+        return send(url, headers, this::subscriber, response -> new Page(url, response.statusCode(),
+                response.headers().firstValue("Content-Type").orElse(""), response.body(),
+                response.headers().firstValue("ETag").orElse(null),
+                response.headers().firstValue("Last-Modified").orElse(null)));
+    }
+
+    @Override
+    public CompletableFuture<Page> fetchFile(URL url) {
+        return send(url, Collections.emptyMap(), this::fileSubscriber, response -> new Page(url, response.statusCode(),
+                response.headers().firstValue("Content-Type").orElse(""), response.body()));
+    }
+
+    private <T> CompletableFuture<Page> send(URL url, Map<String, String> headers,
+                                             Function<HttpResponse.ResponseInfo, LimitedBodySubscriber<T>> subscriber,
+                                             Function<HttpResponse<T>, Page> converter) {
+        final HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(url.toURI())
+                    .timeout(requestTimeout)
+                    .header("User-Agent", userAgent)
+                    .GET();
+            if (compression) {
+                builder.header("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+            }
+            headers.forEach(builder::header);
+            request = builder.build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // the body of the last attempt, it counts the bytes received
+        AtomicReference<LimitedBodySubscriber<T>> body = new AtomicReference<>();
+        HttpResponse.BodyHandler<T> handler = responseInfo -> {
+            LimitedBodySubscriber<T> result = subscriber.apply(responseInfo);
+            body.set(result);
+            return result;
+        };
+
+        AtomicReference<CompletableFuture<HttpResponse<T>>> exchange =
+                new AtomicReference<>(client.sendAsync(request, handler));
+
+        CompletableFuture<Page> page = exchange.get()
+                .handle((response, throwable) -> {
+                    // the server may close a keep-alive connection just when it is reused, try once more.
+                    // It is not a failure of the host, the limiter and the health of the hosts do not see it
+                    if (throwable != null && isStaleConnection(throwable)) {
+                        exchange.set(client.sendAsync(request, handler));
+                        return exchange.get();
+                    }
+                    return throwable != null
+                            ? CompletableFuture.<HttpResponse<T>>failedFuture(throwable)
+                            : CompletableFuture.completedFuture(response);
+                })
+                .thenCompose(Function.identity())
+                .thenApply(response -> {
+                    Page result = converter.apply(response);
+                    int started = handshakes.claim(request.uri());
+                    if (!response.uri().equals(request.uri())) {
+                        started += handshakes.claim(response.uri());
+                    }
+                    result.setTransfer(body.get().getWireBytes(), started,
+                            response.version() == HttpClient.Version.HTTP_2);
+                    return result;
+                });
+
+        // a cancelled or timed out page aborts the exchange
+        page.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                handshakes.claim(request.uri());
+                exchange.get().cancel(true);
+            }
+        });
+
+        return page;
+    }
+
+    /**
+     * @return the amount of the bodies not read for their content type
+     */
+    public long getSkippedBodies() {
+        return skippedBodies.get();
+    }
+
+    /**
+     * @return the amount of the bodies cut at the max size
+     */
+    public long getTruncatedBodies() {
+        return truncatedBodies.get();
+    }
+
+    /**
+     * @return the amount of the TLS handshakes, the new connections to the https hosts
+     */
+    public long getTlsHandshakes() {
+        return handshakes.getTotal();
+    }
+
+    private LimitedBodySubscriber<String> subscriber(HttpResponse.ResponseInfo responseInfo) {
+        String contentType = responseInfo.headers().firstValue("Content-Type").orElse("");
+        String contentEncoding = responseInfo.headers().firstValue("Content-Encoding").orElse("");
+        // a body of an encoding not asked for is not readable
+        boolean skipped = !policy.isAllowedContentType(contentType) || !ContentDecoder.isSupported(contentEncoding);
+        if (skipped) {
+            skippedBodies.incrementAndGet();
+        }
+        return LimitedBodySubscriber.ofString(LimitedBodySubscriber.charset(contentType), policy.getMaxBodyBytes(),
+                skipped, skipped ? null : ContentDecoder.create(contentEncoding), truncatedBodies::incrementAndGet);
+    }
+
+    private LimitedBodySubscriber<byte[]> fileSubscriber(HttpResponse.ResponseInfo responseInfo) {
+        String contentEncoding = responseInfo.headers().firstValue("Content-Encoding").orElse("");
+        boolean skipped = !ContentDecoder.isSupported(contentEncoding);
+        return new LimitedBodySubscriber<>(Function.identity(), maxFileBytes, skipped,
+                skipped ? null : ContentDecoder.create(contentEncoding), truncatedBodies::incrementAndGet);
+    }
+
+    /**
+     * The closed connection is told by the end of the stream before any byte of the response. A reset, a TLS failure
+     * or a timeout is a failure of the host, such a request is not repeated.
+     * <p>
+     * The failure depends on the JDK http client internals: on JDK 17 it is the IOException "HTTP/1.1 header parser
+     * received no bytes" caused by the EOFException. It is matched by the types, not by the message. A JDK update
+     * changing the causes turns the retry off, which fails HttpClientFetcherTest.
+     *
+     * @return true if the server closed the connection before the response
+     */
+    private static boolean isStaleConnection(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SSLException || cause instanceof SocketException
+                    || cause instanceof HttpTimeoutException || cause instanceof EOFException) {
+                return false;
+            }
+            if (cause instanceof IOException && cause.getCause() instanceof EOFException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
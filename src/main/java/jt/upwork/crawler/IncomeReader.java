@@ -0,0 +1,183 @@
+package jt.upwork.crawler;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Reads the websites from the income table ahead of the crawler.
+ * The table is paged by the id (keyset pagination), so every page costs the same regardless of the position.
+ * The reading runs on its own thread and fills the bounded queue. A failed page is retried from the last read row,
+ * the reader failed after all the retries fails the processing instead of ending it.
+ *
+ * @author jamestravol
+ */
+public final class IncomeReader implements IncomeSource {
+
+    private static final Logger LOGGER = Logger.getLogger(IncomeReader.class.getName());
+
+    // marks the end of the table
+    private static final WebSite END = new WebSite(null, null);
+
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY_MILLS = 500;
+
+    private final DataSource dataSource;
+    private final String incomeTableName;
+    private final String incomeIdField;
+    private final String incomeUrlField;
+    private final int pageSize;
+    private final int startOffset;
+    private final String startAfterId;
+
+    private final BlockingQueue<WebSite> queue;
+    private final Thread thread;
+
+    // the id of the last row read, the failed page is read again after it
+    private Object lastId;
+
+    private volatile boolean finished;
+    private volatile SQLException failure;
+
+    public IncomeReader(DataSource dataSource, String incomeTableName, String incomeIdField, String incomeUrlField,
+                        int pageSize, int startOffset, int queueCapacity) {
+        this(dataSource, incomeTableName, incomeIdField, incomeUrlField, pageSize, startOffset, queueCapacity, null);
+    }
+
+    /**
+     * @param startAfterId the reading is resumed after this id, the start offset is ignored. null means no resuming
+     */
+    public IncomeReader(DataSource dataSource, String incomeTableName, String incomeIdField, String incomeUrlField,
+                        int pageSize, int startOffset, int queueCapacity, String startAfterId) {
+        this.dataSource = dataSource;
+        this.incomeTableName = incomeTableName;
+        this.incomeIdField = incomeIdField;
+        this.incomeUrlField = incomeUrlField;
+        this.pageSize = pageSize;
+        this.startOffset = startOffset;
+        this.startAfterId = startAfterId;
+        this.lastId = startAfterId;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::run, "income-reader");
+        this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        thread.start();
+    }
+
+    @Override
+    public WebSite take() throws InterruptedException, IOException {
+        if (!finished) {
+            WebSite webSite = queue.take();
+            if (webSite != END) {
+                return webSite;
+            }
+            finished = true;
+        }
+        if (failure != null) {
+            throw new IOException("Unable to read the income table after id " + lastId, failure);
+        }
+        return null;
+    }
+
+    private void run() {
+        try {
+            int step = 0;
+            int retries = 0;
+            boolean hasItems = true;
+
+            while (hasItems && !Thread.currentThread().isInterrupted()) {
+
+                LOGGER.info(String.format("Requesting the page step %d after id %s", step, lastId));
+
+                try {
+                    hasItems = readPage();
+                    step++;
+                    retries = 0;
+                } catch (SQLException e) {
+                    if (retries >= MAX_RETRIES) {
+                        throw e;
+                    }
+                    long delay = RETRY_DELAY_MILLS << retries++;
+                    LOGGER.warning(String.format("SQL exception occurred while reading the page. Retrying in %d ms. " +
+                            "Message: %s", delay, e));
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                }
+            }
+
+            LOGGER.info("The income table is read");
+
+        } catch (SQLException e) {
+            LOGGER.severe(String.format("Unable to read the income table after %d retries. Message: %s",
+                    MAX_RETRIES, e));
+            failure = e;
+        } catch (InterruptedException e) {
+            LOGGER.info("The income reader is interrupted");
+            return;
+        }
+
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            LOGGER.info("The income reader is interrupted");
+        }
+    }
+
+    /**
+     * Queues the page of the websites after the last id
+     *
+     * @return false if the table is over
+     */
+    private boolean readPage() throws SQLException, InterruptedException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = prepareStatement(connection, lastId);
+             ResultSet resultSet = statement.executeQuery()) {
+
+            boolean hasItems = false;
+
+            while (resultSet.next()) {
+                hasItems = true;
+
+                final String url = resultSet.getString(incomeUrlField);
+                final Optional<URL> urlOptional = UrlUtils.makeUrl(url);
+                if (urlOptional.isPresent()) {
+                    queue.put(new WebSite(resultSet.getString(incomeIdField), urlOptional.get()));
+                } else {
+                    LOGGER.severe(String.format("Unable to form URL from '%s'. Skipping...", url));
+                }
+                lastId = resultSet.getObject(incomeIdField);
+            }
+            return hasItems;
+        }
+    }
+
+    private PreparedStatement prepareStatement(Connection connection, Object lastId) throws SQLException {
+        if (lastId == null) {
+            // the start offset is applied only once, the rest pages are found by the id
+            return connection.prepareStatement(String.format("SELECT %s, %s FROM %s ORDER BY %s LIMIT %d OFFSET %d",
+                    incomeIdField, incomeUrlField, incomeTableName, incomeIdField, pageSize, startOffset));
+        }
+        PreparedStatement statement = connection.prepareStatement(String.format(
+                "SELECT %s, %s FROM %s WHERE %s > ? ORDER BY %s LIMIT %d",
+                incomeIdField, incomeUrlField, incomeTableName, incomeIdField, incomeIdField, pageSize));
+        statement.setObject(1, lastId);
+        return statement;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+
+}
@@ -0,0 +1,34 @@
+package jt.upwork.crawler;
+
+import java.io.IOException;
+
+/**
+ * The websites to crawl, taken one by one by the processing.
+ *
+ * @author jamestravol
+ */
+public interface IncomeSource extends AutoCloseable {
+
+    void start();
+
+    /**
+     * Takes the next website, blocks while the source is behind
+     *
+     * @return the website or null if there are no more websites
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IOException          if the source failed before the end, the rest of the websites are not read
+     */
+    WebSite take() throws InterruptedException, IOException;
+
+    /**
+     * Called when the result of the website is stored. The sources which do not track the progress ignore it.
+     *
+     * @param id website id
+     */
+    default void finish(String id) {
+    }
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,414 @@
+package jt.upwork.crawler;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Reads the websites from the income table shared by several crawler processes.
+ * A process claims the batch of the rows by writing its owner name and the lease expiry time (epoch millis)
+ * to the lease fields of the table, the claiming statement takes only the free rows, so the processes
+ * never crawl the same website at once. The leases of the rows in work are renewed every quarter of the lease time
+ * by the id ranges of the batches the process still holds, a finished row keeps its owner and loses the expiry.
+ * The rows of a crashed process are claimed by the others when the leases expire.
+ * <p>
+ * The rows are free when the owner is null or the expiry is passed. The table is claimed by the id from the start
+ * to the end, then it is scanned again for the expired leases until all the rows are finished.
+ * The lease time must be much longer than the clock difference of the machines.
+ * <p>
+ * The finished rows are never claimed again, the lease fields are set to null for a new run of the table.
+ *
+ * @author jamestravol
+ */
+public final class LeasedIncomeReader implements IncomeSource {
+
+    private static final Logger LOGGER = Logger.getLogger(LeasedIncomeReader.class.getName());
+
+    // marks the end of the table
+    private static final WebSite END = new WebSite(null, null);
+
+    private final DataSource dataSource;
+    private final String incomeTableName;
+    private final String incomeIdField;
+    private final String incomeUrlField;
+    private final String leaseOwnerField;
+    private final String leaseExpiresField;
+    private final String owner;
+    private final long leaseMills;
+    private final int batchSize;
+
+    private final BlockingQueue<WebSite> queue;
+    private final Thread thread;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "income-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Queue<String> finished = new ConcurrentLinkedQueue<>();
+    // the claimed rows not finished yet -> their batches, the batches are renewed till all their rows are finished
+    private final Map<String, Batch> leased = new ConcurrentHashMap<>();
+    private final Set<Batch> batches = new HashSet<>();
+
+    private final AtomicLong claimedRows = new AtomicLong();
+    private final AtomicLong finishedRows = new AtomicLong();
+
+    // the expiry of every claim differs, so the claimed rows are found by it
+    private long lastExpires;
+    private volatile boolean ended;
+    private volatile SQLException failure;
+
+    /**
+     * @param leaseOwnerField   the field of the name of the process which claimed the row
+     * @param leaseExpiresField the numeric field of the lease expiry time in epoch millis
+     * @param owner             the name of this process, unique among the processes
+     * @param leaseMills        the time the claimed row is kept by the process without the renewal
+     * @param batchSize         the amount of the rows claimed at once
+     * @param queueCapacity     the amount of the claimed rows waiting for the crawler
+     */
+    public LeasedIncomeReader(DataSource dataSource, String incomeTableName, String incomeIdField,
+                              String incomeUrlField, String leaseOwnerField, String leaseExpiresField, String owner,
+                              long leaseMills, int batchSize, int queueCapacity) {
+        this.dataSource = dataSource;
+        this.incomeTableName = incomeTableName;
+        this.incomeIdField = incomeIdField;
+        this.incomeUrlField = incomeUrlField;
+        this.leaseOwnerField = leaseOwnerField;
+        this.leaseExpiresField = leaseExpiresField;
+        this.owner = owner;
+        this.leaseMills = leaseMills;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, batchSize));
+        this.thread = new Thread(this::run, "income-reader");
+        this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        long period = renewalPeriod();
+        timer.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+        thread.start();
+    }
+
+    @Override
+    public WebSite take() throws InterruptedException, IOException {
+        if (!ended) {
+            WebSite webSite = queue.take();
+            if (webSite != END) {
+                return webSite;
+            }
+            ended = true;
+        }
+        if (failure != null) {
+            throw new IOException("Unable to claim the websites for " + owner, failure);
+        }
+        return null;
+    }
+
+    /**
+     * Finishes the row, it is written to the table with the next renewal
+     *
+     * @param id website id
+     */
+    @Override
+    public void finish(String id) {
+        finished.add(id);
+    }
+
+    /**
+     * @return the amount of the rows claimed by this process
+     */
+    public long getClaimedRows() {
+        return claimedRows.get();
+    }
+
+    /**
+     * @return the amount of the rows finished by this process
+     */
+    public long getFinishedRows() {
+        return finishedRows.get();
+    }
+
+    /**
+     * Stops the claiming, writes the finished rows and frees the rest of the claimed ones for the other processes
+     */
+    @Override
+    public void close() {
+        thread.interrupt();
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(leaseMills, TimeUnit.MILLISECONDS);
+            thread.join(leaseMills);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            synchronized (this) {
+                writeFinished(connection);
+            }
+            try (PreparedStatement statement = connection.prepareStatement(String.format(
+                    "UPDATE %s SET %s = NULL, %s = NULL WHERE %s = ? AND %s IS NOT NULL", incomeTableName,
+                    leaseOwnerField, leaseExpiresField, leaseOwnerField, leaseExpiresField))) {
+                statement.setString(1, owner);
+                int released = statement.executeUpdate();
+                LOGGER.info(String.format("The leases of %s are closed. Claimed: %d, finished: %d, released: %d",
+                        owner, claimedRows.get(), finishedRows.get(), released));
+            }
+        } catch (SQLException e) {
+            LOGGER.severe(String.format("Unable to release the leases of %s. Message: %s", owner, e));
+        }
+    }
+
+    private void run() {
+        try {
+            Object lastId = null;
+            boolean rescan = false;
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Object[] range = findFree(lastId);
+                if (range == null) {
+                    if (lastId != null) {
+                        // the end of the table, the expired leases are looked for from the start
+                        lastId = null;
+                        rescan = true;
+                        continue;
+                    }
+                    if (!isLeasedByOthers()) {
+                        break;
+                    }
+                    if (rescan) {
+                        LOGGER.info("Waiting for the websites leased by the other processes");
+                        rescan = false;
+                    }
+                    Thread.sleep(renewalPeriod());
+                    continue;
+                }
+                lastId = range[1];
+                for (WebSite webSite : claim(range[0], range[1])) {
+                    queue.put(webSite);
+                }
+            }
+
+            if (claimedRows.get() == 0) {
+                LOGGER.warning(String.format("The income table has no free rows for %s. The rows finished "
+                        + "by the previous run are freed by setting %s and %s to null", owner, leaseOwnerField,
+                        leaseExpiresField));
+            }
+            LOGGER.info("The income table is finished");
+
+        } catch (SQLException e) {
+            // the claimed rows are released by the closing, the rest of the table is left to the next run
+            LOGGER.severe(String.format("SQL exception occurred. Message: %s", e));
+            failure = e;
+        } catch (InterruptedException e) {
+            LOGGER.info("The income reader is interrupted");
+            return;
+        }
+
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            LOGGER.info("The income reader is interrupted");
+        }
+    }
+
+    /**
+     * @return the first and the last id of the next batch of the free rows or null if there are none after the id
+     */
+    private Object[] findFree(Object lastId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(
+                     "SELECT %s FROM %s WHERE %s(%s IS NULL OR %s < ?) ORDER BY %s LIMIT %d",
+                     incomeIdField, incomeTableName, lastId == null ? "" : incomeIdField + " > ? AND ",
+                     leaseOwnerField, leaseExpiresField, incomeIdField, batchSize))) {
+            int index = 1;
+            if (lastId != null) {
+                statement.setObject(index++, lastId);
+            }
+            statement.setLong(index, System.currentTimeMillis());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                Object first = null;
+                Object last = null;
+                while (resultSet.next()) {
+                    last = resultSet.getObject(1);
+                    if (first == null) {
+                        first = last;
+                    }
+                }
+                return first == null ? null : new Object[]{first, last};
+            }
+        }
+    }
+
+    /**
+     * Claims the free rows of the range, the rows claimed by the other processes meanwhile are left to them
+     */
+    private synchronized List<WebSite> claim(Object firstId, Object lastId) throws SQLException {
+        long now = System.currentTimeMillis();
+        long expires = nextExpires(now);
+        List<WebSite> claimed = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(String.format(
+                    "UPDATE %s SET %s = ?, %s = ? WHERE %s >= ? AND %s <= ? AND (%s IS NULL OR %s < ?)",
+                    incomeTableName, leaseOwnerField, leaseExpiresField, incomeIdField, incomeIdField,
+                    leaseOwnerField, leaseExpiresField))) {
+                statement.setString(1, owner);
+                statement.setLong(2, expires);
+                statement.setObject(3, firstId);
+                statement.setObject(4, lastId);
+                statement.setLong(5, now);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(String.format(
+                    "SELECT %s, %s FROM %s WHERE %s >= ? AND %s <= ? AND %s = ? AND %s = ? ORDER BY %s",
+                    incomeIdField, incomeUrlField, incomeTableName, incomeIdField, incomeIdField,
+                    leaseOwnerField, leaseExpiresField, incomeIdField))) {
+                statement.setObject(1, firstId);
+                statement.setObject(2, lastId);
+                statement.setString(3, owner);
+                statement.setLong(4, expires);
+                Batch batch = new Batch(firstId, lastId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String id = resultSet.getString(1);
+                        batch.unfinished++;
+                        leased.put(id, batch);
+                        final String url = resultSet.getString(2);
+                        final Optional<URL> urlOptional = UrlUtils.makeUrl(url);
+                        if (urlOptional.isPresent()) {
+                            claimed.add(new WebSite(id, urlOptional.get()));
+                        } else {
+                            LOGGER.severe(String.format("Unable to form URL from '%s'. Skipping...", url));
+                            finish(id);
+                        }
+                    }
+                }
+                if (batch.unfinished > 0) {
+                    batches.add(batch);
+                }
+            }
+        }
+        claimedRows.addAndGet(claimed.size());
+        LOGGER.info(String.format("Claimed %d websites from id %s to id %s", claimed.size(), firstId, lastId));
+        return claimed;
+    }
+
+    /**
+     * @return true if any row is leased by the other processes, the rows are not counted
+     */
+    private boolean isLeasedByOthers() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(
+                     "SELECT %s FROM %s WHERE %s IS NOT NULL AND %s <> ? LIMIT 1",
+                     incomeIdField, incomeTableName, leaseExpiresField, leaseOwnerField))) {
+            statement.setString(1, owner);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * Writes the finished rows and renews the leases of the batches with the rows in work
+     */
+    private synchronized void maintain() {
+        try (Connection connection = dataSource.getConnection()) {
+            writeFinished(connection);
+            if (batches.isEmpty()) {
+                return;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(String.format(
+                    "UPDATE %s SET %s = ? WHERE %s >= ? AND %s <= ? AND %s = ? AND %s IS NOT NULL",
+                    incomeTableName, leaseExpiresField, incomeIdField, incomeIdField, leaseOwnerField,
+                    leaseExpiresField))) {
+                long expires = nextExpires(System.currentTimeMillis());
+                for (Batch batch : batches) {
+                    statement.setLong(1, expires);
+                    statement.setObject(2, batch.firstId);
+                    statement.setObject(3, batch.lastId);
+                    statement.setString(4, owner);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        } catch (SQLException e) {
+            LOGGER.severe(String.format("Unable to renew the leases of %s. Message: %s", owner, e));
+        }
+    }
+
+    private void writeFinished(Connection connection) throws SQLException {
+        if (finished.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(String.format(
+                "UPDATE %s SET %s = NULL WHERE %s = ? AND %s = ?",
+                incomeTableName, leaseExpiresField, incomeIdField, leaseOwnerField))) {
+            List<String> ids = new ArrayList<>();
+            String id;
+            while ((id = finished.poll()) != null) {
+                ids.add(id);
+                statement.setString(1, id);
+                statement.setString(2, owner);
+                statement.addBatch();
+            }
+            try {
+                statement.executeBatch();
+            } catch (SQLException e) {
+                // written with the next renewal
+                finished.addAll(ids);
+                throw e;
+            }
+            finishedRows.addAndGet(ids.size());
+            for (String finishedId : ids) {
+                Batch batch = leased.remove(finishedId);
+                if (batch != null && --batch.unfinished == 0) {
+                    batches.remove(batch);
+                }
+            }
+        }
+    }
+
+    private long nextExpires(long now) {
+        lastExpires = Math.max(now + leaseMills, lastExpires + 1);
+        return lastExpires;
+    }
+
+    private long renewalPeriod() {
+        return Math.max(1, leaseMills / 4);
+    }
+
+    /**
+     * The id range of the claimed rows, the rows of the range claimed by the other processes are not renewed
+     */
+    private static final class Batch {
+
+        private final Object firstId;
+        private final Object lastId;
+        private int unfinished;
+
+        private Batch(Object firstId, Object lastId) {
+            this.firstId = firstId;
+            this.lastId = lastId;
+        }
+    }
+
+}
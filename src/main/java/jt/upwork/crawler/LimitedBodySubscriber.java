@@ -0,0 +1,160 @@
+package jt.upwork.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * Reads the body up to the limit and converts its bytes, like to a string. The rest is not downloaded:
+ * the subscription is cancelled, so the client closes the connection instead of reading the body to its end.
+ * A body of a not allowed type is not read at all.
+ * A compressed body is decoded while it is read, the limit is of the decoded bytes.
+ *
+ * @author jamestravol
+ */
+final class LimitedBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final Function<byte[], T> converter;
+    private final long maxBytes;
+    private final boolean skipped;
+    private final Runnable truncated;
+    // null if the body is not compressed
+    private final ContentDecoder decoder;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private Flow.Subscription subscription;
+    private volatile long wireBytes;
+
+    /**
+     * @param converter converts the bytes read to the body
+     * @param maxBytes  max amount of the bytes read, 0 means no limit
+     * @param skipped   true if the body is not read, it is converted from no bytes then
+     * @param decoder   decoder of the compressed body or null
+     * @param truncated called when the body is cut at the limit
+     */
+    LimitedBodySubscriber(Function<byte[], T> converter, long maxBytes, boolean skipped, ContentDecoder decoder,
+                          Runnable truncated) {
+        this.converter = converter;
+        this.maxBytes = maxBytes;
+        this.skipped = skipped;
+        this.decoder = decoder;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @param charset charset of the body
+     * @return the subscriber reading the body as a string
+     */
+    static LimitedBodySubscriber<String> ofString(Charset charset, long maxBytes, boolean skipped,
+                                                  ContentDecoder decoder, Runnable truncated) {
+        return new LimitedBodySubscriber<>(bytes -> new String(bytes, charset), maxBytes, skipped, decoder, truncated);
+    }
+
+    /**
+     * @return the amount of the bytes of the body received, compressed if the body is
+     */
+    long getWireBytes() {
+        return wireBytes;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (skipped) {
+            subscription.cancel();
+            closeDecoder();
+            result.complete(converter.apply(new byte[0]));
+        } else {
+            subscription.request(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (result.isDone()) {
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            wireBytes += buffer.remaining();
+            long remaining = maxBytes > 0 ? maxBytes - bytes.size() : Long.MAX_VALUE;
+            boolean limited;
+            if (decoder == null) {
+                byte[] chunk = new byte[buffer.remaining()];
+                buffer.get(chunk);
+                limited = chunk.length > remaining;
+                bytes.write(chunk, 0, limited ? (int) remaining : chunk.length);
+            } else {
+                try {
+                    // the decoder stops at the rest of the limit, the chunk is not inflated beyond it
+                    limited = decoder.decode(buffer, bytes, remaining);
+                } catch (IOException e) {
+                    subscription.cancel();
+                    onError(e);
+                    return;
+                }
+            }
+            if (limited) {
+                subscription.cancel();
+                truncated.run();
+                complete();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeDecoder();
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        complete();
+    }
+
+    private void complete() {
+        closeDecoder();
+        if (!result.isDone()) {
+            result.complete(converter.apply(bytes.toByteArray()));
+        }
+    }
+
+    private void closeDecoder() {
+        if (decoder != null) {
+            decoder.close();
+        }
+    }
+
+    static Charset charset(String contentType) {
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return StandardCharsets.UTF_8;
+        }
+        String name = contentType.substring(index + "charset=".length());
+        int end = name.indexOf(';');
+        name = (end < 0 ? name : name.substring(0, end)).trim().replace("\"", "");
+        try {
+            return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+}
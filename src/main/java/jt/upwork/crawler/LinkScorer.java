@@ -0,0 +1,88 @@
+package jt.upwork.crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scores the links by the weighted keywords they contain, so the promising ones are followed first.
+ * A link is scored once, the keywords are matched ignoring the case without copying the link.
+ *
+ * @author jamestravol
+ */
+public final class LinkScorer {
+
+    static final String DEFAULT_KEYWORDS = "contact:10,kontakt:10,impressum:8,imprint:8,email:8,mail:4,about:5," +
+            "team:4,legal:4,staff:3,people:3";
+
+    private final String[] keywords;
+    private final int[] weights;
+    private final int depthPenalty;
+
+    /**
+     * @param keywordWeights comma separated keywords with the weights, like "contact:10,about:5"
+     * @param depthPenalty   score taken for every level of the inheritance
+     */
+    public LinkScorer(String keywordWeights, int depthPenalty) {
+        String[] items = keywordWeights == null || keywordWeights.trim().isEmpty()
+                ? new String[0] : keywordWeights.split(",");
+        this.keywords = new String[items.length];
+        this.weights = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] parts = items[i].split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(String.format("Unable to parse the keyword weight '%s'", items[i]));
+            }
+            keywords[i] = parts[0].trim().toLowerCase(Locale.ROOT);
+            weights[i] = Integer.parseInt(parts[1].trim());
+        }
+        this.depthPenalty = depthPenalty;
+    }
+
+    /**
+     * @param href  link
+     * @param depth inheritance of the page the link points to
+     * @return the score, the greater the better
+     */
+    public int score(String href, int depth) {
+        int score = -depth * depthPenalty;
+        for (int i = 0; i < keywords.length; i++) {
+            if (containsIgnoreCase(href, keywords[i])) {
+                score += weights[i];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Orders the links of a page from the best to the worst, the equal ones keep the page order
+     *
+     * @param hrefs links
+     * @return ordered links
+     */
+    public List<String> rank(List<String> hrefs) {
+        // the negated score in the high bits, the index in the low ones
+        long[] keys = new long[hrefs.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) -score(hrefs.get(i), 0) << 32) | i;
+        }
+        Arrays.sort(keys);
+        List<String> ranked = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            ranked.add(hrefs.get((int) key));
+        }
+        return ranked;
+    }
+
+    private static boolean containsIgnoreCase(String text, String keyword) {
+        int last = text.length() - keyword.length();
+        for (int i = 0; i <= last; i++) {
+            if (text.regionMatches(true, i, keyword, 0, keyword.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,158 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+
+/**
+ * A downloaded page
+ *
+ * @author jamestravol
+ */
+public final class Page {
+
+    private final URL url;
+
+    private final int statusCode;
+
+    private final String contentType;
+
+    private final String body;
+
+    private final String etag;
+
+    private final String lastModified;
+
+    // the bytes of a file downloaded as they are, null for the pages
+    private final byte[] data;
+
+    // the content of a not modified page taken from the cache
+    private final PageContent cachedContent;
+
+    // the download time, set by the crawler before the page is passed on
+    private long fetchNanos;
+
+    // the transfer, set by the fetcher
+    private long wireBytes;
+    private int handshakes;
+    private boolean http2;
+
+    public Page(URL url, int statusCode, String contentType, String body) {
+        this(url, statusCode, contentType, body, null, null);
+    }
+
+    public Page(URL url, int statusCode, String contentType, String body, String etag, String lastModified) {
+        this(url, statusCode, contentType, body, etag, lastModified, null);
+    }
+
+    Page(URL url, int statusCode, String contentType, String body, String etag, String lastModified,
+         PageContent cachedContent) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.cachedContent = cachedContent;
+        this.data = null;
+    }
+
+    /**
+     * A file downloaded as it is
+     */
+    Page(URL url, int statusCode, String contentType, byte[] data) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = "";
+        this.etag = null;
+        this.lastModified = null;
+        this.cachedContent = null;
+        this.data = data;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return the ETag header or null
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return the Last-Modified header or null
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the bytes of a file fetched by {@link Fetcher#fetchFile(URL)} or null
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the content of the not modified page from the cache or null
+     */
+    PageContent getCachedContent() {
+        return cachedContent;
+    }
+
+    long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    void setFetchNanos(long fetchNanos) {
+        this.fetchNanos = fetchNanos;
+    }
+
+    /**
+     * @param wireBytes  the amount of the bytes of the body received, compressed if the body is
+     * @param handshakes the amount of the TLS handshakes made for the page
+     * @param http2      true if the page is received over HTTP/2
+     */
+    void setTransfer(long wireBytes, int handshakes, boolean http2) {
+        this.wireBytes = wireBytes;
+        this.handshakes = handshakes;
+        this.http2 = http2;
+    }
+
+    long getWireBytes() {
+        return wireBytes;
+    }
+
+    int getHandshakes() {
+        return handshakes;
+    }
+
+    boolean isHttp2() {
+        return http2;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{" +
+                "url=" + url +
+                ", statusCode=" + statusCode +
+                ", contentType='" + contentType + '\'' +
+                ", bodyLength=" + body.length() +
+                ", etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package jt.upwork.crawler;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The data extracted from a single page
+ *
+ * @author jamestravol
+ */
+public final class PageContent {
+
+    private final Set<String> emails;
+
+    private final List<String> hrefs;
+
+    public PageContent(Set<String> emails, List<String> hrefs) {
+        this.emails = emails;
+        this.hrefs = hrefs;
+    }
+
+    /**
+     * @return emails from 'mailto' links followed by emails from the text, in the document order
+     */
+    public Set<String> getEmails() {
+        return emails;
+    }
+
+    /**
+     * @return all the links except the 'mailto' ones, in the document order
+     */
+    public List<String> getHrefs() {
+        return hrefs;
+    }
+
+}
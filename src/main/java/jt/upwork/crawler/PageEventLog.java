@@ -0,0 +1,234 @@
+package jt.upwork.crawler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Structured log of the crawled pages, a JSON line per page.
+ * <p>
+ * The crawling threads put the events into the bounded lock free ring buffer and never wait:
+ * the event is dropped and counted when the buffer is full. The dedicated thread formats the events
+ * and writes them to the file, so neither the formatting nor the file io is done on the crawling threads.
+ *
+ * @author jamestravol
+ */
+final class PageEventLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PageEventLog.class.getName());
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Path file;
+    private final Slot[] slots;
+    private final int mask;
+    // the sequence of the next event to publish
+    private final AtomicLong tail = new AtomicLong();
+    // the sequence of the next event to write, changed by the writer thread only
+    private long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Writer writer;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * @param file       the file of the events, appended
+     * @param bufferSize the amount of the events waiting for writing, rounded up to a power of two
+     */
+    PageEventLog(Path file, int bufferSize) throws IOException {
+        this.file = file;
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = capacity - 1;
+        this.writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE), 64 * 1024);
+        this.thread = new Thread(this::run, "page-event-log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Publishes the event of a page, never blocks
+     *
+     * @param siteId       website id
+     * @param url          page url
+     * @param status       http status, 0 if the download failed
+     * @param bytes        size of the body
+     * @param fetchNanos   download time
+     * @param extractNanos extraction time
+     * @param emails       amount of the emails on the page
+     * @param error        the name of the failure or null
+     */
+    void publish(String siteId, String url, int status, long bytes, long fetchNanos, long extractNanos, int emails,
+                 String error) {
+        Slot slot;
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            slot = slots[(int) sequence & mask];
+            long difference = slot.sequence - sequence;
+            if (difference == 0) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // the writer is behind by the whole buffer
+                dropped.incrementAndGet();
+                return;
+            }
+            // another thread took the slot, try the next one
+        }
+        slot.time = System.currentTimeMillis();
+        slot.siteId = siteId;
+        slot.url = url;
+        slot.status = status;
+        slot.bytes = bytes;
+        slot.fetchNanos = fetchNanos;
+        slot.extractNanos = extractNanos;
+        slot.emails = emails;
+        slot.error = error;
+        // publishes the fields to the writer
+        slot.sequence = sequence + 1;
+    }
+
+    /**
+     * @return the amount of the events dropped because the buffer was full
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the amount of the events written to the file
+     */
+    long getWritten() {
+        return written.get();
+    }
+
+    private void run() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            boolean closing = closed;
+            int drained = 0;
+            try {
+                Slot slot;
+                while ((slot = slots[(int) head & mask]).sequence == head + 1) {
+                    line.setLength(0);
+                    format(slot, line);
+                    // the slot is free for the publishers after the whole buffer
+                    slot.siteId = null;
+                    slot.url = null;
+                    slot.error = null;
+                    slot.sequence = head + slots.length;
+                    head++;
+                    writer.append(line);
+                    drained++;
+                }
+                if (drained == 0) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                LOGGER.severe(String.format("Unable to write the page events to %s. Message: %s", file, e));
+            }
+            written.addAndGet(drained);
+            if (drained == 0) {
+                if (closing) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static void format(Slot slot, StringBuilder line) {
+        line.append("{\"time\":").append(slot.time);
+        line.append(",\"site\":");
+        string(line, slot.siteId);
+        line.append(",\"url\":");
+        string(line, slot.url);
+        line.append(",\"status\":").append(slot.status);
+        line.append(",\"bytes\":").append(slot.bytes);
+        line.append(",\"fetchMicros\":").append(TimeUnit.NANOSECONDS.toMicros(slot.fetchNanos));
+        line.append(",\"extractMicros\":").append(TimeUnit.NANOSECONDS.toMicros(slot.extractNanos));
+        line.append(",\"emails\":").append(slot.emails);
+        if (slot.error != null) {
+            line.append(",\"error\":");
+            string(line, slot.error);
+        }
+        line.append("}\n");
+    }
+
+    private static void string(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Writes the published events and closes the file
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to close the page events file %s. Message: %s", file, e));
+        }
+        LOGGER.info(String.format("Page event log %s closed. Written: %d, dropped: %d", file, written.get(),
+                dropped.get()));
+    }
+
+    private static final class Slot {
+
+        // the sequence of the event the slot is free for, plus one when the event is published
+        private volatile long sequence;
+
+        private long time;
+        private String siteId;
+        private String url;
+        private int status;
+        private long bytes;
+        private long fetchNanos;
+        private long extractNanos;
+        private int emails;
+        private String error;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package jt.upwork.crawler;
+
+/**
+ * Extracts emails and links from a page
+ *
+ * @author jamestravol
+ */
+public interface PageExtractor {
+
+    /**
+     * @param page downloaded page
+     * @return emails and links of the page
+     */
+    PageContent extract(Page page);
+
+}
@@ -0,0 +1,314 @@
+package jt.upwork.crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the metrics of the crawler and the result writer over JMX
+ * and in the Prometheus text format on the local http endpoint {@code /metrics}.
+ * The values are read on request, nothing is sampled in the background.
+ *
+ * @author jamestravol
+ */
+public final class ProcessingMetrics implements ProcessingMetricsMXBean, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessingMetrics.class.getName());
+
+    static final String OBJECT_NAME = "jt.upwork.crawler:type=ProcessingMetrics";
+
+    private final Crawler crawler;
+    private final CrawlerMetrics metrics;
+    // null if there is no writer
+    private final ResultWriter writer;
+
+    private ObjectName objectName;
+    private HttpServer server;
+
+    public ProcessingMetrics(Crawler crawler, ResultWriter writer) {
+        this.crawler = crawler;
+        this.metrics = crawler.getMetrics();
+        this.writer = writer;
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+            mBeanServer.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            LOGGER.severe(String.format("Unable to register the metrics MBean. Message: %s", e));
+        }
+    }
+
+    /**
+     * Starts the http endpoint on the loopback interface
+     *
+     * @param port port, 0 means any free one
+     * @return the port of the endpoint
+     * @throws IOException if the port is not available
+     */
+    public int startHttp(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+        LOGGER.info(String.format("Metrics are available on http://127.0.0.1:%d/metrics",
+                server.getAddress().getPort()));
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the metrics in the Prometheus text format
+     */
+    public String render() {
+        StringBuilder text = new StringBuilder();
+        counter(text, "crawler_pages_total", "Downloaded pages", getPages());
+        counter(text, "crawler_sites_total", "Completed websites", getSites());
+        counter(text, "crawler_body_bytes_total", "Characters of the downloaded bodies", getBytesDownloaded());
+        counter(text, "crawler_wire_bytes_total", "Bytes of the bodies received, compressed", metrics.getWireBytes());
+        counter(text, "crawler_tls_handshakes_total", "TLS handshakes of the downloads", metrics.getHandshakes());
+        counter(text, "crawler_http2_pages_total", "Pages received over HTTP/2", metrics.getHttp2Pages());
+        counter(text, "crawler_skipped_links_total", "Links not followed for their file extension",
+                metrics.getSkippedLinks());
+        counter(text, "crawler_sitemap_files_total", "Downloaded sitemaps", metrics.getSitemapFiles());
+        counter(text, "crawler_sitemap_pages_total", "Pages of the sitemaps fetched first", metrics.getSitemapPages());
+        gauge(text, "crawler_pages_per_second", "Pages per second since the start", getPagesPerSecond());
+        gauge(text, "crawler_sites_per_second", "Websites per second since the start", getSitesPerSecond());
+        gauge(text, "crawler_sites_in_flight", "Websites not completed yet", getSitesInFlight());
+        gauge(text, "crawler_concurrency_limit", "Adaptive limit of the downloads in flight, 0 - not limited",
+                getConcurrencyLimit());
+        gauge(text, "crawler_fetches_in_flight", "Downloads in flight under the limit", getFetchesInFlight());
+        counter(text, "crawler_dns_lookups_total", "Host names looked up in the DNS", getDnsLookups());
+        counter(text, "crawler_dns_cache_hits_total", "Host names found in the DNS cache", getDnsCacheHits());
+        counter(text, "crawler_fast_failures_total", "Downloads failed at once for the dead or unknown hosts",
+                getFastFailures());
+        gauge(text, "crawler_dead_hosts", "Hosts closed for the connection failures", getDeadHosts());
+        counter(text, "crawler_pool_steals_total", "Tasks stolen by the pool threads", getPoolStealCount());
+        gauge(text, "crawler_pool_active_threads", "Active pool threads", getPoolActiveThreads());
+        gauge(text, "crawler_pool_queued_tasks", "Tasks queued in the pool", getPoolQueuedTasks());
+        summary(text, "crawler_fetch_seconds", "Latency of the downloads", metrics.getFetchLatency());
+        summary(text, "crawler_extract_seconds", "Latency of the parsing and the extracting",
+                metrics.getExtractLatency());
+        text.append("# HELP crawler_errors_total Failed downloads by type\n# TYPE crawler_errors_total counter\n");
+        getErrors().forEach((type, count) ->
+                text.append("crawler_errors_total{type=\"").append(type).append("\"} ").append(count).append('\n'));
+        if (writer != null) {
+            summary(text, "writer_batch_seconds", "Latency of the database batches", writer.getBatchLatency());
+            counter(text, "writer_rows_total", "Written rows", getWrittenRows());
+            counter(text, "writer_failed_rows_total", "Rows dropped after the retries", getFailedRows());
+            gauge(text, "writer_queued_rows", "Rows waiting for writing", getQueuedRows());
+        }
+        return text.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        header(text, name, help, "counter");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        header(text, name, help, "gauge");
+        text.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void summary(StringBuilder text, String name, String help, LatencyHistogram histogram) {
+        header(text, name, help, "summary");
+        for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+            text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(format(histogram.getPercentileMills(quantile) / 1000)).append('\n');
+        }
+        text.append(name).append("_sum ").append(format(histogram.getSumMills() / 1000)).append('\n');
+        text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static void header(StringBuilder text, String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    @Override
+    public long getPages() {
+        return metrics.getPages();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        return metrics.getPagesPerSecond();
+    }
+
+    @Override
+    public long getSites() {
+        return metrics.getSites();
+    }
+
+    @Override
+    public double getSitesPerSecond() {
+        return metrics.getSitesPerSecond();
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return metrics.getBytesDownloaded();
+    }
+
+    @Override
+    public int getSitesInFlight() {
+        return crawler.getActiveSites();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return crawler.getConcurrencyLimit();
+    }
+
+    @Override
+    public int getFetchesInFlight() {
+        return crawler.getFetchesInFlight();
+    }
+
+    @Override
+    public long getDnsLookups() {
+        return crawler.getDnsLookups();
+    }
+
+    @Override
+    public long getDnsCacheHits() {
+        return crawler.getDnsCacheHits();
+    }
+
+    @Override
+    public long getFastFailures() {
+        return crawler.getFastFailures();
+    }
+
+    @Override
+    public int getDeadHosts() {
+        return crawler.getDeadHosts();
+    }
+
+    @Override
+    public long getPoolStealCount() {
+        return crawler.getPool().getStealCount();
+    }
+
+    @Override
+    public int getPoolActiveThreads() {
+        return crawler.getPool().getActiveThreadCount();
+    }
+
+    @Override
+    public long getPoolQueuedTasks() {
+        return crawler.getPool().getQueuedTaskCount();
+    }
+
+    @Override
+    public double getFetchLatencyP50() {
+        return metrics.getFetchLatency().getPercentileMills(0.5);
+    }
+
+    @Override
+    public double getFetchLatencyP99() {
+        return metrics.getFetchLatency().getPercentileMills(0.99);
+    }
+
+    @Override
+    public double getFetchLatencyMax() {
+        return metrics.getFetchLatency().getMaxMills();
+    }
+
+    @Override
+    public double getExtractLatencyP50() {
+        return metrics.getExtractLatency().getPercentileMills(0.5);
+    }
+
+    @Override
+    public double getExtractLatencyP99() {
+        return metrics.getExtractLatency().getPercentileMills(0.99);
+    }
+
+    @Override
+    public double getExtractLatencyMax() {
+        return metrics.getExtractLatency().getMaxMills();
+    }
+
+    @Override
+    public double getWriteLatencyP50() {
+        return writer == null ? 0 : writer.getBatchLatency().getPercentileMills(0.5);
+    }
+
+    @Override
+    public double getWriteLatencyP99() {
+        return writer == null ? 0 : writer.getBatchLatency().getPercentileMills(0.99);
+    }
+
+    @Override
+    public double getWriteLatencyMax() {
+        return writer == null ? 0 : writer.getBatchLatency().getMaxMills();
+    }
+
+    @Override
+    public long getWrittenRows() {
+        return writer == null ? 0 : writer.getWrittenRows();
+    }
+
+    @Override
+    public long getFailedRows() {
+        return writer == null ? 0 : writer.getFailedRows();
+    }
+
+    @Override
+    public int getQueuedRows() {
+        return writer == null ? 0 : writer.getQueuedRows();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        return metrics.getErrors();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOGGER.warning(String.format("Unable to unregister the metrics MBean. Message: %s", e));
+            }
+        }
+    }
+
+}
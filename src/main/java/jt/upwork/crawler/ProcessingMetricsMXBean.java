@@ -0,0 +1,68 @@
+package jt.upwork.crawler;
+
+import java.util.Map;
+
+/**
+ * The metrics of the processing published over JMX, the latencies are in milliseconds
+ *
+ * @author jamestravol
+ */
+public interface ProcessingMetricsMXBean {
+
+    long getPages();
+
+    double getPagesPerSecond();
+
+    long getSites();
+
+    double getSitesPerSecond();
+
+    long getBytesDownloaded();
+
+    int getSitesInFlight();
+
+    int getConcurrencyLimit();
+
+    int getFetchesInFlight();
+
+    long getDnsLookups();
+
+    long getDnsCacheHits();
+
+    long getFastFailures();
+
+    int getDeadHosts();
+
+    long getPoolStealCount();
+
+    int getPoolActiveThreads();
+
+    long getPoolQueuedTasks();
+
+    double getFetchLatencyP50();
+
+    double getFetchLatencyP99();
+
+    double getFetchLatencyMax();
+
+    double getExtractLatencyP50();
+
+    double getExtractLatencyP99();
+
+    double getExtractLatencyMax();
+
+    double getWriteLatencyP50();
+
+    double getWriteLatencyP99();
+
+    double getWriteLatencyMax();
+
+    long getWrittenRows();
+
+    long getFailedRows();
+
+    int getQueuedRows();
+
+    Map<String, Long> getErrors();
+
+}
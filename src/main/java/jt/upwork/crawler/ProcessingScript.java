@@ -1,22 +1,18 @@
 package jt.upwork.crawler;
 
 import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.Converter;
 import org.apache.commons.dbcp.BasicDataSource;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
-import java.net.URL;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Paths;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -32,24 +28,44 @@ public final class ProcessingScript {
 
     private final BasicDataSource dataSource = new BasicDataSource();
 
+    private final CrawlerConfig crawlerConfig = new CrawlerConfig();
+
     private String incomeTableName;
     private String incomeIdField;
     private String incomeUrlField;
+    private String incomeLeaseOwnerField;
+    private String incomeLeaseExpiresField;
 
     private String outcomeTableName;
     private String outcomeIdField;
     private String outcomeEmailsField;
     private volatile int outcomeEmailsFieldLength;
+    private int outcomeBatchSize = 100;
+    private long outcomeFlushIntervalMills = 1000;
+    private int outcomeQueueCapacity = 10000;
+    private int outcomeMaxRetries = 3;
+    private long outcomeRetryDelayMills = 1000;
 
     private int processingBatchSize;
     private int processingStartOffset;
+    private int processingReadAheadSize;
+    private int processingMaxSitesInFlight;
     private long processingInfoMessageTimeoutMills;
+    private String processingJournalFile;
+    private int processingMetricsPort;
+    private String processingLeaseOwner;
+    private long processingLeaseMills = 600000;
+    private long processingDomainCacheMills;
+    private int processingDomainCacheSize = 100000;
 
     private int crawlerThreadsCount;
     private int crawlerMaxLinksForPage;
     private int crawlerMaxInheritance;
 
-    private volatile String outcomeSql;
+    private volatile ResultWriter resultWriter;
+    private volatile IncomeSource incomeSource;
+    // null if the progress is not journaled
+    private volatile ProgressJournal journal;
 
     /**
      * Executing the process
@@ -62,67 +78,123 @@ public final class ProcessingScript {
 
         initFromProperties();
 
-        outcomeSql = createOutcomeSql();
-
-        Crawler crawler = createCrawler();
-
-        LOGGER.info("Obtainint the database connection");
-
-        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+        journal = isLeased() ? null : createJournal();
 
-            int step = 0;
+        // the source and the journal are closed after the writer, so the stored results finish their websites
+        try (IncomeSource reader = createIncomeSource(); ResultWriter writer = createResultWriter();
+             Crawler crawler = createCrawler()) {
 
-            boolean hasItems = true;
+            incomeSource = reader;
+            resultWriter = writer;
+            writer.start();
+            reader.start();
 
-            while (hasItems) {
+            ProcessingMetrics metrics = createMetrics(crawler, writer);
+            try {
+                process(reader, crawler);
+            } finally {
+                metrics.close();
+            }
 
-                LOGGER.info(String.format("Requesting the batch step %d", step));
+        } catch (InterruptedException e) {
+            LOGGER.severe("The processing is interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
 
-                try (final ResultSet resultSet = statement.executeQuery(createIncomeSql(step++))) {
+    }
 
-                    List<WebSite> webSites = new ArrayList<>(processingBatchSize);
+    /**
+     * Crawls the websites of the income source until it is over
+     */
+    private void process(IncomeSource reader, Crawler crawler) throws InterruptedException, IOException {
+        DomainDeduplicator deduplicator = new DomainDeduplicator(crawler, processingDomainCacheMills,
+                processingDomainCacheSize);
 
-                    hasItems = false;
+        int maxSitesInFlight = processingMaxSitesInFlight > 0 ? processingMaxSitesInFlight : processingBatchSize;
+        LOGGER.info(String.format("Crawling with max %d websites in flight", maxSitesInFlight));
 
-                    while (resultSet.next()) {
-                        hasItems = true;
+        // a permit per website in flight, released when the website is completed
+        Semaphore inFlight = new Semaphore(maxSitesInFlight);
 
-                        final String url = resultSet.getString(incomeUrlField);
-                        final Optional<URL> urlOptional = UrlUtils.makeUrl(url);
-                        if (urlOptional.isPresent()) {
-                            webSites.add(new WebSite(resultSet.getString(incomeIdField), urlOptional.get()));
-                        } else {
-                            LOGGER.severe(String.format("Unable to form URL from '%s'. Skipping...", url));
-                        }
-                    }
+        long nextInfoMessage = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(processingInfoMessageTimeoutMills);
 
-                    if (!webSites.isEmpty()) {
-                        waitForCrawler(crawler);
-                        LOGGER.info(String.format("Crawling for new %s websites", webSites.size()));
-                        // when crawler finishes the batch we add a new one
-                        crawler.crawl(webSites, this::onComplete);
-                    }
-                }
+        WebSite webSite;
 
+        while ((webSite = reader.take()) != null) {
+            if (journal != null && !journal.start(webSite.getId())) {
+                WebSite skipped = webSite;
+                LOGGER.fine(() -> String.format("Website %s is finished before the restart. Skipping...", skipped));
+                continue;
             }
+            if (deduplicator.join(webSite, this::onComplete)) {
+                // the host is crawled already
+                continue;
+            }
+            // the crawler is topped up as soon as any website is completed
+            while (!inFlight.tryAcquire(processingInfoMessageTimeoutMills, TimeUnit.MILLISECONDS)) {
+                logProgress(crawler, deduplicator);
+                nextInfoMessage = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(processingInfoMessageTimeoutMills);
+            }
+            if (System.nanoTime() >= nextInfoMessage) {
+                logProgress(crawler, deduplicator);
+                nextInfoMessage = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(processingInfoMessageTimeoutMills);
+            }
+            deduplicator.crawl(webSite, (site, emails) -> {
+                try {
+                    onComplete(site, emails);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
 
-            // wait at the end
-            waitForCrawler(crawler);
-
-        } catch (SQLException e) {
-            LOGGER.severe(String.format("SQL exception occurred. Message: %s", e));
+        if (journal != null) {
+            journal.readingCompleted();
         }
 
+        // wait at the end
+        waitForCrawler(crawler, deduplicator);
     }
 
-    private void waitForCrawler(Crawler crawler) {
+    private void waitForCrawler(Crawler crawler, DomainDeduplicator deduplicator) {
         LOGGER.info("Awaiting for the crawler to be free");
 
         // wait for he crawler is free
         while (!crawler.await(this.processingInfoMessageTimeoutMills, TimeUnit.MILLISECONDS)) {
-            LOGGER.info(String.format("Crawling in process. Parallelism: %d. Active threads: %d. Queued task count: %d",
-                    crawler.getPool().getParallelism(), crawler.getPool().getActiveThreadCount(),
-                    crawler.getPool().getQueuedTaskCount()));
+            logProgress(crawler, deduplicator);
+        }
+
+        logProgress(crawler, deduplicator);
+    }
+
+    private void logProgress(Crawler crawler, DomainDeduplicator deduplicator) {
+        LOGGER.info(String.format("Crawling in process. Websites in flight: %d. Websites done: %d. " +
+                        "Parallelism: %d. Active threads: %d. Queued task count: %d. " +
+                        "Requests delayed for politeness: %d. Rate limited responses: %d. " +
+                        "Downloads in flight: %d of limit %d. Dead hosts: %d. Fast failures: %d. " +
+                        "DNS lookups: %d, cache hits: %d",
+                crawler.getActiveSites(), crawler.getCompletedSites(), crawler.getPool().getParallelism(),
+                crawler.getPool().getActiveThreadCount(), crawler.getPool().getQueuedTaskCount(),
+                crawler.getDelayedRequests(), crawler.getRateLimitedResponses(), crawler.getFetchesInFlight(),
+                crawler.getConcurrencyLimit(), crawler.getDeadHosts(), crawler.getFastFailures(),
+                crawler.getDnsLookups(), crawler.getDnsCacheHits()));
+        CrawlerMetrics metrics = crawler.getMetrics();
+        LOGGER.info(String.format("Pages: %d, %.1f/s. Websites: %.2f/s. Fetch p50/p99: %.0f/%.0f ms. " +
+                        "Extract p99: %.1f ms. Pool steals: %d. Errors: %s",
+                metrics.getPages(), metrics.getPagesPerSecond(), metrics.getSitesPerSecond(),
+                metrics.getFetchLatency().getPercentileMills(0.5), metrics.getFetchLatency().getPercentileMills(0.99),
+                metrics.getExtractLatency().getPercentileMills(0.99), crawler.getPool().getStealCount(),
+                metrics.getErrors()));
+        LOGGER.info(String.format("Websites joined to the crawl of their host: %d. Served by the kept emails: %d",
+                deduplicator.getJoinedSites(), deduplicator.getCachedSites()));
+        ResponseCache cache = crawler.getCache();
+        if (cache != null) {
+            LOGGER.info(String.format("Response cache hit ratio: %.1f%%. Bytes saved: %d",
+                    cache.getHitRatio() * 100, cache.getBytesSaved()));
         }
     }
 
@@ -142,18 +214,36 @@ public final class ProcessingScript {
                 .collect(Collectors.toMap(e -> e.getKey().toString().substring(7),
                         Map.Entry::getValue)));
 
+        LOGGER.info("Initializing the crawler parameters");
+        registerEnumConverter(ExecutionMode.class);
+        registerEnumConverter(ExtractionEngine.class);
+        BeanUtils.populate(crawlerConfig, properties.entrySet()
+                .stream().filter(entry -> entry.getKey().toString().startsWith("crawler."))
+                .collect(Collectors.toMap(e -> e.getKey().toString().substring(8),
+                        Map.Entry::getValue)));
+
+    }
+
+    private static <E extends Enum<E>> void registerEnumConverter(Class<E> enumClass) {
+        ConvertUtils.register(new Converter() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T convert(Class<T> type, Object value) {
+                return value == null ? null : (T) Enum.valueOf(enumClass, value.toString().trim().toUpperCase());
+            }
+        }, enumClass);
     }
 
     private Crawler createCrawler() {
-        if (crawlerThreadsCount == 0) {
-            LOGGER.info(String.format("Creating the Crawler with params - maxLinksForPage: %s, maxInheritance: %s",
-                    crawlerMaxLinksForPage, crawlerMaxInheritance));
-            return new Crawler(crawlerMaxLinksForPage, crawlerMaxInheritance);
-        } else {
-            LOGGER.info(String.format("Creating the Crawler with params - maxLinksForPage: %s, maxInheritance: %s, threadCount: %s",
-                    crawlerMaxLinksForPage, crawlerMaxInheritance, crawlerThreadsCount));
-            return new Crawler(crawlerMaxLinksForPage, crawlerMaxInheritance, crawlerThreadsCount);
+        crawlerConfig.setMaxLinksForPage(crawlerMaxLinksForPage);
+        crawlerConfig.setMaxInheritance(crawlerMaxInheritance);
+        crawlerConfig.setThreadsCount(crawlerThreadsCount);
+        if (crawlerConfig.getMaxEmailsLength() == 0) {
+            // there is no use to crawl for the emails which do not fit the outcome field
+            crawlerConfig.setMaxEmailsLength(outcomeEmailsFieldLength);
         }
+        LOGGER.info(String.format("Creating the Crawler with params - %s", crawlerConfig));
+        return new Crawler(crawlerConfig);
     }
 
     private void onComplete(WebSite webSite, Set<String> emails) {
@@ -167,23 +257,80 @@ public final class ProcessingScript {
         }
 
         if (!result.isEmpty()) {
-            LOGGER.info(String.format("Updating website %s. Emails: %s", webSite, result));
-            try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(outcomeSql)) {
-                statement.setString(1, result);
-                statement.setString(2, webSite.getId());
-
-                final int updated = statement.executeUpdate();
-                LOGGER.info(String.format("Update of website %s performed. %d rows affected.", webSite, updated));
-            } catch (SQLException e) {
-                LOGGER.severe(String.format("SQL exception occurred. Message^ %s", e));
+            String emailsString = result;
+            LOGGER.info(() -> String.format("Updating website %s. Emails: %s", webSite, emailsString));
+            try {
+                // the website is finished when the result is written
+                resultWriter.write(webSite.getId(), result);
+            } catch (InterruptedException e) {
+                LOGGER.severe(String.format("Interrupted while queueing the result of website %s", webSite));
+                Thread.currentThread().interrupt();
             }
+        } else {
+            finished(webSite.getId());
+        }
+
+    }
+
+    private void finished(String id) {
+        if (journal != null) {
+            journal.finish(id);
+        }
+        incomeSource.finish(id);
+    }
+
+    private boolean isLeased() {
+        return incomeLeaseOwnerField != null && !incomeLeaseOwnerField.trim().isEmpty();
+    }
+
+    private IncomeSource createIncomeSource() {
+        if (!isLeased()) {
+            return createIncomeReader();
+        }
+        int readAheadSize = processingReadAheadSize > 0 ? processingReadAheadSize : processingBatchSize * 2;
+        String owner = processingLeaseOwner == null || processingLeaseOwner.trim().isEmpty()
+                ? ManagementFactory.getRuntimeMXBean().getName() : processingLeaseOwner.trim();
+        LOGGER.info(String.format("Creating the leased income reader with params - owner: %s, leaseMills: %d, " +
+                        "batchSize: %d, readAheadSize: %d", owner, processingLeaseMills, processingBatchSize,
+                readAheadSize));
+        return new LeasedIncomeReader(dataSource, incomeTableName, incomeIdField, incomeUrlField,
+                incomeLeaseOwnerField.trim(), incomeLeaseExpiresField.trim(), owner, processingLeaseMills,
+                processingBatchSize, readAheadSize);
+    }
+
+    private IncomeReader createIncomeReader() {
+        int readAheadSize = processingReadAheadSize > 0 ? processingReadAheadSize : processingBatchSize * 2;
+        String startAfterId = journal == null ? null : journal.getCheckpoint();
+        LOGGER.info(String.format("Creating the income reader with params - pageSize: %d, startOffset: %d, " +
+                        "startAfterId: %s, readAheadSize: %d",
+                processingBatchSize, processingStartOffset, startAfterId, readAheadSize));
+        return new IncomeReader(dataSource, incomeTableName, incomeIdField, incomeUrlField, processingBatchSize,
+                processingStartOffset, readAheadSize, startAfterId);
+    }
+
+    private ProcessingMetrics createMetrics(Crawler crawler, ResultWriter writer) throws IOException {
+        ProcessingMetrics metrics = new ProcessingMetrics(crawler, writer);
+        metrics.registerMBean();
+        if (processingMetricsPort > 0) {
+            metrics.startHttp(processingMetricsPort);
         }
+        return metrics;
+    }
 
+    private ProgressJournal createJournal() throws IOException {
+        if (processingJournalFile == null || processingJournalFile.trim().isEmpty()) {
+            return null;
+        }
+        LOGGER.info(String.format("Opening the progress journal %s", processingJournalFile));
+        return new ProgressJournal(Paths.get(processingJournalFile.trim()));
     }
 
-    private String createIncomeSql(int step) {
-        return String.format("SELECT %s, %s FROM %s ORDER BY %s LIMIT %d OFFSET %d",
-                incomeIdField, incomeUrlField, incomeTableName, incomeIdField, processingBatchSize, processingStartOffset + processingBatchSize * step);
+    private ResultWriter createResultWriter() {
+        LOGGER.info(String.format("Creating the result writer with params - batchSize: %d, flushIntervalMills: %d, " +
+                        "queueCapacity: %d, maxRetries: %d", outcomeBatchSize, outcomeFlushIntervalMills,
+                outcomeQueueCapacity, outcomeMaxRetries));
+        return new ResultWriter(dataSource, createOutcomeSql(), outcomeBatchSize, outcomeFlushIntervalMills,
+                outcomeQueueCapacity, outcomeMaxRetries, outcomeRetryDelayMills, this::finished);
     }
 
     private String createOutcomeSql() {
@@ -215,6 +362,22 @@ public final class ProcessingScript {
         this.incomeUrlField = incomeUrlField;
     }
 
+    public String getIncomeLeaseOwnerField() {
+        return incomeLeaseOwnerField;
+    }
+
+    public void setIncomeLeaseOwnerField(String incomeLeaseOwnerField) {
+        this.incomeLeaseOwnerField = incomeLeaseOwnerField;
+    }
+
+    public String getIncomeLeaseExpiresField() {
+        return incomeLeaseExpiresField;
+    }
+
+    public void setIncomeLeaseExpiresField(String incomeLeaseExpiresField) {
+        this.incomeLeaseExpiresField = incomeLeaseExpiresField;
+    }
+
     public String getOutcomeTableName() {
         return outcomeTableName;
     }
@@ -247,6 +410,46 @@ public final class ProcessingScript {
         this.outcomeEmailsFieldLength = outcomeEmailsFieldLength;
     }
 
+    public int getOutcomeBatchSize() {
+        return outcomeBatchSize;
+    }
+
+    public void setOutcomeBatchSize(int outcomeBatchSize) {
+        this.outcomeBatchSize = outcomeBatchSize;
+    }
+
+    public long getOutcomeFlushIntervalMills() {
+        return outcomeFlushIntervalMills;
+    }
+
+    public void setOutcomeFlushIntervalMills(long outcomeFlushIntervalMills) {
+        this.outcomeFlushIntervalMills = outcomeFlushIntervalMills;
+    }
+
+    public int getOutcomeQueueCapacity() {
+        return outcomeQueueCapacity;
+    }
+
+    public void setOutcomeQueueCapacity(int outcomeQueueCapacity) {
+        this.outcomeQueueCapacity = outcomeQueueCapacity;
+    }
+
+    public int getOutcomeMaxRetries() {
+        return outcomeMaxRetries;
+    }
+
+    public void setOutcomeMaxRetries(int outcomeMaxRetries) {
+        this.outcomeMaxRetries = outcomeMaxRetries;
+    }
+
+    public long getOutcomeRetryDelayMills() {
+        return outcomeRetryDelayMills;
+    }
+
+    public void setOutcomeRetryDelayMills(long outcomeRetryDelayMills) {
+        this.outcomeRetryDelayMills = outcomeRetryDelayMills;
+    }
+
     public int getProcessingBatchSize() {
         return processingBatchSize;
     }
@@ -263,6 +466,22 @@ public final class ProcessingScript {
         this.processingStartOffset = processingStartOffset;
     }
 
+    public int getProcessingReadAheadSize() {
+        return processingReadAheadSize;
+    }
+
+    public void setProcessingReadAheadSize(int processingReadAheadSize) {
+        this.processingReadAheadSize = processingReadAheadSize;
+    }
+
+    public int getProcessingMaxSitesInFlight() {
+        return processingMaxSitesInFlight;
+    }
+
+    public void setProcessingMaxSitesInFlight(int processingMaxSitesInFlight) {
+        this.processingMaxSitesInFlight = processingMaxSitesInFlight;
+    }
+
     public long getProcessingInfoMessageTimeoutMills() {
         return processingInfoMessageTimeoutMills;
     }
@@ -271,6 +490,54 @@ public final class ProcessingScript {
         this.processingInfoMessageTimeoutMills = processingInfoMessageTimeoutMills;
     }
 
+    public String getProcessingJournalFile() {
+        return processingJournalFile;
+    }
+
+    public void setProcessingJournalFile(String processingJournalFile) {
+        this.processingJournalFile = processingJournalFile;
+    }
+
+    public int getProcessingMetricsPort() {
+        return processingMetricsPort;
+    }
+
+    public void setProcessingMetricsPort(int processingMetricsPort) {
+        this.processingMetricsPort = processingMetricsPort;
+    }
+
+    public String getProcessingLeaseOwner() {
+        return processingLeaseOwner;
+    }
+
+    public void setProcessingLeaseOwner(String processingLeaseOwner) {
+        this.processingLeaseOwner = processingLeaseOwner;
+    }
+
+    public long getProcessingLeaseMills() {
+        return processingLeaseMills;
+    }
+
+    public void setProcessingLeaseMills(long processingLeaseMills) {
+        this.processingLeaseMills = processingLeaseMills;
+    }
+
+    public long getProcessingDomainCacheMills() {
+        return processingDomainCacheMills;
+    }
+
+    public void setProcessingDomainCacheMills(long processingDomainCacheMills) {
+        this.processingDomainCacheMills = processingDomainCacheMills;
+    }
+
+    public int getProcessingDomainCacheSize() {
+        return processingDomainCacheSize;
+    }
+
+    public void setProcessingDomainCacheSize(int processingDomainCacheSize) {
+        this.processingDomainCacheSize = processingDomainCacheSize;
+    }
+
     public int getCrawlerThreadsCount() {
         return crawlerThreadsCount;
     }
@@ -0,0 +1,226 @@
+package jt.upwork.crawler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Crash safe progress of the processing, an append only file of the finished websites.
+ * <p>
+ * The websites are started in the order of the income reader and finished in any order.
+ * The checkpoint is the id of the last website of the finished prefix, the reader resumes after it.
+ * The websites finished beyond the checkpoint are recorded one by one and skipped on the restart,
+ * so only the websites in flight at the crash are crawled again. The started websites are recorded too,
+ * the recovery drops the finished ones started up to a checkpoint the same way the live journal does.
+ * <p>
+ * The file is rewritten with the checkpoint, the websites started beyond it and the finished ones every
+ * compactRecords records, so the recovery reads the amount of the websites in flight, not the amount
+ * of the processed ones.
+ *
+ * @author jamestravol
+ */
+public final class ProgressJournal implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ProgressJournal.class.getName());
+
+    private static final int COMPACT_RECORDS = 100_000;
+    private static final char CHECKPOINT = 'C';
+    private static final char STARTED = 'S';
+    private static final char FINISHED = 'F';
+
+    private final Path file;
+    private final int compactRecords;
+
+    private FileChannel channel;
+    private int records;
+
+    private String checkpoint;
+    // the websites started in this run and not covered by the checkpoint yet, in the order of the reader
+    private final ArrayDeque<String> started = new ArrayDeque<>();
+    // the websites finished beyond the checkpoint
+    private final Set<String> finished = new HashSet<>();
+    // the websites finished before the restart and not read again yet
+    private final Set<String> recovered = new HashSet<>();
+
+    public ProgressJournal(Path file) throws IOException {
+        this(file, COMPACT_RECORDS);
+    }
+
+    ProgressJournal(Path file, int compactRecords) throws IOException {
+        this.file = file;
+        this.compactRecords = compactRecords;
+        if (Files.exists(file)) {
+            replay();
+        }
+        compact();
+        LOGGER.info(String.format("Progress journal %s opened. Checkpoint: %s, finished beyond it: %d",
+                file, checkpoint, recovered.size()));
+    }
+
+    /**
+     * @return the id of the last website of the finished prefix or null if nothing is finished
+     */
+    public synchronized String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Starts the website read after the checkpoint
+     *
+     * @param id website id
+     * @return false if the website was finished before the restart and must be skipped
+     */
+    public synchronized boolean start(String id) {
+        started.add(id);
+        records++;
+        try {
+            append(STARTED + " " + id + "\n");
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to write the progress journal %s. Message: %s", file, e));
+        }
+        if (recovered.remove(id)) {
+            finished.add(id);
+            advance();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finishes the website, its result is stored
+     *
+     * @param id website id
+     */
+    public synchronized void finish(String id) {
+        finished.add(id);
+        StringBuilder record = new StringBuilder();
+        record.append(FINISHED).append(' ').append(id).append('\n');
+        records++;
+        if (advance()) {
+            record.append(CHECKPOINT).append(' ').append(checkpoint).append('\n');
+            records++;
+        }
+        try {
+            append(record.toString());
+            if (records >= compactRecords) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to write the progress journal %s. Message: %s", file, e));
+        }
+    }
+
+    /**
+     * Called when the income table is read to the end, the websites finished before the restart
+     * which were not read again are behind the checkpoint and are forgotten
+     */
+    public synchronized void readingCompleted() {
+        recovered.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            compact();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to close the progress journal %s. Message: %s", file, e));
+        }
+    }
+
+    private boolean advance() {
+        boolean advanced = false;
+        while (!started.isEmpty() && finished.remove(started.peek())) {
+            checkpoint = started.poll();
+            advanced = true;
+        }
+        return advanced;
+    }
+
+    private void append(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads the records, the last one is ignored if it is cut off by a crash
+     */
+    private void replay() throws IOException {
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n') + 1;
+        if (end < text.length()) {
+            LOGGER.warning(String.format("The last record of the progress journal %s is cut off", file));
+        }
+        // the websites started after the last checkpoint in the order of the reader
+        ArrayDeque<String> order = new ArrayDeque<>();
+        for (String line : text.substring(0, end).split("\n")) {
+            if (line.length() < 3 || line.charAt(1) != ' ') {
+                continue;
+            }
+            String id = line.substring(2);
+            if (line.charAt(0) == CHECKPOINT) {
+                checkpoint = id;
+                recovered.remove(id);
+                // the websites started up to the checkpoint are covered by it, finished in any order
+                while (!order.isEmpty()) {
+                    String covered = order.poll();
+                    recovered.remove(covered);
+                    if (covered.equals(id)) {
+                        break;
+                    }
+                }
+            } else if (line.charAt(0) == STARTED) {
+                order.add(id);
+            } else if (line.charAt(0) == FINISHED) {
+                recovered.add(id);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file with the current state, the new file replaces the old one atomically
+     */
+    private void compact() throws IOException {
+        StringBuilder text = new StringBuilder();
+        if (checkpoint != null) {
+            text.append(CHECKPOINT).append(' ').append(checkpoint).append('\n');
+        }
+        for (String id : started) {
+            text.append(STARTED).append(' ').append(id).append('\n');
+        }
+        for (String id : finished) {
+            text.append(FINISHED).append(' ').append(id).append('\n');
+        }
+        for (String id : recovered) {
+            text.append(FINISHED).append(' ').append(id).append('\n');
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = 0;
+    }
+
+}
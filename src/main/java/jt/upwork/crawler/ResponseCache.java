@@ -0,0 +1,520 @@
+package jt.upwork.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of the pages for the re-crawls.
+ * A page is stored with its ETag and Last-Modified headers, so the next crawl sends the conditional request
+ * and takes the content of a not modified page from the cache without the download and the parsing.
+ * <p>
+ * The extracted content is stored, not the body: it is much smaller and is all the crawler needs.
+ * The contents are addressed by their hash, so the equal ones are stored once.
+ * The records are appended to the segment files, the oldest segment is deleted when the cache grows over its size.
+ * The pages found in the cache are copied to the current segment, so the used ones are not evicted.
+ * <p>
+ * Only the index is kept in the memory, the contents are read from the disk on the lookups.
+ * The index is guarded by the lock, the files are read and written out of it by the positional operations.
+ *
+ * @author jamestravol
+ */
+public final class ResponseCache implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class.getName());
+
+    private static final byte INDEX_RECORD = 1;
+    private static final byte CONTENT_RECORD = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int SEGMENTS = 8;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+
+    // url fingerprint -> the latest index record, the contents stay on the disk
+    private final Map<Long, Indexed> entries = new HashMap<>();
+    // content hash -> the location of the content record
+    private final Map<Long, Location> contents = new HashMap<>();
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    private int currentSegment;
+    // the bytes of the current segment including the ones reserved for the records being written
+    private long currentSize;
+    private long totalBytes;
+
+    private long lookups;
+    private long hits;
+    private long stores;
+    private long bytesSaved;
+
+    /**
+     * Opens the cache, the stored pages are indexed
+     *
+     * @param directory the directory of the segment files
+     * @param maxBytes  the size of the cache on the disk
+     */
+    public ResponseCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = Math.max(1, maxBytes / SEGMENTS);
+
+        Files.createDirectories(directory);
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> numbers.add(Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        numbers.sort(null);
+        for (int number : numbers) {
+            load(number);
+        }
+        openSegment(numbers.isEmpty() ? 0 : numbers.get(numbers.size() - 1) + 1);
+
+        LOGGER.info(String.format("Response cache %s opened. Pages: %d, bytes: %d", directory, entries.size(), totalBytes));
+    }
+
+    /**
+     * Finds the page stored by the previous crawls, its content is read from the disk
+     *
+     * @param url page url
+     * @return the stored page or null
+     */
+    Entry lookup(URL url) {
+        long fingerprint = UrlUtils.fingerprint(url);
+        Indexed indexed;
+        Location location;
+        FileChannel channel;
+        synchronized (this) {
+            lookups++;
+            indexed = entries.get(fingerprint);
+            if (indexed == null) {
+                return null;
+            }
+            location = contents.get(indexed.contentHash);
+            channel = location == null ? null : segments.get(location.segment);
+            if (channel == null) {
+                // the content is evicted
+                entries.remove(fingerprint);
+                return null;
+            }
+        }
+        // the content is read out of the lock, the lookups of the workers do not wait for each other
+        Entry entry = null;
+        try {
+            byte[] contentBytes = read(channel, location);
+            entry = new Entry(indexed, contentBytes, deserialize(contentBytes));
+        } catch (ClosedChannelException e) {
+            // the segment is evicted meanwhile
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to read the cached page %s. Message: %s", url, e));
+        }
+        if (entry == null) {
+            synchronized (this) {
+                entries.remove(fingerprint, indexed);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Counts the not modified page, the page is kept in the current segment
+     *
+     * @param url   page url
+     * @param entry the stored page
+     */
+    void hit(URL url, Entry entry) {
+        synchronized (this) {
+            hits++;
+            bytesSaved += entry.indexed.bodyLength;
+            if (entry.indexed.segment == currentSegment) {
+                return;
+            }
+        }
+        // the content is copied as it was read, it is not serialized again
+        write(UrlUtils.fingerprint(url), entry.indexed.etag, entry.indexed.lastModified, entry.indexed.bodyLength,
+                entry.contentBytes);
+    }
+
+    /**
+     * Stores the page if it has the validators for the conditional requests
+     *
+     * @param page    downloaded page
+     * @param content its content
+     */
+    void store(Page page, PageContent content) {
+        if (page.getStatusCode() != 200 || (page.getEtag() == null && page.getLastModified() == null)) {
+            return;
+        }
+        synchronized (this) {
+            stores++;
+        }
+        try {
+            write(UrlUtils.fingerprint(page.getUrl()), page.getEtag(), page.getLastModified(),
+                    page.getBody().length(), serialize(content));
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to write to the response cache. Message: %s", e));
+        }
+    }
+
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the share of the requests answered with 304
+     */
+    public synchronized double getHitRatio() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return the size of the bodies which were not downloaded
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public synchronized void close() {
+        LOGGER.info(String.format("Response cache %s closed. Hit ratio: %.1f%%, hits: %d, stored: %d, bytes saved: %d",
+                directory, getHitRatio() * 100, hits, stores, bytesSaved));
+        for (FileChannel channel : segments.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warning(String.format("Unable to close the cache segment. Message: %s", e));
+            }
+        }
+        segments.clear();
+    }
+
+    /**
+     * The space for the records is reserved in the current segment under the lock, they are written out of it
+     * and indexed when they are on the disk
+     */
+    private void write(long fingerprint, String etag, String lastModified, int bodyLength, byte[] contentBytes) {
+        Map<Integer, FileChannel> evicted = new HashMap<>();
+        try {
+            long contentHash = hash(contentBytes);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(contentBytes.length + 128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(CONTENT_RECORD);
+            out.writeLong(contentHash);
+            out.writeInt(contentBytes.length);
+            out.write(contentBytes);
+            int contentOffset = out.size() - contentBytes.length;
+            int indexOffset = out.size();
+            out.writeByte(INDEX_RECORD);
+            out.writeLong(fingerprint);
+            out.writeLong(contentHash);
+            out.writeInt(bodyLength);
+            writeString(out, etag);
+            writeString(out, lastModified);
+            out.flush();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+            int segment;
+            long position;
+            FileChannel channel;
+            boolean withContent;
+            synchronized (this) {
+                Location location = contents.get(contentHash);
+                // the equal content is already in the current segment, the index record refers to it
+                withContent = location == null || location.segment != currentSegment;
+                if (!withContent) {
+                    buffer.position(indexOffset);
+                }
+                segment = currentSegment;
+                channel = segments.get(segment);
+                if (channel == null) {
+                    // the cache is closed
+                    return;
+                }
+                position = currentSize;
+                currentSize += buffer.remaining();
+                totalBytes += buffer.remaining();
+                if (currentSize >= segmentBytes) {
+                    openSegment(currentSegment + 1);
+                }
+                while (totalBytes > maxBytes && segments.size() > 1) {
+                    int number = segments.firstKey();
+                    evicted.put(number, evict(number));
+                }
+            }
+
+            for (long offset = position; buffer.hasRemaining(); ) {
+                offset += channel.write(buffer, offset);
+            }
+
+            synchronized (this) {
+                if (segments.get(segment) != channel) {
+                    // the segment is evicted meanwhile
+                    return;
+                }
+                if (withContent) {
+                    contents.put(contentHash, new Location(segment, position + contentOffset, contentBytes.length));
+                }
+                entries.put(fingerprint, new Indexed(segment, contentHash, bodyLength, etag, lastModified));
+            }
+        } catch (ClosedChannelException e) {
+            // the segment is evicted or the cache is closed meanwhile
+        } catch (IOException e) {
+            LOGGER.severe(String.format("Unable to write to the response cache. Message: %s", e));
+        } finally {
+            evicted.forEach(this::delete);
+        }
+    }
+
+    private static byte[] read(FileChannel channel, Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, location.offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated content record");
+            }
+        }
+        return buffer.array();
+    }
+
+    private void openSegment(int number) throws IOException {
+        segments.put(number, FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+        currentSegment = number;
+        currentSize = 0;
+    }
+
+    /**
+     * Drops the segment from the index
+     *
+     * @return the channel of the segment to be deleted out of the lock
+     */
+    private FileChannel evict(int number) throws IOException {
+        FileChannel channel = segments.remove(number);
+        totalBytes -= channel.size();
+        entries.values().removeIf(indexed -> indexed.segment == number);
+        contents.values().removeIf(location -> location.segment == number);
+        return channel;
+    }
+
+    private void delete(int number, FileChannel channel) {
+        try {
+            channel.close();
+            Files.deleteIfExists(segmentPath(number));
+            LOGGER.fine(String.format("Response cache segment %d evicted", number));
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Unable to delete the cache segment %d. Message: %s", number, e));
+        }
+    }
+
+    /**
+     * Indexes the records of the segment, a record broken by a crash is cut off
+     */
+    private void load(int number) throws IOException {
+        Path path = segmentPath(number);
+        long size = Files.size(path);
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (offset < size) {
+                byte type = in.readByte();
+                if (type == CONTENT_RECORD) {
+                    long contentHash = in.readLong();
+                    int length = in.readInt();
+                    if (in.skipBytes(length) != length) {
+                        throw new EOFException("Truncated content record");
+                    }
+                    contents.put(contentHash, new Location(number, offset + 13, length));
+                    offset += 13 + length;
+                } else if (type == INDEX_RECORD) {
+                    long fingerprint = in.readLong();
+                    long contentHash = in.readLong();
+                    int bodyLength = in.readInt();
+                    String etag = readString(in);
+                    String lastModified = readString(in);
+                    entries.put(fingerprint, new Indexed(number, contentHash, bodyLength, etag, lastModified));
+                    offset += 21 + stringLength(etag) + stringLength(lastModified);
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Response cache segment %d is broken at %d, cut off. Message: %s",
+                    number, offset, e));
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (offset < size) {
+            channel.truncate(offset);
+        }
+        segments.put(number, channel);
+        totalBytes += offset;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static byte[] serialize(PageContent content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(content.getEmails().size());
+        for (String email : content.getEmails()) {
+            writeString(out, email);
+        }
+        out.writeInt(content.getHrefs().size());
+        for (String href : content.getHrefs()) {
+            writeString(out, href);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static PageContent deserialize(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int emailsCount = in.readInt();
+        Set<String> emails = new LinkedHashSet<>();
+        for (int i = 0; i < emailsCount; i++) {
+            emails.add(readString(in));
+        }
+        int hrefsCount = in.readInt();
+        List<String> hrefs = new ArrayList<>(hrefsCount);
+        for (int i = 0; i < hrefsCount; i++) {
+            hrefs.add(readString(in));
+        }
+        return new PageContent(emails, hrefs);
+    }
+
+    // the length prefixed utf-8, -1 is null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stringLength(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * A page stored by the previous crawls with its content read from the disk
+     */
+    static final class Entry {
+
+        private final Indexed indexed;
+        private final byte[] contentBytes;
+        private final PageContent content;
+
+        private Entry(Indexed indexed, byte[] contentBytes, PageContent content) {
+            this.indexed = indexed;
+            this.contentBytes = contentBytes;
+            this.content = content;
+        }
+
+        /**
+         * @return the headers of the conditional request
+         */
+        Map<String, String> conditionalHeaders() {
+            Map<String, String> headers = new HashMap<>();
+            if (indexed.etag != null) {
+                headers.put("If-None-Match", indexed.etag);
+            }
+            if (indexed.lastModified != null) {
+                headers.put("If-Modified-Since", indexed.lastModified);
+            }
+            return headers;
+        }
+
+        PageContent getContent() {
+            return content;
+        }
+
+        String getEtag() {
+            return indexed.etag;
+        }
+
+        String getLastModified() {
+            return indexed.lastModified;
+        }
+    }
+
+    /**
+     * The index record of a page
+     */
+    private static final class Indexed {
+
+        private final int segment;
+        private final long contentHash;
+        private final int bodyLength;
+        private final String etag;
+        private final String lastModified;
+
+        private Indexed(int segment, long contentHash, int bodyLength, String etag, String lastModified) {
+            this.segment = segment;
+            this.contentHash = contentHash;
+            this.bodyLength = bodyLength;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final class Location {
+
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        private Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+package jt.upwork.crawler;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Writes the crawling results to the outcome table.
+ * The results are collected in the bounded queue and flushed by the JDBC batches on the dedicated thread,
+ * when the batch is full or the flush interval is passed. A failed batch is retried, then its rows are written one by
+ * one, so a bad row does not drop the others. The rows not written are not reported and are crawled again after the
+ * restart.
+ *
+ * @author jamestravol
+ */
+public final class ResultWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ResultWriter.class.getName());
+
+    private final DataSource dataSource;
+    private final String outcomeSql;
+    private final int batchSize;
+    private final long flushIntervalMills;
+    private final int maxRetries;
+    private final long retryDelayMills;
+    private final Consumer<String> written;
+
+    private final BlockingQueue<Row> queue;
+    private final Thread thread;
+
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private volatile long startNanos;
+    private volatile boolean closed;
+
+    /**
+     * @param dataSource         data source
+     * @param outcomeSql         update statement with the emails as the first parameter and the id as the second one
+     * @param batchSize          max amount of rows in a batch
+     * @param flushIntervalMills max time the row waits for the batch
+     * @param queueCapacity      max amount of the rows waiting for writing, the producers are blocked when it is full
+     * @param maxRetries         amount of retries of a failed batch
+     * @param retryDelayMills    delay before the first retry, doubled for the next ones
+     */
+    public ResultWriter(DataSource dataSource, String outcomeSql, int batchSize, long flushIntervalMills,
+                        int queueCapacity, int maxRetries, long retryDelayMills) {
+        this(dataSource, outcomeSql, batchSize, flushIntervalMills, queueCapacity, maxRetries, retryDelayMills,
+                id -> {
+                });
+    }
+
+    /**
+     * @param written called with the id of every row when it is committed, never for the dropped rows
+     */
+    public ResultWriter(DataSource dataSource, String outcomeSql, int batchSize, long flushIntervalMills,
+                        int queueCapacity, int maxRetries, long retryDelayMills, Consumer<String> written) {
+        this.dataSource = dataSource;
+        this.outcomeSql = outcomeSql;
+        this.batchSize = batchSize;
+        this.flushIntervalMills = flushIntervalMills;
+        this.maxRetries = maxRetries;
+        this.retryDelayMills = retryDelayMills;
+        this.written = written;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::run, "result-writer");
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        thread.start();
+    }
+
+    /**
+     * Queues the result for writing, blocks while the queue is full
+     *
+     * @param id     website id
+     * @param emails emails string
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void write(String id, String emails) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        queue.put(new Row(id, emails));
+    }
+
+    private void run() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        long flushDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMills);
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                long waitNanos = flushDeadline - System.nanoTime();
+                Row row = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : queue.poll();
+                if (row != null) {
+                    batch.add(row);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                LOGGER.severe("The result writer is interrupted");
+                closed = true;
+            }
+
+            if (batch.size() >= batchSize || System.nanoTime() >= flushDeadline || (closed && queue.isEmpty())) {
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    batch.clear();
+                }
+                flushDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMills);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    /**
+     * Flushes the batch, the rows of the failed batch are written one by one
+     */
+    private void write(List<Row> batch) {
+        if (flush(batch)) {
+            notifyWritten(batch);
+            return;
+        }
+        if (batch.size() == 1) {
+            failedRows.incrementAndGet();
+            return;
+        }
+        for (Row row : batch) {
+            List<Row> single = Collections.singletonList(row);
+            try {
+                executeBatch(single);
+                writtenRows.incrementAndGet();
+                notifyWritten(single);
+            } catch (SQLException e) {
+                failedRows.incrementAndGet();
+                LOGGER.severe(String.format("Unable to write the result of the website %s. Message: %s", row.id, e));
+            }
+        }
+    }
+
+    private void notifyWritten(List<Row> batch) {
+        for (Row row : batch) {
+            written.accept(row.id);
+        }
+    }
+
+    /**
+     * @return true if the batch is committed
+     */
+    private boolean flush(List<Row> batch) {
+        long delay = retryDelayMills;
+        for (int attempt = 0; ; attempt++) {
+            long startNanos = System.nanoTime();
+            try {
+                int updated = executeBatch(batch);
+                batchLatency.recordSince(startNanos);
+                writtenRows.addAndGet(batch.size());
+                LOGGER.fine(() -> String.format("Batch of %d results written. %d rows affected. Total: %d, %.1f rows/s",
+                        batch.size(), updated, writtenRows.get(), getRowsPerSecond()));
+                return true;
+            } catch (SQLException e) {
+                if (attempt >= maxRetries) {
+                    LOGGER.severe(String.format("Unable to write the batch of %d results after %d retries. Message: %s",
+                            batch.size(), maxRetries, e));
+                    return false;
+                }
+                LOGGER.warning(String.format("SQL exception occurred while writing the batch. Retrying in %d ms. Message: %s",
+                        delay, e));
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    private int executeBatch(List<Row> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(outcomeSql)) {
+                for (Row row : batch) {
+                    statement.setString(1, row.emails);
+                    statement.setString(2, row.id);
+                    statement.addBatch();
+                }
+                int updated = 0;
+                for (int count : statement.executeBatch()) {
+                    updated += Math.max(count, 0);
+                }
+                connection.commit();
+                return updated;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * @return the amount of the rows written since the start
+     */
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    /**
+     * @return the amount of the rows dropped after all the retries, they are left unfinished
+     */
+    public long getFailedRows() {
+        return failedRows.get();
+    }
+
+    /**
+     * @return the amount of the rows waiting for writing
+     */
+    public int getQueuedRows() {
+        return queue.size();
+    }
+
+    /**
+     * @return the latency of the successful batches
+     */
+    public LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+
+    public double getRowsPerSecond() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return elapsedNanos > 0 ? writtenRows.get() * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * Flushes the queued results and stops the writer thread.
+     * Waits at most the flush interval for the writer to notice the closing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info(String.format("Result writer closed. Written: %d, failed: %d, %.1f rows/s",
+                writtenRows.get(), failedRows.get(), getRowsPerSecond()));
+    }
+
+    private static final class Row {
+
+        private final String id;
+        private final String emails;
+
+        private Row(String id, String emails) {
+            this.id = id;
+            this.emails = emails;
+        }
+    }
+
+}
@@ -1,6 +1,11 @@
 package jt.upwork.crawler;
 
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.logging.Logger;
 
 /**
  * A task for processing a root website.
@@ -9,19 +14,42 @@ import java.util.Set;
  */
 public final class RootEmailExtractionTask extends EmailExtractionTask {
 
-    private final WebSite webSite;
+    private static final Logger LOGGER = Logger.getLogger(RootEmailExtractionTask.class.getName());
+
+    private final SiteContext context;
+    private final boolean managedBlocking;
     private ExtractionCompleted extractionCompleted;
 
-    public RootEmailExtractionTask(WebSite webSite, int maxLinksForPage, int maxInheritance, ExtractionCompleted extractionCompleted) {
-        super(webSite.getUrl(), webSite.getUrl(), 0, maxLinksForPage, maxInheritance);
-        this.webSite = webSite;
+    RootEmailExtractionTask(SiteContext context, boolean managedBlocking, ExtractionCompleted extractionCompleted) {
+        super(context, context.getRootDomain(), 0, managedBlocking);
+        this.context = context;
+        this.managedBlocking = managedBlocking;
         this.extractionCompleted = extractionCompleted;
     }
 
     @Override
-    protected Set<String> compute() {
-        Set<String> result = super.compute();
-        extractionCompleted.onComplete(webSite, result);
-        return result;
+    protected void compute() {
+        // the pages found in the sitemaps are processed before the root, the root is skipped if they are enough
+        List<URL> discovered;
+        try {
+            discovered = await(context.discoverPages(), managedBlocking, context.getRootDomain());
+        } catch (RuntimeException e) {
+            discovered = Collections.emptyList();
+        }
+        List<EmailExtractionTask> pages = new ArrayList<>();
+        for (URL url : discovered) {
+            EmailExtractionTask task = new EmailExtractionTask(context, url, 1, managedBlocking);
+            task.fork();
+            pages.add(task);
+        }
+        for (EmailExtractionTask task : pages) {
+            task.join();
+        }
+        super.compute();
+        Set<String> result = context.getEmails();
+        LOGGER.info(() -> String.format("Website %s completed. Pages fetched: %d, emails found: %d, " +
+                        "bytes received: %d, TLS handshakes: %d", context.getWebSite(), context.getFetchedPages(),
+                result.size(), context.getWireBytes(), context.getHandshakes()));
+        extractionCompleted.onComplete(context.getWebSite(), result);
     }
 }
@@ -0,0 +1,347 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The state of a website crawling shared by all its tasks
+ *
+ * @author jamestravol
+ */
+final class SiteContext {
+
+    private static final Logger LOGGER = Logger.getLogger(SiteContext.class.getName());
+
+    private final WebSite webSite;
+    private final int maxLinksForPage;
+    private final int maxInheritance;
+    private final Fetcher fetcher;
+    private final PageExtractor extractor;
+    private final LinkScorer scorer;
+    // null if the pages are not cached
+    private final ResponseCache cache;
+    private final CrawlerMetrics metrics;
+    private final FetchPolicy policy;
+    // null if the sitemaps are not scanned
+    private final SitemapDiscovery discovery;
+    // null if the page events are not logged
+    private final PageEventLog eventLog;
+
+    private final int maxPages;
+    private final int maxEmails;
+    private final int maxEmailsLength;
+    // 0 means no deadline
+    private final long deadline;
+
+    private final FingerprintSet processedUrls = new FingerprintSet();
+    private final AtomicInteger startedPages = new AtomicInteger();
+    private final AtomicInteger fetchedPages = new AtomicInteger();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicInteger handshakes = new AtomicInteger();
+    // the result of the site shared by all its tasks
+    private final Set<String> foundEmails = ConcurrentHashMap.newKeySet();
+    private final Queue<String> foundEmailsOrder = new ConcurrentLinkedQueue<>();
+    // the length of the found emails joined by the commas, plus one
+    private final AtomicInteger foundEmailsLength = new AtomicInteger();
+    private final EmailFound emailFound;
+    private volatile boolean stopped;
+
+    SiteContext(WebSite webSite, CrawlerConfig config, Fetcher fetcher, PageExtractor extractor, LinkScorer scorer,
+                ResponseCache cache, CrawlerMetrics metrics, PageEventLog eventLog, EmailFound emailFound) {
+        this.webSite = webSite;
+        this.emailFound = emailFound;
+        this.maxLinksForPage = config.getMaxLinksForPage();
+        this.maxInheritance = config.getMaxInheritance();
+        this.maxPages = config.getMaxPagesPerSite();
+        this.maxEmails = config.getMaxEmailsPerSite();
+        this.maxEmailsLength = config.getMaxEmailsLength();
+        this.deadline = config.getSiteTimeoutMills() > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getSiteTimeoutMills()) : 0;
+        this.fetcher = fetcher;
+        this.extractor = extractor;
+        this.scorer = scorer;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.policy = new FetchPolicy(config);
+        this.discovery = config.isSitemapDiscovery() ? new SitemapDiscovery(config) : null;
+    }
+
+    /**
+     * Resolves the link of a page of the site
+     *
+     * @param href link
+     * @return the url or empty if the link is not followed
+     */
+    Optional<URL> resolveLink(String href) {
+        Optional<URL> urlOptional = UrlUtils.resolveLink(getRootDomain(), href);
+        if (urlOptional.isPresent() && policy.isSkipped(urlOptional.get())) {
+            metrics.linkSkipped();
+            return Optional.empty();
+        }
+        return urlOptional;
+    }
+
+    /**
+     * @param url url of the site
+     * @return true if the url is not followed for its file extension
+     */
+    boolean isSkipped(URL url) {
+        if (policy.isSkipped(url)) {
+            metrics.linkSkipped();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts the discovery of the pages to fetch first by the sitemaps of the site
+     *
+     * @return the future completed with the pages, the best first, empty if the sitemaps are not scanned
+     */
+    CompletableFuture<List<URL>> discoverPages() {
+        if (discovery == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return discovery.discover(this);
+    }
+
+    void pagesDiscovered(int files, int pages) {
+        metrics.pagesDiscovered(files, pages);
+    }
+
+    /**
+     * Marks the url as processed, unblocking.
+     * The urls are compared by the {@link UrlUtils#fingerprint(URL) fingerprint} of the canonical form.
+     *
+     * @param url url
+     * @return true if the url was not processed before
+     */
+    boolean markProcessed(URL url) {
+        return processedUrls.add(UrlUtils.fingerprint(url));
+    }
+
+    /**
+     * Takes a page from the budget of the site, the tasks check it before every download
+     *
+     * @return false if the budget is spent or the deadline is passed, the site is stopped then
+     */
+    boolean tryStartPage() {
+        if (stopped) {
+            return false;
+        }
+        if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+            stop("the deadline");
+            return false;
+        }
+        if (maxPages > 0 && startedPages.incrementAndGet() > maxPages) {
+            stop("the page budget");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the emails of a page to the result of the site, the site is stopped when enough of them is found.
+     * The emails are compared ignoring the case.
+     *
+     * @param emails emails found on a page
+     */
+    void addEmails(Collection<String> emails) {
+        for (String email : emails) {
+            String normalized = email.toLowerCase(Locale.ROOT);
+            if (foundEmails.add(normalized)) {
+                foundEmailsOrder.add(normalized);
+                foundEmailsLength.addAndGet(normalized.length() + 1);
+                notifyEmailFound(normalized);
+            }
+        }
+        if (maxEmails > 0 && foundEmails.size() >= maxEmails) {
+            stop("enough emails");
+        } else if (maxEmailsLength > 0 && foundEmailsLength.get() > maxEmailsLength) {
+            stop("the emails length");
+        }
+    }
+
+    /**
+     * @return the emails found by now in the order they were found
+     */
+    Set<String> getEmails() {
+        return new LinkedHashSet<>(foundEmailsOrder);
+    }
+
+    private void notifyEmailFound(String email) {
+        if (emailFound == null) {
+            return;
+        }
+        try {
+            emailFound.onEmailFound(webSite, email);
+        } catch (RuntimeException e) {
+            LOGGER.severe(String.format("Exception occurred in the email callback for website %s. Message: %s", webSite, e));
+        }
+    }
+
+    private void stop(String reason) {
+        if (!stopped) {
+            stopped = true;
+            LOGGER.info(() -> String.format("Website %s is stopped by %s", webSite, reason));
+        }
+    }
+
+    /**
+     * Starts the download of the page limited by the deadline of the site.
+     * A page cached by the previous crawls is requested conditionally, the not modified one gets the cached content.
+     *
+     * @param url page url
+     * @return the future completed with the page
+     */
+    CompletableFuture<Page> fetch(URL url) {
+        long startNanos = System.nanoTime();
+        ResponseCache.Entry entry = cache == null ? null : cache.lookup(url);
+        CompletableFuture<Page> future;
+        if (entry == null) {
+            future = withDeadline(fetcher.fetch(url));
+        } else {
+            future = withDeadline(fetcher.fetch(url, entry.conditionalHeaders())).thenApply(page -> {
+                if (page.getStatusCode() != 304) {
+                    return page;
+                }
+                cache.hit(url, entry);
+                Page notModified = new Page(url, page.getStatusCode(), page.getContentType(), "", entry.getEtag(),
+                        entry.getLastModified(), entry.getContent());
+                notModified.setTransfer(page.getWireBytes(), page.getHandshakes(), page.isHttp2());
+                return notModified;
+            });
+        }
+        return future.whenComplete((page, throwable) -> {
+            if (throwable != null) {
+                String error = metrics.fetchFailed(throwable, startNanos);
+                if (eventLog != null) {
+                    eventLog.publish(webSite.getId(), url.toString(), 0, 0, System.nanoTime() - startNanos, 0, 0,
+                            error);
+                }
+            } else {
+                page.setFetchNanos(System.nanoTime() - startNanos);
+                metrics.pageFetched(page, startNanos);
+                transferred(page);
+            }
+        });
+    }
+
+    /**
+     * Starts the download of a file for the crawler, like a sitemap, limited by the deadline of the site.
+     * The file is neither counted as a page nor cached.
+     *
+     * @param url file url
+     * @return the future completed with the file
+     */
+    CompletableFuture<Page> fetchFile(URL url) {
+        return withDeadline(fetcher.fetchFile(url)).whenComplete((page, throwable) -> {
+            if (throwable == null) {
+                metrics.transferred(page);
+                transferred(page);
+            }
+        });
+    }
+
+    private void transferred(Page page) {
+        wireBytes.addAndGet(page.getWireBytes());
+        handshakes.addAndGet(page.getHandshakes());
+    }
+
+    /**
+     * Extracts the content of the page, the content of a not modified page is taken from the cache
+     *
+     * @param page downloaded page
+     * @return the content
+     */
+    PageContent extract(Page page) {
+        PageContent content = page.getCachedContent();
+        long extractNanos = 0;
+        if (content == null) {
+            long startNanos = System.nanoTime();
+            content = extractor.extract(page);
+            extractNanos = System.nanoTime() - startNanos;
+            metrics.pageExtracted(startNanos);
+            if (cache != null) {
+                cache.store(page, content);
+            }
+        }
+        if (eventLog != null) {
+            eventLog.publish(webSite.getId(), page.getUrl().toString(), page.getStatusCode(), page.getBody().length(),
+                    page.getFetchNanos(), extractNanos, content.getEmails().size(), null);
+        }
+        return content;
+    }
+
+    private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future) {
+        if (deadline == 0) {
+            return future;
+        }
+        return future.orTimeout(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true if the crawling of the site is stopped by the deadline, the budget or enough emails
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    void pageFetched() {
+        fetchedPages.incrementAndGet();
+    }
+
+    int getFetchedPages() {
+        return fetchedPages.get();
+    }
+
+    /**
+     * @return the amount of the bytes of the bodies of the site received, compressed
+     */
+    long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    /**
+     * @return the amount of the TLS handshakes made for the site
+     */
+    int getHandshakes() {
+        return handshakes.get();
+    }
+
+    WebSite getWebSite() {
+        return webSite;
+    }
+
+    URL getRootDomain() {
+        return webSite.getUrl();
+    }
+
+    int getMaxLinksForPage() {
+        return maxLinksForPage;
+    }
+
+    int getMaxInheritance() {
+        return maxInheritance;
+    }
+
+    LinkScorer getScorer() {
+        return scorer;
+    }
+
+}
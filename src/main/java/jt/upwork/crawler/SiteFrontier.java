@@ -0,0 +1,72 @@
+package jt.upwork.crawler;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The links of a website waiting for the download, the best scored first.
+ * Every processed page grants the credits for the maxLinksForPage links,
+ * the credits are spent on the best links of the whole site, not of the page only.
+ *
+ * @author jamestravol
+ */
+final class SiteFrontier {
+
+    private static final Comparator<Link> ORDER = Comparator.comparingInt((Link link) -> -link.score)
+            .thenComparingLong(link -> link.sequence);
+
+    private final PriorityQueue<Link> queue = new PriorityQueue<>(ORDER);
+    private long sequence;
+    private int credits;
+
+    synchronized void add(URL url, int depth, int score) {
+        queue.add(new Link(url, depth, score, sequence++));
+    }
+
+    synchronized void grant(int credits) {
+        this.credits += credits;
+    }
+
+    /**
+     * @return the best links the credits are enough for
+     */
+    synchronized List<Link> take() {
+        List<Link> links = new ArrayList<>(Math.min(credits, queue.size()));
+        while (credits > 0 && !queue.isEmpty()) {
+            links.add(queue.poll());
+            credits--;
+        }
+        return links;
+    }
+
+    static final class Link {
+
+        private final URL url;
+        private final int depth;
+        private final int score;
+        private final long sequence;
+
+        private Link(URL url, int depth, int score, long sequence) {
+            this.url = url;
+            this.depth = depth;
+            this.score = score;
+            this.sequence = sequence;
+        }
+
+        URL getUrl() {
+            return url;
+        }
+
+        int getDepth() {
+            return depth;
+        }
+
+        int getScore() {
+            return score;
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package jt.upwork.crawler;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Discovery of the pages of a website by its sitemaps, before the links are followed.
+ * <p>
+ * The sitemaps listed in robots.txt, or /sitemap.xml if it lists none, are downloaded once per website
+ * and read as the stream of the xml events without building the document, the gzipped ones are unpacked
+ * on the fly. The sitemap indexes lead to the nested sitemaps. No more than maxFiles sitemaps are downloaded
+ * and maxUrls urls scanned, a file is read up to maxBytes unpacked.
+ * <p>
+ * The urls of the website are scored by their path like the links, the best maxPages of them with any keyword,
+ * like the contact or the imprint pages, are fetched first.
+ *
+ * @author jamestravol
+ */
+final class SitemapDiscovery {
+
+    private static final Logger LOGGER = Logger.getLogger(SitemapDiscovery.class.getName());
+
+    private static final XMLInputFactory XML_FACTORY = createFactory();
+
+    // the best candidate first: the greater score, then the shorter path, then the earlier one
+    private static final Comparator<Candidate> ORDER = Comparator
+            .comparingInt((Candidate candidate) -> -candidate.score)
+            .thenComparingInt(candidate -> candidate.url.getFile().length())
+            .thenComparingLong(candidate -> candidate.sequence);
+
+    private final int maxPages;
+    private final int maxFiles;
+    private final int maxUrls;
+    private final long maxBytes;
+
+    SitemapDiscovery(CrawlerConfig config) {
+        this.maxPages = config.getSitemapMaxPages();
+        this.maxFiles = config.getSitemapMaxFiles();
+        this.maxUrls = config.getSitemapMaxUrls();
+        this.maxBytes = config.getSitemapMaxBytes();
+    }
+
+    /**
+     * Starts the discovery, the downloads go through the fetcher of the website like its pages
+     *
+     * @param context website
+     * @return the future completed with the pages to fetch first, the best first, it is never failed
+     */
+    CompletableFuture<List<URL>> discover(SiteContext context) {
+        Discovery discovery = new Discovery(context);
+        try {
+            discovery.start();
+        } catch (RuntimeException e) {
+            discovery.failed(e);
+        }
+        return discovery.result;
+    }
+
+    /**
+     * @param robots the text of robots.txt
+     * @return the values of the Sitemap lines
+     */
+    static List<String> parseRobots(String robots) {
+        List<String> sitemaps = new ArrayList<>();
+        for (String line : robots.split("\r?\n|\r")) {
+            int comment = line.indexOf('#');
+            String directive = (comment < 0 ? line : line.substring(0, comment)).trim();
+            int colon = directive.indexOf(':');
+            if (colon > 0 && directive.substring(0, colon).trim().equalsIgnoreCase("sitemap")) {
+                String value = directive.substring(colon + 1).trim();
+                if (!value.isEmpty()) {
+                    sitemaps.add(value);
+                }
+            }
+        }
+        return sitemaps;
+    }
+
+    /**
+     * Reads the locations of a sitemap or a sitemap index, gzipped or not
+     *
+     * @param data     the bytes of the file
+     * @param maxBytes max amount of the unpacked bytes read, 0 means no limit
+     * @param consumer receives the locations with true for the nested sitemaps of an index,
+     *                 returns false to stop the reading
+     * @throws IOException if the file is not a sitemap, it is broken or too large
+     */
+    static void scan(byte[] data, long maxBytes, LocationConsumer consumer) throws IOException {
+        InputStream input = new ByteArrayInputStream(data);
+        if (data.length > 1 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b) {
+            input = new GZIPInputStream(input);
+        }
+        if (maxBytes > 0) {
+            input = new LimitedInputStream(input, maxBytes);
+        }
+        try {
+            XMLStreamReader reader = XML_FACTORY.createXMLStreamReader(input);
+            try {
+                boolean index = false;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    String name = reader.getLocalName();
+                    if ("sitemapindex".equals(name)) {
+                        index = true;
+                    } else if ("loc".equals(name) && !consumer.accept(reader.getElementText().trim(), index)) {
+                        return;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            // the limit of the unpacked bytes is reported by the stream
+            if (e.getNestedException() instanceof IOException) {
+                throw (IOException) e.getNestedException();
+            }
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // a sitemap needs neither the doctype nor the entities, the external ones are never resolved
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    /**
+     * Receives the locations of a sitemap
+     */
+    interface LocationConsumer {
+
+        /**
+         * @param location url
+         * @param sitemap  true if the location is a nested sitemap of an index
+         * @return false to stop the reading
+         */
+        boolean accept(String location, boolean sitemap);
+    }
+
+    /**
+     * The discovery of a single website, its files are downloaded one after another
+     */
+    private final class Discovery {
+
+        private final SiteContext context;
+        private final URL root;
+        private final String rootHost;
+        private final long rootFingerprint;
+        private final CompletableFuture<List<URL>> result = new CompletableFuture<>();
+
+        private final Queue<URL> sitemaps = new ArrayDeque<>();
+        private final Set<String> seenSitemaps = new HashSet<>();
+        private final FingerprintSet seenPages = new FingerprintSet();
+        // the worst of the best candidates on the top
+        private final PriorityQueue<Candidate> best = new PriorityQueue<>(ORDER.reversed());
+        private int files;
+        private int urls;
+        private long sequence;
+
+        private Discovery(SiteContext context) {
+            this.context = context;
+            this.root = context.getRootDomain();
+            this.rootHost = UrlUtils.canonicalHost(root);
+            this.rootFingerprint = UrlUtils.fingerprint(root);
+        }
+
+        private void start() {
+            Optional<URL> robots = UrlUtils.makeUrl(root, "/robots.txt");
+            if (!robots.isPresent()) {
+                finish();
+                return;
+            }
+            context.fetchFile(robots.get()).whenComplete((page, throwable) -> {
+                try {
+                    if (throwable == null && page.getStatusCode() == 200) {
+                        for (String location : parseRobots(text(page))) {
+                            addSitemap(location);
+                        }
+                    }
+                    if (sitemaps.isEmpty()) {
+                        UrlUtils.makeUrl(root, "/sitemap.xml").ifPresent(sitemaps::add);
+                    }
+                    next();
+                } catch (RuntimeException e) {
+                    failed(e);
+                }
+            });
+        }
+
+        /**
+         * Downloads the next sitemap or completes the discovery
+         */
+        private void next() {
+            if (sitemaps.isEmpty() || files >= maxFiles || urls >= maxUrls || context.isStopped()) {
+                finish();
+                return;
+            }
+            URL sitemap = sitemaps.poll();
+            files++;
+            context.fetchFile(sitemap).whenComplete((page, throwable) -> {
+                try {
+                    if (throwable == null && page.getStatusCode() == 200) {
+                        scanSitemap(sitemap, page);
+                    }
+                    next();
+                } catch (RuntimeException e) {
+                    failed(e);
+                }
+            });
+        }
+
+        private void scanSitemap(URL sitemap, Page page) {
+            try {
+                scan(page.getData() != null ? page.getData() : page.getBody().getBytes(StandardCharsets.UTF_8),
+                        maxBytes, this::accept);
+            } catch (IOException e) {
+                // the locations read before the failure are kept
+                LOGGER.fine(() -> String.format("Unable to read the sitemap %s. Message: %s", sitemap, e));
+            }
+        }
+
+        private boolean accept(String location, boolean sitemap) {
+            if (sitemap) {
+                addSitemap(location);
+                return true;
+            }
+            if (++urls > maxUrls) {
+                return false;
+            }
+            Optional<URL> urlOptional = siteUrl(location);
+            if (!urlOptional.isPresent() || context.isSkipped(urlOptional.get())) {
+                return true;
+            }
+            URL url = urlOptional.get();
+            long fingerprint = UrlUtils.fingerprint(url);
+            if (fingerprint == rootFingerprint || !seenPages.add(fingerprint)) {
+                return true;
+            }
+            // the path only, the host name may contain the keywords too
+            int score = context.getScorer().score(url.getFile(), 0);
+            if (score > 0) {
+                best.add(new Candidate(url, score, sequence++));
+                if (best.size() > maxPages) {
+                    best.poll();
+                }
+            }
+            return true;
+        }
+
+        private void addSitemap(String location) {
+            Optional<URL> url = siteUrl(location);
+            if (url.isPresent() && seenSitemaps.add(url.get().toString())) {
+                sitemaps.add(url.get());
+            }
+        }
+
+        /**
+         * @return the absolute url of the website, of its host with or without "www."
+         */
+        private Optional<URL> siteUrl(String location) {
+            try {
+                URL url = new URL(location);
+                String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+                if ((protocol.equals("http") || protocol.equals("https"))
+                        && UrlUtils.canonicalHost(url).equals(rootHost)) {
+                    return Optional.of(url);
+                }
+            } catch (MalformedURLException e) {
+                LOGGER.fine(() -> String.format("Sitemap location '%s' of %s is incorrect", location, root));
+            }
+            return Optional.empty();
+        }
+
+        private void finish() {
+            List<Candidate> candidates = new ArrayList<>(best);
+            candidates.sort(ORDER);
+            List<URL> pages = new ArrayList<>(candidates.size());
+            for (Candidate candidate : candidates) {
+                pages.add(candidate.url);
+            }
+            context.pagesDiscovered(files, pages.size());
+            LOGGER.fine(() -> String.format("Website %s sitemaps: %d files, %d urls, pages first: %s",
+                    context.getWebSite(), files, urls, pages));
+            result.complete(pages);
+        }
+
+        private void failed(RuntimeException e) {
+            LOGGER.severe(String.format("Exception occurred during the sitemap discovery of website %s. Message: %s",
+                    context.getWebSite(), e));
+            result.complete(Collections.emptyList());
+        }
+    }
+
+    private static String text(Page page) {
+        return page.getData() != null ? new String(page.getData(), StandardCharsets.UTF_8) : page.getBody();
+    }
+
+    private static final class Candidate {
+
+        private final URL url;
+        private final int score;
+        private final long sequence;
+
+        private Candidate(URL url, int score, long sequence) {
+            this.url = url;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Fails the reading after the limit, so a sitemap unpacked to gigabytes is not read to its end
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private final long maxBytes;
+        private long read;
+
+        private LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            read += n;
+            if (read > maxBytes) {
+                throw new IOException(String.format("The sitemap is larger than %d bytes", maxBytes));
+            }
+        }
+    }
+
+}
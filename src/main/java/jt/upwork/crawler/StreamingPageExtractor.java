@@ -0,0 +1,498 @@
+package jt.upwork.crawler;
+
+import org.jsoup.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Extracts emails and links reading the html once, without building the document.
+ * Follows the Jsoup rules closely enough to give the same result as {@link DomPageExtractor}:
+ * the text of every element is collected separately (like {@link org.jsoup.nodes.Element#ownText()}),
+ * the content of scripts, styles and comments is skipped, the entities are decoded.
+ * The parsing state is reused by the thread, so a page allocates almost nothing but the results.
+ *
+ * @author jamestravol
+ */
+public final class StreamingPageExtractor implements PageExtractor {
+
+    private static final Logger LOGGER = Logger.getLogger(StreamingPageExtractor.class.getName());
+
+    private static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "basefont", "bgsound", "br", "col",
+            "command", "device", "embed", "frame", "hr", "img", "input", "keygen", "link", "menuitem", "meta", "param",
+            "source", "track", "wbr");
+
+    // elements which content is not a text
+    private static final Set<String> DATA_ELEMENTS = Set.of("script", "style");
+
+    // elements which content is a text without tags
+    private static final Set<String> RCDATA_ELEMENTS = Set.of("title", "textarea");
+
+    // elements which close the open paragraph
+    private static final Set<String> PARAGRAPH_CLOSERS = Set.of("address", "article", "aside", "blockquote",
+            "center", "dd", "details", "dir", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form",
+            "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "li", "listing", "menu", "nav", "ol", "p",
+            "plaintext", "pre", "section", "summary", "table", "ul", "xmp");
+
+    // elements which limit the search of the open paragraph
+    private static final Set<String> PARAGRAPH_SCOPE = Set.of("applet", "button", "caption", "html", "marquee",
+            "object", "table", "td", "th");
+
+    private static final Set<String> HEADINGS = Set.of("h1", "h2", "h3", "h4", "h5", "h6");
+
+    static final StreamingPageExtractor INSTANCE = new StreamingPageExtractor();
+
+    private final ThreadLocal<Scanner> scanners = ThreadLocal.withInitial(Scanner::new);
+
+    private StreamingPageExtractor() {
+    }
+
+    @Override
+    public PageContent extract(Page page) {
+        return scanners.get().scan(page.getBody());
+    }
+
+    /**
+     * An open element
+     */
+    private static final class Frame {
+
+        private final StringBuilder text = new StringBuilder();
+        private String name;
+        private int sequence;
+    }
+
+    /**
+     * The parsing state of a thread
+     */
+    private static final class Scanner {
+
+        private static final int NAMES_CAPACITY = 512;
+
+        // tag names interned by the scanner, so the known tags are not allocated again
+        private final String[] names = new String[NAMES_CAPACITY];
+        private int namesCount;
+
+        private Frame[] stack = new Frame[64];
+        private int depth;
+        private int sequence;
+
+        // emails from the text with the sequence of their element
+        private int[] foundSequences = new int[16];
+        private final List<String> found = new ArrayList<>();
+
+        private String html;
+        private int length;
+        private int pos;
+        // the position of the next '&', so the html is searched for the entities once
+        private int nextAmp;
+
+        private Set<String> emails;
+        private List<String> hrefs;
+
+        PageContent scan(String html) {
+            this.html = html;
+            this.length = html.length();
+            this.pos = 0;
+            this.nextAmp = -1;
+            this.depth = 0;
+            this.sequence = 0;
+            this.found.clear();
+            this.emails = new LinkedHashSet<>();
+            this.hrefs = new ArrayList<>();
+
+            try {
+                // the document itself, gets the text outside of the elements
+                push("#root");
+
+                while (pos < length) {
+                    int lt = html.indexOf('<', pos);
+                    if (lt < 0) {
+                        appendText(pos, length);
+                        pos = length;
+                        break;
+                    }
+                    appendText(pos, lt);
+                    pos = lt;
+                    readMarkup();
+                }
+
+                while (depth > 0) {
+                    pop();
+                }
+
+                addTextEmails();
+
+                return new PageContent(emails, hrefs);
+            } finally {
+                // do not keep the page referenced by the thread
+                this.html = null;
+                this.emails = null;
+                this.hrefs = null;
+                this.found.clear();
+            }
+        }
+
+        private void readMarkup() {
+            char next = pos + 1 < length ? html.charAt(pos + 1) : 0;
+
+            if (next == '!') {
+                if (html.startsWith("<!--", pos)) {
+                    int end = html.indexOf("-->", pos + 4);
+                    pos = end < 0 ? length : end + 3;
+                } else {
+                    skipTo('>');
+                }
+            } else if (next == '?') {
+                skipTo('>');
+            } else if (next == '/') {
+                if (pos + 2 < length && isAsciiLetter(html.charAt(pos + 2))) {
+                    readEndTag();
+                } else {
+                    skipTo('>');
+                }
+            } else if (isAsciiLetter(next)) {
+                readStartTag();
+            } else {
+                // a single '<' is just a text
+                appendText(pos, pos + 1);
+                pos++;
+            }
+        }
+
+        private void readStartTag() {
+            int nameStart = pos + 1;
+            int nameEnd = readName(nameStart);
+            String name = intern(nameStart, nameEnd);
+            pos = nameEnd;
+
+            boolean link = "a".equals(name);
+            int hrefStart = -1;
+            int hrefEnd = -1;
+
+            // attributes
+            while (pos < length) {
+                char c = html.charAt(pos);
+                if (c == '>') {
+                    pos++;
+                    break;
+                }
+                if (isWhitespace(c) || c == '/') {
+                    pos++;
+                    continue;
+                }
+
+                int attributeStart = pos;
+                while (pos < length && !isWhitespace(c = html.charAt(pos)) && c != '/' && c != '>'
+                        && (c != '=' || pos == attributeStart)) {
+                    pos++;
+                }
+                int attributeEnd = pos;
+
+                skipWhitespace();
+                int valueStart = -1;
+                int valueEnd = -1;
+                if (pos < length && html.charAt(pos) == '=') {
+                    pos++;
+                    skipWhitespace();
+                    if (pos < length && ((c = html.charAt(pos)) == '"' || c == '\'')) {
+                        valueStart = pos + 1;
+                        int end = html.indexOf(c, valueStart);
+                        valueEnd = end < 0 ? length : end;
+                        pos = end < 0 ? length : end + 1;
+                    } else {
+                        valueStart = pos;
+                        while (pos < length && !isWhitespace(c = html.charAt(pos)) && c != '>') {
+                            pos++;
+                        }
+                        valueEnd = pos;
+                    }
+                }
+
+                // the first attribute wins
+                if (link && hrefStart < 0 && attributeEnd - attributeStart == 4
+                        && html.regionMatches(true, attributeStart, "href", 0, 4)) {
+                    hrefStart = valueStart < 0 ? attributeEnd : valueStart;
+                    hrefEnd = valueStart < 0 ? attributeEnd : valueEnd;
+                }
+            }
+
+            if (hrefStart >= 0) {
+                addHref(hrefStart, hrefEnd);
+            }
+
+            startElement(name);
+        }
+
+        private void startElement(String name) {
+            if (DATA_ELEMENTS.contains(name)) {
+                // the content is not a text, so it is skipped
+                pos = findEndTag(name);
+                return;
+            }
+
+            if (RCDATA_ELEMENTS.contains(name)) {
+                int end = findEndTag(name);
+                push(name);
+                appendText(pos, end);
+                pop();
+                pos = end;
+                return;
+            }
+
+            closeImplied(name);
+
+            if ("br".equals(name)) {
+                stack[depth - 1].text.append(' ');
+            }
+
+            if (!VOID_ELEMENTS.contains(name)) {
+                push(name);
+            }
+        }
+
+        private void closeImplied(String name) {
+            if ("li".equals(name)) {
+                closeUpTo("li", "ul", "ol");
+            } else if ("dd".equals(name) || "dt".equals(name)) {
+                closeUpTo("dd", "dl", "dl");
+                closeUpTo("dt", "dl", "dl");
+            } else if ("a".equals(name)) {
+                // links are not nested
+                closeUpTo("a", "td", "th");
+            } else if ("option".equals(name)) {
+                if ("option".equals(stack[depth - 1].name)) {
+                    pop();
+                }
+            }
+
+            if (PARAGRAPH_CLOSERS.contains(name)) {
+                for (int i = depth - 1; i > 0; i--) {
+                    String open = stack[i].name;
+                    if ("p".equals(open)) {
+                        popTo(i);
+                        break;
+                    }
+                    if (PARAGRAPH_SCOPE.contains(open)) {
+                        break;
+                    }
+                }
+            }
+
+            if (HEADINGS.contains(name) && HEADINGS.contains(stack[depth - 1].name)) {
+                pop();
+            }
+        }
+
+        private void closeUpTo(String name, String scope1, String scope2) {
+            for (int i = depth - 1; i > 0; i--) {
+                String open = stack[i].name;
+                if (name.equals(open)) {
+                    popTo(i);
+                    return;
+                }
+                if (scope1.equals(open) || scope2.equals(open)) {
+                    return;
+                }
+            }
+        }
+
+        private void readEndTag() {
+            int nameStart = pos + 2;
+            int nameEnd = readName(nameStart);
+            int nameLength = nameEnd - nameStart;
+            skipTo('>');
+
+            // the text after the body end still belongs to the body
+            if (nameLength == 4 && (html.regionMatches(true, nameStart, "body", 0, 4)
+                    || html.regionMatches(true, nameStart, "html", 0, 4))) {
+                return;
+            }
+
+            for (int i = depth - 1; i > 0; i--) {
+                String open = stack[i].name;
+                if (open.length() == nameLength && html.regionMatches(true, nameStart, open, 0, nameLength)) {
+                    popTo(i);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the position of the end tag of the element or the end of the html
+         */
+        private int findEndTag(String name) {
+            int from = pos;
+            while (true) {
+                int lt = html.indexOf("</", from);
+                if (lt < 0) {
+                    return length;
+                }
+                if (html.regionMatches(true, lt + 2, name, 0, name.length())) {
+                    int after = lt + 2 + name.length();
+                    if (after >= length || isWhitespace(html.charAt(after)) || html.charAt(after) == '>'
+                            || html.charAt(after) == '/') {
+                        return lt;
+                    }
+                }
+                from = lt + 2;
+            }
+        }
+
+        private int readName(int start) {
+            int end = start;
+            char c;
+            while (end < length && !isWhitespace(c = html.charAt(end)) && c != '/' && c != '>') {
+                end++;
+            }
+            return end;
+        }
+
+        private void addHref(int start, int end) {
+            String href = html.substring(start, end);
+            if (href.indexOf('&') >= 0) {
+                href = Parser.unescapeEntities(href, true);
+            }
+            // we check mailto for each link
+            if (href.startsWith("mailto:")) {
+                for (long match = EmailScanner.find(href); match != EmailScanner.NOT_FOUND;
+                     match = EmailScanner.find(href, 0, EmailScanner.end(match), href.length())) {
+                    String email = href.substring(EmailScanner.start(match), EmailScanner.end(match));
+                    LOGGER.fine(() -> String.format("Got email %s from 'mailto' tag", email));
+                    emails.add(email);
+                }
+            } else {
+                hrefs.add(href);
+            }
+        }
+
+        private void appendText(int start, int end) {
+            if (start >= end) {
+                return;
+            }
+            StringBuilder text = stack[depth - 1].text;
+            if (nextAmp < start) {
+                nextAmp = html.indexOf('&', start);
+                if (nextAmp < 0) {
+                    nextAmp = length;
+                }
+            }
+            if (nextAmp < end) {
+                text.append(Parser.unescapeEntities(html.substring(start, end), false));
+            } else {
+                text.append(html, start, end);
+            }
+        }
+
+        private void push(String name) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            Frame frame = stack[depth];
+            if (frame == null) {
+                frame = stack[depth] = new Frame();
+            }
+            frame.name = name;
+            frame.sequence = sequence++;
+            frame.text.setLength(0);
+            depth++;
+        }
+
+        private void popTo(int index) {
+            while (depth > index) {
+                pop();
+            }
+        }
+
+        private void pop() {
+            Frame frame = stack[--depth];
+            StringBuilder text = frame.text;
+            if (text.length() > 0) {
+                for (long match = EmailScanner.find(text); match != EmailScanner.NOT_FOUND;
+                     match = EmailScanner.find(text, 0, EmailScanner.end(match), text.length())) {
+                    String email = text.substring(EmailScanner.start(match), EmailScanner.end(match));
+                    LOGGER.fine(() -> String.format("Got email %s from the text", email));
+                    if (found.size() == foundSequences.length) {
+                        foundSequences = Arrays.copyOf(foundSequences, found.size() * 2);
+                    }
+                    foundSequences[found.size()] = frame.sequence;
+                    found.add(email);
+                }
+                text.setLength(0);
+            }
+            // long texts are not kept by the thread
+            if (text.capacity() > 8192) {
+                stack[depth] = null;
+            }
+        }
+
+        /**
+         * Adds the emails from the text in the document order of the elements
+         */
+        private void addTextEmails() {
+            int count = found.size();
+            // stable insertion sort, the amount of emails is small
+            for (int i = 1; i < count; i++) {
+                int sequence = foundSequences[i];
+                String email = found.get(i);
+                int j = i - 1;
+                while (j >= 0 && foundSequences[j] > sequence) {
+                    foundSequences[j + 1] = foundSequences[j];
+                    found.set(j + 1, found.get(j));
+                    j--;
+                }
+                foundSequences[j + 1] = sequence;
+                found.set(j + 1, email);
+            }
+            emails.addAll(found);
+        }
+
+        private String intern(int start, int end) {
+            int length = end - start;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + Character.toLowerCase(html.charAt(i));
+            }
+            int index = hash & (NAMES_CAPACITY - 1);
+            String name;
+            while ((name = names[index]) != null) {
+                if (name.length() == length && html.regionMatches(true, start, name, 0, length)) {
+                    return name;
+                }
+                index = (index + 1) & (NAMES_CAPACITY - 1);
+            }
+            name = html.substring(start, end).toLowerCase(Locale.ROOT);
+            // the table is kept half empty, the rare names are not interned
+            if (namesCount < NAMES_CAPACITY / 2) {
+                names[index] = name;
+                namesCount++;
+            }
+            return name;
+        }
+
+        private void skipTo(char c) {
+            int end = html.indexOf(c, pos);
+            pos = end < 0 ? length : end + 1;
+        }
+
+        private void skipWhitespace() {
+            while (pos < length && isWhitespace(html.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+
+        private static boolean isAsciiLetter(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package jt.upwork.crawler;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.net.URI;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the TLS handshakes of the http client. The client creates an engine of its SSL context
+ * for every new connection, the context given to it counts them by the host and the port.
+ * The counts are claimed by the responses from the host, so the handshakes are charged to the websites
+ * which caused them, the connections reused by the keep-alive or multiplexed over HTTP/2 cost nothing.
+ *
+ * @author jamestravol
+ */
+final class TlsHandshakes {
+
+    private static final int MAX_UNCLAIMED = 10_000;
+
+    private final SSLContext context;
+    // the handshakes not claimed by a response yet
+    private final ConcurrentMap<String, Integer> unclaimed = new ConcurrentHashMap<>();
+    private final AtomicLong total = new AtomicLong();
+
+    TlsHandshakes() {
+        SSLContext delegate;
+        try {
+            delegate = SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The default SSL context is not available", e);
+        }
+        this.context = new SSLContext(new CountingSpi(delegate), delegate.getProvider(), delegate.getProtocol()) {
+        };
+    }
+
+    /**
+     * @return the context for the http client
+     */
+    SSLContext getContext() {
+        return context;
+    }
+
+    /**
+     * Takes the handshakes made with the host of the uri since the previous claim
+     *
+     * @param uri uri of a request or of the response it was redirected to
+     * @return the amount of the handshakes
+     */
+    int claim(URI uri) {
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        Integer count = unclaimed.remove(key(uri.getHost(), port));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return the amount of the handshakes since the start
+     */
+    long getTotal() {
+        return total.get();
+    }
+
+    private void started(String host, int port) {
+        total.incrementAndGet();
+        // the handshakes of the failed requests redirected to another host are never claimed
+        if (unclaimed.size() >= MAX_UNCLAIMED) {
+            unclaimed.clear();
+        }
+        unclaimed.merge(key(host, port), 1, Integer::sum);
+    }
+
+    private static String key(String host, int port) {
+        return (host == null ? "" : host.toLowerCase(Locale.ROOT)) + ':' + port;
+    }
+
+    private final class CountingSpi extends SSLContextSpi {
+
+        private final SSLContext delegate;
+
+        private CountingSpi(SSLContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom random)
+                throws KeyManagementException {
+            delegate.init(keyManagers, trustManagers, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            started(host, port);
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package jt.upwork.crawler;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -15,6 +16,9 @@ public final class UrlUtils {
 
     private static final Logger LOGGER = Logger.getLogger(Crawler.class.getName());
 
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     private UrlUtils() {
     }
 
@@ -46,4 +50,137 @@ public final class UrlUtils {
         }
     }
 
+    /**
+     * Forms the url of a link which the crawler should follow
+     *
+     * @param root the root domain of the website
+     * @param href the link from the page
+     * @return the url or empty if the link is not followed
+     */
+    public static Optional<URL> resolveLink(URL root, String href) {
+
+        Optional<URL> urlOptional = Optional.empty();
+
+        if (href.startsWith("//")) {
+            final String tail = href.substring(1);
+            urlOptional = makeUrl(root, tail);
+            if (urlOptional.isPresent()) {
+                final URL url = urlOptional.get();
+                LOGGER.fine(() -> String.format("Following a // link. URL: %s", url));
+            } else {
+                LOGGER.severe(String.format("Unable to concatenate URL parts '%s' and '%s'", root, tail));
+            }
+        } else if (href.startsWith("/")) {
+            urlOptional = makeUrl(root, href);
+            if (urlOptional.isPresent()) {
+                final URL url = urlOptional.get();
+                LOGGER.fine(() -> String.format("Following a / link. URL: %s", url));
+            } else {
+                LOGGER.severe(String.format("Unable to concatenate URL parts '%s' and '%s'", root, href));
+            }
+        } else if (href.startsWith(root.getHost())) {
+            urlOptional = makeUrl(href);
+            if (urlOptional.isPresent()) {
+                final URL url = urlOptional.get();
+                LOGGER.fine(() -> String.format("Following a full link. URL: %s", url));
+            } else {
+                LOGGER.severe(String.format("Unable to form URL from '%s'", href));
+            }
+        }
+
+        return urlOptional;
+    }
+
+    /**
+     * Forms the canonical form of the url: the scheme, the default port, the fragment and the trailing slashes
+     * are dropped, the host is lower cased. The urls with the same canonical form are the same page for the crawler.
+     *
+     * @param url url
+     * @return canonical form, like "example.com/contact?lang=en"
+     */
+    public static String canonical(URL url) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(url.getHost().toLowerCase(Locale.ROOT));
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            builder.append(':').append(url.getPort());
+        }
+        String path = url.getPath();
+        builder.append(path, 0, trimmedPathLength(path));
+        if (url.getQuery() != null) {
+            builder.append('?').append(url.getQuery());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Forms the canonical host of the website: the host is lower cased, the "www." prefix and the trailing dot
+     * are dropped, the scheme and the default port are ignored. The websites with the same canonical host
+     * are crawled once.
+     *
+     * @param url url of the website
+     * @return canonical host, like "example.com" or "example.com:8080"
+     */
+    public static String canonicalHost(URL url) {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.startsWith("www.") && host.indexOf('.', 4) > 0) {
+            host = host.substring(4);
+        }
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            return host + ':' + url.getPort();
+        }
+        return host;
+    }
+
+    /**
+     * Calculates the 64 bit fingerprint of the {@link #canonical(URL)} form of the url without forming it.
+     * Unlike {@link URL#hashCode()} the host name is never resolved.
+     *
+     * @param url url
+     * @return fingerprint
+     */
+    public static long fingerprint(URL url) {
+        long hash = FNV_OFFSET;
+        String host = url.getHost();
+        for (int i = 0; i < host.length(); i++) {
+            hash = (hash ^ Character.toLowerCase(host.charAt(i))) * FNV_PRIME;
+        }
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            hash = (hash ^ ':') * FNV_PRIME;
+            String port = Integer.toString(url.getPort());
+            hash = hash(hash, port, port.length());
+        }
+        String path = url.getPath();
+        hash = hash(hash, path, trimmedPathLength(path));
+        String query = url.getQuery();
+        if (query != null) {
+            hash = (hash ^ '?') * FNV_PRIME;
+            hash = hash(hash, query, query.length());
+        }
+        // the low bits of FNV are weak, mix them for the open addressing tables
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long hash(long hash, String text, int length) {
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int trimmedPathLength(String path) {
+        int length = path.length();
+        while (length > 0 && path.charAt(length - 1) == '/') {
+            length--;
+        }
+        return length;
+    }
+
 }
@@ -0,0 +1,100 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testConvergesToServerCapacity() throws Exception {
+
+        final int capacity = 8;
+        CrawlerConfig config = config(1, 200);
+
+        try (LocalSiteServer server = new LocalSiteServer().delay(20).capacity(capacity)
+                .generator(path -> "<html><body>" + path + "</body></html>");
+             ConcurrencyLimiter limiter = new ConcurrencyLimiter(new HttpClientFetcher(config), config)) {
+
+            AtomicInteger maxLimit = new AtomicInteger();
+            List<CompletableFuture<Page>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                futures.add(limiter.fetch(server.url("/page" + i)).whenComplete((page, throwable) ->
+                        maxLimit.accumulateAndGet(limiter.getLimit(), Math::max)));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+            // the server is kept busy, but the queue in front of it stays short:
+            // the limit is about the capacity times the latency with the overhead of the loopback and the tolerance
+            int limit = limiter.getLimit();
+            assertTrue("Limit " + limit, limit >= capacity && limit <= capacity * 4);
+            assertTrue("Max limit " + maxLimit, maxLimit.get() <= capacity * 5);
+            assertEquals(0, limiter.getInFlight());
+            assertEquals(400, server.getRequests());
+        }
+    }
+
+    @Test
+    public void testErrorsCutTheLimit() throws Exception {
+
+        AtomicBoolean failing = new AtomicBoolean();
+        // the latency is long enough for the scheduling jitter of a loaded machine not to look like the overload
+        Executor later = CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS);
+        Fetcher fetcher = url -> CompletableFuture.supplyAsync(() -> {
+            if (failing.get()) {
+                throw new CompletionException(new IOException("Connection reset"));
+            }
+            return new Page(url, 200, "text/html", "<html></html>");
+        }, later);
+
+        try (ConcurrencyLimiter limiter = new ConcurrencyLimiter(fetcher, config(2, 64))) {
+
+            fetchAll(limiter, 1000);
+            int grown = limiter.getLimit();
+            assertTrue("Limit " + grown, grown > 16);
+            assertEquals(0, limiter.getLimitDecreases());
+
+            failing.set(true);
+            fetchAll(limiter, 300);
+
+            assertEquals(2, limiter.getLimit());
+            assertTrue(limiter.getLimitDecreases() > 0);
+            // a host gets the half of the limit
+            assertEquals(1, limiter.getHostLimit());
+        }
+    }
+
+    private static void fetchAll(ConcurrencyLimiter limiter, int count) throws InterruptedException {
+        List<CompletableFuture<Page>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(limiter.fetch(UrlUtils.makeUrl("http://example.com/page" + i).get()));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // the failed downloads
+        }
+        for (CompletableFuture<Page> future : futures) {
+            assertTrue(future.isDone());
+        }
+    }
+
+    private static CrawlerConfig config(int minConcurrency, int maxConcurrency) {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMinConcurrency(minConcurrency);
+        config.setMaxConcurrency(maxConcurrency);
+        return config;
+    }
+
+}
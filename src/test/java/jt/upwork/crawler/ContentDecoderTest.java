@@ -0,0 +1,202 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.function.Function;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ContentDecoderTest {
+
+    @Test
+    public void testDecodeByChunks() throws IOException {
+
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 2000; i++) {
+            html.append("<p>Row ").append(i).append(" row").append(i).append("@example.com</p>");
+        }
+        byte[] body = html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+
+        // the gzip header with the extra field, the file name and the comment is split between the chunks too
+        byte[] gzip = gzip(body);
+        byte[] zlib = deflate(body, false);
+        byte[] raw = deflate(body, true);
+        for (int chunk : new int[]{1, 7, 4096, Integer.MAX_VALUE}) {
+            assertArrayEquals(body, decode("gzip", gzip, chunk));
+            assertArrayEquals(body, decode("x-gzip", gzip, chunk));
+            assertArrayEquals(body, decode("deflate", zlib, chunk));
+            assertArrayEquals(body, decode("Deflate", raw, chunk));
+        }
+
+        assertNull(ContentDecoder.create(""));
+        assertNull(ContentDecoder.create("identity"));
+        assertTrue(ContentDecoder.isSupported("gzip"));
+        assertTrue(!ContentDecoder.isSupported("br"));
+
+        try {
+            decode("gzip", body, 100);
+            fail("The plain body is not gzip");
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCompressionBomb() {
+
+        // 64 MB of the zeros in a single chunk of about 64 KB
+        byte[] body = new byte[64 * 1024 * 1024];
+        byte[] bomb = gzip(body);
+        assertTrue(bomb.length < 100_000);
+        body = null;
+
+        AtomicInteger truncated = new AtomicInteger();
+        LimitedBodySubscriber<byte[]> subscriber = new LimitedBodySubscriber<>(Function.identity(), 1024 * 1024,
+                false, ContentDecoder.create("gzip"), truncated::incrementAndGet);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        });
+        subscriber.onNext(Collections.singletonList(ByteBuffer.wrap(bomb)));
+
+        byte[] read = subscriber.getBody().toCompletableFuture().join();
+        assertEquals(1024 * 1024, read.length);
+        assertEquals(1, truncated.get());
+        assertTrue(cancelled.get());
+        assertEquals(bomb.length, subscriber.getWireBytes());
+
+        // the body of exactly the limit size is not cut
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContentDecoder decoder = ContentDecoder.create("deflate")) {
+            assertTrue(!decoder.decode(ByteBuffer.wrap(deflate(new byte[1000], false)), out, 1000));
+        } catch (ZipException e) {
+            fail(e.toString());
+        }
+        assertEquals(1000, out.size());
+    }
+
+    @Test
+    public void testCompressedCrawl() throws IOException {
+
+        try (LocalSiteServer server = new LocalSiteServer().compression("gzip").generator(path -> {
+            StringBuilder html = new StringBuilder("<html><body>");
+            for (int i = 0; i < 3; i++) {
+                html.append("<a href='").append(path).append("p").append(i).append("/'>Page</a>");
+            }
+            for (int i = 0; i < 500; i++) {
+                html.append("<p>The same paragraph of the text repeated over the page</p>");
+            }
+            return html.append("<p>").append(path.replace("/", "")).append("@example.com</p></body></html>")
+                    .toString();
+        })) {
+
+            Set<String> expected = new HashSet<>(Arrays.asList("p0@example.com", "p1@example.com", "p2@example.com"));
+
+            for (boolean compression : new boolean[]{false, true}) {
+                for (boolean http2 : new boolean[]{false, true}) {
+                    CrawlerConfig config = new CrawlerConfig();
+                    config.setMaxInheritance(1);
+                    config.setHostMinDelayMills(0);
+                    config.setHttpCompression(compression);
+                    // the server knows HTTP/1.1 only, the client falls back to it
+                    config.setHttp2(http2);
+
+                    long sentBefore = server.getBytesSent();
+                    Map<String, Set<String>> results = new ConcurrentHashMap<>();
+                    long wireBytes;
+                    long bodyBytes;
+                    try (Crawler crawler = new Crawler(config)) {
+                        crawler.crawl(new WebSite("0", server.url("/")),
+                                (webSite, emails) -> results.put(webSite.getId(), emails));
+                        assertTrue(crawler.await(30, TimeUnit.SECONDS));
+                        wireBytes = crawler.getMetrics().getWireBytes();
+                        bodyBytes = crawler.getMetrics().getBytesDownloaded();
+                        assertEquals(4, crawler.getMetrics().getPages());
+                        assertEquals(0, crawler.getMetrics().getHandshakes());
+                        assertEquals(0, crawler.getMetrics().getHttp2Pages());
+                    }
+                    System.out.printf("Compression %s, HTTP/2 %s: %d bytes received for %d characters%n",
+                            compression, http2, wireBytes, bodyBytes);
+
+                    assertEquals(expected, results.get("0"));
+                    assertEquals(server.getBytesSent() - sentBefore, wireBytes);
+                    if (compression) {
+                        assertTrue(wireBytes * 10 < bodyBytes);
+                    } else {
+                        assertEquals(bodyBytes, wireBytes);
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] decode(String encoding, byte[] data, int chunk) throws ZipException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ContentDecoder decoder = ContentDecoder.create(encoding)) {
+            for (int offset = 0; offset < data.length; offset += chunk) {
+                decoder.decode(ByteBuffer.wrap(data, offset, Math.min(chunk, data.length - offset)), out,
+                        Long.MAX_VALUE);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // FEXTRA, FNAME and FCOMMENT
+        out.writeBytes(new byte[]{0x1f, (byte) 0x8b, 8, 4 | 8 | 16, 0, 0, 0, 0, 0, (byte) 255});
+        out.writeBytes(new byte[]{3, 0, 'a', 'b', 'c'});
+        out.writeBytes("index.html\0".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes("the page\0".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(deflate(body, true));
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue()).putInt(body.length);
+        out.writeBytes(trailer.array());
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body, boolean raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        deflater.setInput(body);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+}
@@ -1,17 +1,36 @@
 package jt.upwork.crawler;
 
+import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CrawlerTest {
 
+    @BeforeClass
+    public static void setUpLogging() {
+        // keep the console output readable, every page is logged at the info level
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.WARNING);
+    }
+
     @Ignore
     @Test
     public void testCrawler() throws IOException {
@@ -40,4 +59,305 @@ public class CrawlerTest {
 
     }
 
+    @Test
+    public void testAsyncThroughput() throws IOException {
+
+        final int sitesCount = 200;
+        final long delayMills = 200;
+
+        try (LocalSiteServer server = new LocalSiteServer().delay(delayMills)) {
+
+            List<WebSite> webSites = new ArrayList<>();
+            for (int i = 0; i < sitesCount; i++) {
+                String root = "/site" + i + "/";
+                server.page(root, "<html><body><a href='" + root + "contact'>Contact</a>" +
+                        "<a href='" + root + "about'>About</a></body></html>");
+                server.page(root + "contact", "<html><body><p>Write us: info" + i + "@example.com</p></body></html>");
+                server.page(root + "about", "<html><body><a href='mailto:team" + i + "@example.com'>Team</a></body></html>");
+                webSites.add(new WebSite(String.valueOf(i), server.url(root)));
+            }
+
+            CrawlerConfig config = new CrawlerConfig();
+            config.setMaxLinksForPage(5);
+            config.setMaxInheritance(2);
+            // a small processing pool, the downloads must not occupy it
+            config.setThreadsCount(2);
+            // all the sites are on the same local host
+            config.setHostMaxConcurrency(0);
+            config.setHostMinDelayMills(0);
+
+            Map<String, Set<String>> results = new ConcurrentHashMap<>();
+
+            long start = System.nanoTime();
+            try (Crawler crawler = new Crawler(config)) {
+                crawler.crawl(webSites, (webSite, emails) -> results.put(webSite.getId(), emails));
+                assertTrue(crawler.await(60, TimeUnit.SECONDS));
+            }
+            long elapsedMills = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            int pages = server.getRequests();
+            System.out.printf("Async crawl: %d pages in %d ms, %.1f pages/s%n", pages, elapsedMills, pages * 1000.0 / elapsedMills);
+
+            assertEquals(sitesCount * 3, pages);
+            assertEquals(sitesCount, results.size());
+            for (int i = 0; i < sitesCount; i++) {
+                Set<String> emails = results.get(String.valueOf(i));
+                assertTrue(emails.contains("info" + i + "@example.com"));
+                assertTrue(emails.contains("team" + i + "@example.com"));
+            }
+            // two threads blocking on each download would need sitesCount * 3 * delayMills / 2 = 60 seconds
+            assertTrue("Too slow: " + elapsedMills, elapsedMills < sitesCount * 3 * delayMills / 2 / 5);
+        }
+    }
+
+    @Test
+    public void testExecutionModes() throws IOException {
+
+        final int sitesCount = 8;
+        final int maxInheritance = 3;
+        final int linksPerPage = 3;
+
+        // every page links to linksPerPage subpages and mentions its own email
+        try (LocalSiteServer server = new LocalSiteServer().delay(50).generator(path -> {
+            StringBuilder html = new StringBuilder("<html><body>");
+            for (int i = 0; i < linksPerPage; i++) {
+                html.append("<a href='").append(path).append("p").append(i).append("/'>Page</a>");
+            }
+            html.append("<p>").append(path.replace("/", "")).append("@example.com</p></body></html>");
+            return html.toString();
+        })) {
+
+            List<WebSite> webSites = new ArrayList<>();
+            for (int i = 0; i < sitesCount; i++) {
+                webSites.add(new WebSite(String.valueOf(i), server.url("/s" + i + "/")));
+            }
+
+            Map<ExecutionMode, Map<String, Set<String>>> resultsByMode = new EnumMap<>(ExecutionMode.class);
+
+            CrawlerConfig warmUp = new CrawlerConfig();
+            warmUp.setMaxLinksForPage(linksPerPage);
+            warmUp.setMaxInheritance(maxInheritance);
+            warmUp.setThreadsCount(4);
+            warmUp.setHostMaxConcurrency(0);
+            warmUp.setHostMinDelayMills(0);
+
+            // warm up the http stack, so the first measured mode does not pay for it
+            try (Crawler crawler = new Crawler(warmUp)) {
+                crawler.crawl(webSites, (webSite, emails) -> {
+                });
+                assertTrue(crawler.await(120, TimeUnit.SECONDS));
+            }
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CrawlerConfig config = new CrawlerConfig();
+                config.setMaxLinksForPage(linksPerPage);
+                config.setMaxInheritance(maxInheritance);
+                config.setThreadsCount(4);
+                config.setHostMaxConcurrency(0);
+                config.setHostMinDelayMills(0);
+                config.setExecutionMode(mode);
+
+                Map<String, Set<String>> results = new ConcurrentHashMap<>();
+
+                long start = System.nanoTime();
+                try (Crawler crawler = new Crawler(config)) {
+                    crawler.crawl(webSites, (webSite, emails) -> results.put(webSite.getId(), new HashSet<>(emails)));
+                    assertTrue(crawler.await(120, TimeUnit.SECONDS));
+                }
+                long elapsedMills = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                System.out.printf("%s mode: %d sites in %d ms%n", mode, sitesCount, elapsedMills);
+
+                assertEquals(sitesCount, results.size());
+                resultsByMode.put(mode, results);
+            }
+
+            // 1 + 3 + 9 + 27 pages with one email per page
+            assertEquals(40, resultsByMode.get(ExecutionMode.ASYNC).get("0").size());
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                assertEquals(resultsByMode.get(ExecutionMode.ASYNC), resultsByMode.get(mode));
+            }
+        }
+    }
+
+    @Test
+    public void testLinkScoring() throws IOException {
+
+        try (LocalSiteServer server = new LocalSiteServer()) {
+
+            // the contact pages are the last links of the page
+            StringBuilder root = new StringBuilder("<html><body>");
+            for (int i = 0; i < 6; i++) {
+                root.append("<a href='/news/").append(i).append("'>News</a>");
+                server.page("/news/" + i, "<html><body><p>Nothing here</p></body></html>");
+            }
+            root.append("<a href='/about-us'>About</a><a href='/Contact'>Contact</a></body></html>");
+            server.page("/", root.toString());
+            server.page("/about-us", "<html><body><p>team@example.com</p></body></html>");
+            server.page("/Contact", "<html><body><p>info@example.com</p></body></html>");
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CrawlerConfig config = new CrawlerConfig();
+                config.setMaxLinksForPage(2);
+                config.setMaxInheritance(1);
+                config.setExecutionMode(mode);
+
+                int requestsBefore = server.getRequests();
+                Map<String, Set<String>> results = new ConcurrentHashMap<>();
+
+                try (Crawler crawler = new Crawler(config)) {
+                    crawler.crawl(new WebSite("0", server.url("/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+                    assertTrue(crawler.await(30, TimeUnit.SECONDS));
+                }
+
+                int pages = server.getRequests() - requestsBefore;
+                System.out.printf("%s mode: %.2f emails per page fetched%n", mode, results.get("0").size() / (double) pages);
+
+                assertEquals(3, pages);
+                assertEquals(new HashSet<>(Arrays.asList("info@example.com", "team@example.com")), results.get("0"));
+            }
+        }
+    }
+
+    @Test
+    public void testSiteDeadline() throws IOException {
+
+        final long delayMills = 400;
+        final long siteTimeoutMills = 1000;
+
+        // 6 levels of the slow pages would take at least 2.4 seconds
+        try (LocalSiteServer server = new LocalSiteServer().delay(delayMills).generator(CrawlerTest::treePage)) {
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CrawlerConfig config = new CrawlerConfig();
+                config.setMaxLinksForPage(3);
+                config.setMaxInheritance(5);
+                config.setHostMaxConcurrency(0);
+                config.setHostMinDelayMills(0);
+                config.setSiteTimeoutMills(siteTimeoutMills);
+                config.setExecutionMode(mode);
+
+                Map<String, Set<String>> results = new ConcurrentHashMap<>();
+
+                long start = System.nanoTime();
+                try (Crawler crawler = new Crawler(config)) {
+                    crawler.crawl(new WebSite("0", server.url("/s/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+                    assertTrue(crawler.await(30, TimeUnit.SECONDS));
+                }
+                long elapsedMills = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                System.out.printf("%s mode: %d emails in %d ms with the deadline %d ms%n",
+                        mode, results.get("0").size(), elapsedMills, siteTimeoutMills);
+
+                // the partial result is taken right at the deadline
+                assertTrue("Too slow: " + elapsedMills, elapsedMills < siteTimeoutMills + delayMills);
+                assertTrue(results.get("0").contains("s@example.com"));
+                assertTrue(results.get("0").size() < 1 + 3 + 9 + 27 + 81 + 243);
+            }
+        }
+    }
+
+    @Test
+    public void testPageBudget() throws IOException {
+
+        try (LocalSiteServer server = new LocalSiteServer().generator(CrawlerTest::treePage)) {
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CrawlerConfig config = new CrawlerConfig();
+                config.setMaxLinksForPage(3);
+                config.setMaxInheritance(3);
+                config.setMaxPagesPerSite(7);
+                config.setExecutionMode(mode);
+
+                int requestsBefore = server.getRequests();
+                Map<String, Set<String>> results = new ConcurrentHashMap<>();
+
+                try (Crawler crawler = new Crawler(config)) {
+                    crawler.crawl(new WebSite("0", server.url("/s/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+                    assertTrue(crawler.await(30, TimeUnit.SECONDS));
+                }
+
+                assertEquals(7, server.getRequests() - requestsBefore);
+                assertEquals(7, results.get("0").size());
+            }
+        }
+    }
+
+    @Test
+    public void testEnoughEmails() throws IOException {
+
+        // 1 + 3 + 9 + 27 pages with one email per page
+        final int allPages = 40;
+
+        try (LocalSiteServer server = new LocalSiteServer().delay(20).generator(CrawlerTest::treePage)) {
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CrawlerConfig config = new CrawlerConfig();
+                config.setMaxLinksForPage(3);
+                config.setMaxInheritance(3);
+                config.setMaxEmailsPerSite(4);
+                config.setExecutionMode(mode);
+
+                int requestsBefore = server.getRequests();
+                Map<String, Set<String>> results = new ConcurrentHashMap<>();
+
+                try (Crawler crawler = new Crawler(config)) {
+                    crawler.crawl(new WebSite("0", server.url("/s/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+                    assertTrue(crawler.await(30, TimeUnit.SECONDS));
+                }
+
+                int pages = server.getRequests() - requestsBefore;
+                System.out.printf("%s mode: %d pages fetched instead of %d for %d emails%n",
+                        mode, pages, allPages, results.get("0").size());
+
+                assertTrue(results.get("0").size() >= 4);
+                // the root and its pages give 4 emails, the grandchildren of the root are the most left to request
+                assertTrue("Too many pages: " + pages, pages <= 1 + 3 + 9);
+            }
+        }
+    }
+
+    @Test
+    public void testEmailStreaming() throws IOException {
+
+        try (LocalSiteServer server = new LocalSiteServer()
+                .page("/", "<html><body><p>Info@Example.com</p><a href='/a'>A</a><a href='/b'>B</a></body></html>")
+                .page("/a", "<html><body><p>info@example.com sales@example.com</p></body></html>")
+                .page("/b", "<html><body><a href='mailto:SALES@example.com'>Sales</a><p>hr@example.com</p></body></html>")) {
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                CrawlerConfig config = new CrawlerConfig();
+                config.setExecutionMode(mode);
+
+                List<String> streamed = Collections.synchronizedList(new ArrayList<>());
+                Map<String, Set<String>> results = new ConcurrentHashMap<>();
+                Map<String, Integer> streamedBeforeComplete = new ConcurrentHashMap<>();
+
+                try (Crawler crawler = new Crawler(config)) {
+                    crawler.crawl(new WebSite("0", server.url("/")), (webSite, emails) -> {
+                        streamedBeforeComplete.put(webSite.getId(), streamed.size());
+                        results.put(webSite.getId(), emails);
+                    }, (webSite, email) -> streamed.add(email));
+                    assertTrue(crawler.await(30, TimeUnit.SECONDS));
+                }
+
+                Set<String> expected = new HashSet<>(Arrays.asList("info@example.com", "sales@example.com", "hr@example.com"));
+                // every email is streamed once, the case does not matter
+                assertEquals(3, streamed.size());
+                assertEquals(expected, new HashSet<>(streamed));
+                assertEquals(expected, results.get("0"));
+                assertEquals(Integer.valueOf(3), streamedBeforeComplete.get("0"));
+            }
+        }
+    }
+
+    // every page links to 3 subpages and mentions its own email
+    private static String treePage(String path) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 3; i++) {
+            html.append("<a href='").append(path).append("p").append(i).append("/'>Page</a>");
+        }
+        return html.append("<p>").append(path.replace("/", "")).append("@example.com</p></body></html>").toString();
+    }
+
 }
@@ -0,0 +1,128 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DomainDeduplicatorTest {
+
+    private static final String[] PATHS = {"/", "/about", "/contact", "/?utm=1", "/team/", "/about#top"};
+
+    @Test
+    public void testCanonicalHost() {
+        assertEquals("example.com", UrlUtils.canonicalHost(UrlUtils.makeUrl("http://www.Example.com/about").get()));
+        assertEquals("example.com", UrlUtils.canonicalHost(UrlUtils.makeUrl("https://example.com.").get()));
+        assertEquals("example.com", UrlUtils.canonicalHost(UrlUtils.makeUrl("https://example.com:443/").get()));
+        assertEquals("example.com:8080", UrlUtils.canonicalHost(UrlUtils.makeUrl("http://www.example.com:8080").get()));
+        assertEquals("shop.example.com", UrlUtils.canonicalHost(UrlUtils.makeUrl("http://shop.example.com").get()));
+        assertEquals("www.com", UrlUtils.canonicalHost(UrlUtils.makeUrl("http://www.com").get()));
+    }
+
+    @Test
+    public void testDuplicatesAreCrawledOnce() throws IOException {
+
+        try (LocalSiteServer first = site(); LocalSiteServer second = site();
+             Crawler crawler = new Crawler(config())) {
+
+            DomainDeduplicator deduplicator = new DomainDeduplicator(crawler, 0, 100);
+            Map<String, Set<String>> results = crawl(deduplicator, crawler, first, second);
+
+            assertEquals(PATHS.length * 2, results.size());
+            for (Set<String> emails : results.values()) {
+                assertEquals(Set.of("info@example.com"), emails);
+            }
+            // a crawl of a host takes the root, the contact and the about pages
+            assertEquals(3, first.getRequests());
+            assertEquals(3, second.getRequests());
+            assertEquals(PATHS.length * 2 - 2, deduplicator.getJoinedSites());
+            assertEquals(2, crawler.getCompletedSites());
+
+            // nothing is kept, the host is crawled again
+            assertFalse(deduplicator.join(new WebSite("again", first.url("/")), (site, emails) -> {
+            }));
+        }
+    }
+
+    @Test
+    public void testKeptResults() throws IOException {
+
+        try (LocalSiteServer server = site(); Crawler crawler = new Crawler(config())) {
+
+            DomainDeduplicator deduplicator = new DomainDeduplicator(crawler, 60_000, 100);
+            crawl(deduplicator, crawler, server);
+            int requests = server.getRequests();
+
+            Map<String, Set<String>> later = new ConcurrentHashMap<>();
+            assertTrue(deduplicator.join(new WebSite("later", server.url("/contact")),
+                    (site, emails) -> later.put(site.getId(), emails)));
+
+            // served at once
+            assertEquals(Set.of("info@example.com"), later.get("later"));
+            assertEquals(requests, server.getRequests());
+            assertEquals(1, deduplicator.getCachedSites());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDropped() throws IOException {
+
+        try (LocalSiteServer first = site(); LocalSiteServer second = site(); LocalSiteServer third = site();
+             Crawler crawler = new Crawler(config())) {
+
+            DomainDeduplicator deduplicator = new DomainDeduplicator(crawler, 60_000, 2);
+            crawl(deduplicator, crawler, first);
+            crawl(deduplicator, crawler, second);
+            // the first host is used again, the second one is dropped for the third
+            assertTrue(deduplicator.join(new WebSite("used", first.url("/")), (site, emails) -> {
+            }));
+            crawl(deduplicator, crawler, third);
+
+            assertTrue(deduplicator.join(new WebSite("first", first.url("/")), (site, emails) -> {
+            }));
+            assertFalse(deduplicator.join(new WebSite("second", second.url("/")), (site, emails) -> {
+            }));
+            assertTrue(deduplicator.join(new WebSite("third", third.url("/")), (site, emails) -> {
+            }));
+        }
+    }
+
+    private static Map<String, Set<String>> crawl(DomainDeduplicator deduplicator, Crawler crawler,
+                                                  LocalSiteServer... servers) {
+        Map<String, Set<String>> results = new ConcurrentHashMap<>();
+        ExtractionCompleted callback = (site, emails) -> results.put(site.getId(), emails);
+        for (LocalSiteServer server : servers) {
+            for (int i = 0; i < PATHS.length; i++) {
+                WebSite webSite = new WebSite(server.url("/").getPort() + "-" + i, server.url(PATHS[i]));
+                if (!deduplicator.join(webSite, callback)) {
+                    deduplicator.crawl(webSite, callback);
+                }
+            }
+        }
+        assertTrue(crawler.await(30, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private static LocalSiteServer site() throws IOException {
+        return new LocalSiteServer().delay(50)
+                .page("/", "<html><body><a href='/contact'>Contact</a><a href='/about'>About</a></body></html>")
+                .page("/contact", "<html><body><p>Write us: info@example.com</p></body></html>")
+                .page("/about", "<html><body><p>About us</p></body></html>");
+    }
+
+    private static CrawlerConfig config() {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(5);
+        config.setMaxInheritance(2);
+        config.setHostMinDelayMills(0);
+        return config;
+    }
+
+}
@@ -0,0 +1,82 @@
+package jt.upwork.crawler;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class EmailScannerTest {
+
+    // the former pattern without the top level domain length limit
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("\\b[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,}\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    @Test
+    public void testEdgeCases() {
+        String[] texts = {
+                "", "@", "a@b.cd", "a@b.c", "@b.com", "a@.com", "a@b..com", "x a@b.com y", "a@b.com.", ".a@b.com",
+                "a.@b.com", "a@b.com1", "a@b.co_m", "a@b.com-x.y", "a@b.com@c.org", "a@b@c.org", "_a@b.com",
+                "%a@b.com", "é@b.com", "éa@b.com", "a@b.comé", "mailto:info@example.com?subject=Hi",
+                "contact@agency.photography", "ME@X.IO", "test@@example.com", "1@2.34", "a@b-.c-d.ef",
+                "first@list.comsecond@list.com", "see a@b.com, c@d.org; e@f.net", "a@b.c1.de", "a@1.2.3.4",
+        };
+        for (String text : texts) {
+            assertEquals(text, findWithPattern(text), findWithScanner(text));
+        }
+    }
+
+    @Test
+    public void testLongTopLevelDomains() {
+        assertEquals(List.of("contact@agency.photography", "info@example.museum"),
+                findWithScanner("Write contact@agency.photography or info@example.museum"));
+    }
+
+    @Test
+    public void testPageTexts() throws IOException {
+        for (Page page : PageExtractorTest.loadPages()) {
+            String text = Jsoup.parse(page.getBody()).text();
+            assertEquals(findWithPattern(text), findWithScanner(text));
+        }
+    }
+
+    @Test
+    public void testRandomTexts() {
+        Random random = new Random(42);
+        char[] alphabet = "ab1.@-_%+ xé\n".toCharArray();
+        char[] chars = new char[24];
+        for (int i = 0; i < 200_000; i++) {
+            int length = random.nextInt(chars.length);
+            for (int j = 0; j < length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String text = new String(chars, 0, length);
+            assertEquals(text, findWithPattern(text), findWithScanner(text));
+        }
+    }
+
+    private static List<String> findWithPattern(String text) {
+        List<String> result = new ArrayList<>();
+        Matcher matcher = EMAIL_PATTERN.matcher(text);
+        while (matcher.find()) {
+            result.add(matcher.group());
+        }
+        return result;
+    }
+
+    private static List<String> findWithScanner(String text) {
+        List<String> result = new ArrayList<>();
+        for (long match = EmailScanner.find(text); match != EmailScanner.NOT_FOUND;
+             match = EmailScanner.find(text, 0, EmailScanner.end(match), text.length())) {
+            result.add(text.substring(EmailScanner.start(match), EmailScanner.end(match)));
+        }
+        return result;
+    }
+
+}
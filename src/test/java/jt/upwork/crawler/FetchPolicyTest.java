@@ -0,0 +1,122 @@
+package jt.upwork.crawler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FetchPolicyTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @BeforeClass
+    public static void setUpLogging() {
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.WARNING);
+    }
+
+    @Test
+    public void testPolicy() {
+
+        FetchPolicy policy = new FetchPolicy(new CrawlerConfig());
+
+        assertTrue(policy.isAllowedContentType("text/html; charset=UTF-8"));
+        assertTrue(policy.isAllowedContentType("TEXT/HTML"));
+        assertTrue(policy.isAllowedContentType(""));
+        assertFalse(policy.isAllowedContentType("application/pdf"));
+        assertFalse(policy.isAllowedContentType("image/png"));
+
+        assertTrue(policy.isSkipped(UrlUtils.makeUrl("http://example.com/files/report.PDF").get()));
+        assertTrue(policy.isSkipped(UrlUtils.makeUrl("http://example.com/logo.png?v=2").get()));
+        assertFalse(policy.isSkipped(UrlUtils.makeUrl("http://example.com/contact").get()));
+        assertFalse(policy.isSkipped(UrlUtils.makeUrl("http://example.com/contact.html").get()));
+        assertFalse(policy.isSkipped(UrlUtils.makeUrl("http://example.com/v1.2/contact").get()));
+        assertFalse(policy.isSkipped(UrlUtils.makeUrl("http://example.com/.well-known").get()));
+
+        CrawlerConfig config = new CrawlerConfig();
+        config.setAllowedContentTypes("text/*");
+        config.setSkippedExtensions("");
+        FetchPolicy custom = new FetchPolicy(config);
+        assertTrue(custom.isAllowedContentType("text/csv"));
+        assertFalse(custom.isAllowedContentType("application/xhtml+xml"));
+        assertFalse(custom.isSkipped(UrlUtils.makeUrl("http://example.com/report.pdf").get()));
+    }
+
+    @Test
+    public void testMixedContent() throws IOException {
+
+        try (LocalSiteServer server = createServer()) {
+
+            CrawlerConfig open = createConfig();
+            open.setMaxBodyBytes(0);
+            open.setAllowedContentTypes("");
+            open.setSkippedExtensions("");
+            HttpClientFetcher openFetcher = new HttpClientFetcher(open);
+            Set<String> openEmails = crawl(server, open, openFetcher);
+            long openBytes = server.getBytesSent();
+
+            CrawlerConfig limited = createConfig();
+            limited.setMaxBodyBytes(64 * 1024);
+            HttpClientFetcher limitedFetcher = new HttpClientFetcher(limited);
+            Set<String> limitedEmails = crawl(server, limited, limitedFetcher);
+            long limitedBytes = server.getBytesSent() - openBytes;
+
+            System.out.printf("Without the fetch policy: %d bytes, emails %s%n", openBytes, openEmails);
+            System.out.printf("With the fetch policy: %d bytes, emails %s, bodies skipped: %d, truncated: %d%n",
+                    limitedBytes, limitedEmails, limitedFetcher.getSkippedBodies(), limitedFetcher.getTruncatedBodies());
+
+            assertEquals(new HashSet<>(Arrays.asList("info@example.com", "head@example.com", "tail@example.com")),
+                    openEmails);
+            // the email at the end of the huge page is cut off
+            assertEquals(new HashSet<>(Arrays.asList("info@example.com", "head@example.com")), limitedEmails);
+            assertEquals(1, limitedFetcher.getSkippedBodies());
+            assertEquals(1, limitedFetcher.getTruncatedBodies());
+            assertTrue("Too many bytes: " + limitedBytes, limitedBytes * 5 < openBytes);
+        }
+    }
+
+    private static LocalSiteServer createServer() throws IOException {
+        StringBuilder huge = new StringBuilder("<html><body><p>head@example.com</p>");
+        while (huge.length() < 4 * MB) {
+            huge.append("<p>Generated catalogue row without any address</p>\n");
+        }
+        huge.append("<p>tail@example.com</p></body></html>");
+        return new LocalSiteServer().chunkDelay(1)
+                .page("/", "<html><body><p>info@example.com</p>" +
+                        "<a href='/files/price.pdf'>Price</a><a href='/download'>Download</a>" +
+                        "<a href='/catalogue'>Catalogue</a></body></html>")
+                .resource("/files/price.pdf", "application/pdf", new byte[4 * MB])
+                .resource("/download", "application/octet-stream", new byte[4 * MB])
+                .resource("/catalogue", "text/html; charset=utf-8", huge.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CrawlerConfig createConfig() {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(10);
+        config.setMaxInheritance(1);
+        config.setHostMinDelayMills(0);
+        return config;
+    }
+
+    private static Set<String> crawl(LocalSiteServer server, CrawlerConfig config, Fetcher fetcher) {
+        Map<String, Set<String>> results = new ConcurrentHashMap<>();
+        try (Crawler crawler = new Crawler(config, fetcher)) {
+            crawler.crawl(new WebSite("0", server.url("/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+            assertTrue(crawler.await(60, TimeUnit.SECONDS));
+        }
+        return results.get("0");
+    }
+
+}
@@ -0,0 +1,114 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintSetTest {
+
+    @Test
+    public void testAdd() {
+        FingerprintSet set = new FingerprintSet(4);
+        // the reserved values are added like any other ones
+        for (long fingerprint = -100; fingerprint < 100_000; fingerprint++) {
+            assertTrue(set.add(fingerprint * 0x9E3779B97F4A7C15L));
+        }
+        for (long fingerprint = -100; fingerprint < 100_000; fingerprint++) {
+            assertFalse(set.add(fingerprint * 0x9E3779B97F4A7C15L));
+            assertTrue(set.contains(fingerprint * 0x9E3779B97F4A7C15L));
+        }
+        assertFalse(set.contains(100_000 * 0x9E3779B97F4A7C15L));
+        assertEquals(100_100, set.size());
+        assertTrue(set.capacity() >= 200_200);
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+
+        final int threads = 8;
+        final int fingerprints = 200_000;
+
+        for (int round = 0; round < 10; round++) {
+
+            // a small table, so the adding races with the growing
+            FingerprintSet set = new FingerprintSet(16);
+            AtomicInteger added = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    final int offset = t;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        // every thread adds all the fingerprints in its own order
+                        for (int i = 0; i < fingerprints; i++) {
+                            long fingerprint = ((i * 31L + offset * 7919L) % fingerprints) * 0xC2B2AE3D27D4EB4FL;
+                            if (set.add(fingerprint)) {
+                                added.incrementAndGet();
+                            }
+                            if (!set.contains(fingerprint)) {
+                                throw new AssertionError("Lost fingerprint " + fingerprint);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(fingerprints, added.get());
+            assertEquals(fingerprints, set.size());
+        }
+    }
+
+    @Test
+    public void testCanonicalUrls() {
+        assertSame("http://example.com/contact", "https://EXAMPLE.com/contact/");
+        assertSame("http://example.com/contact", "http://example.com:80/contact#team");
+        assertSame("http://example.com", "https://example.com/");
+        assertSame("http://example.com/?a=1", "http://example.com?a=1");
+        assertDifferent("http://example.com/contact", "http://example.com/Contact");
+        assertDifferent("http://example.com/contact", "http://example.com:8080/contact");
+        assertDifferent("http://example.com/contact?a=1", "http://example.com/contact?a=2");
+        assertDifferent("http://example.com/contact", "http://www.example.com/contact");
+
+        assertEquals("example.com:8080/contact?lang=en",
+                UrlUtils.canonical(UrlUtils.makeUrl("https://Example.com:8080/contact/?lang=en#top").get()));
+    }
+
+    private static void assertSame(String first, String second) {
+        assertEquals(canonical(first), canonical(second));
+        assertEquals(fingerprint(first), fingerprint(second));
+    }
+
+    private static void assertDifferent(String first, String second) {
+        assertFalse(canonical(first).equals(canonical(second)));
+        assertFalse(fingerprint(first) == fingerprint(second));
+    }
+
+    private static String canonical(String url) {
+        return UrlUtils.canonical(UrlUtils.makeUrl(url).get());
+    }
+
+    private static long fingerprint(String url) {
+        return UrlUtils.fingerprint(UrlUtils.makeUrl(url).get());
+    }
+
+}
@@ -0,0 +1,261 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HostHealthTest {
+
+    @Test
+    public void testDeadHostFailsFast() throws Exception {
+
+        AtomicBoolean down = new AtomicBoolean(true);
+        AtomicInteger calls = new AtomicInteger();
+        Fetcher fetcher = url -> {
+            calls.incrementAndGet();
+            return down.get() ? CompletableFuture.failedFuture(new ConnectException("Connection refused"))
+                    : CompletableFuture.completedFuture(new Page(url, 200, "text/html", "<html></html>"));
+        };
+        CrawlerConfig config = new CrawlerConfig();
+        config.setHostFailureThreshold(1);
+        config.setHostOpenMills(200);
+        URL url = UrlUtils.makeUrl("http://127.0.0.1:1/").get();
+
+        try (HostHealth health = new HostHealth(fetcher, config)) {
+
+            assertFailure(health.fetch(url), ConnectException.class);
+            for (int i = 0; i < 5; i++) {
+                assertFailure(health.fetch(url), HostUnavailableException.class);
+            }
+            assertEquals(1, calls.get());
+            assertEquals(1, health.getDeadHosts());
+            assertEquals(5, health.getFastFailures());
+
+            // the failed probe closes the host for the doubled time
+            TimeUnit.MILLISECONDS.sleep(250);
+            assertFailure(health.fetch(url), ConnectException.class);
+            assertFailure(health.fetch(url), HostUnavailableException.class);
+            assertEquals(2, calls.get());
+            TimeUnit.MILLISECONDS.sleep(250);
+            assertFailure(health.fetch(url), HostUnavailableException.class);
+
+            // the successful probe opens the host
+            TimeUnit.MILLISECONDS.sleep(200);
+            down.set(false);
+            assertEquals(200, health.fetch(url).get().getStatusCode());
+            assertEquals(200, health.fetch(url).get().getStatusCode());
+            assertEquals(0, health.getDeadHosts());
+            assertEquals(4, calls.get());
+        }
+    }
+
+    @Test
+    public void testTimeoutDoesNotCloseHost() throws Exception {
+
+        AtomicInteger timeouts = new AtomicInteger(2);
+        AtomicInteger calls = new AtomicInteger();
+        Fetcher fetcher = url -> {
+            calls.incrementAndGet();
+            return timeouts.getAndDecrement() > 0
+                    ? CompletableFuture.failedFuture(new HttpConnectTimeoutException("HTTP connect timed out"))
+                    : CompletableFuture.completedFuture(new Page(url, 200, "text/html", "<html></html>"));
+        };
+        URL url = UrlUtils.makeUrl("http://127.0.0.1:1/").get();
+
+        try (HostHealth health = new HostHealth(fetcher, new CrawlerConfig())) {
+            assertFailure(health.fetch(url), HttpConnectTimeoutException.class);
+            assertFailure(health.fetch(url), HttpConnectTimeoutException.class);
+            // the timeouts below the threshold are transient, the host stays open
+            assertEquals(200, health.fetch(url).get().getStatusCode());
+            assertEquals(3, calls.get());
+            assertEquals(0, health.getDeadHosts());
+            assertEquals(0, health.getFastFailures());
+        }
+    }
+
+    @Test
+    public void testProbeWithoutDownload() throws Exception {
+
+        AtomicBoolean down = new AtomicBoolean(true);
+        AtomicBoolean unknown = new AtomicBoolean();
+        AtomicReference<CountDownLatch> gate = new AtomicReference<>();
+        HostHealth.Resolver resolver = host -> {
+            CountDownLatch latch = gate.get();
+            if (latch != null && host.equals("flaky.test")) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (unknown.get()) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        };
+        AtomicInteger calls = new AtomicInteger();
+        Fetcher fetcher = url -> {
+            calls.incrementAndGet();
+            return down.get() ? CompletableFuture.failedFuture(new ConnectException("Connection refused"))
+                    : CompletableFuture.completedFuture(new Page(url, 200, "text/html", "<html></html>"));
+        };
+        CrawlerConfig config = new CrawlerConfig();
+        config.setHostFailureThreshold(1);
+        config.setHostOpenMills(100);
+        config.setDnsCacheTtlMills(0);
+        config.setDnsNegativeTtlMills(0);
+        // the lookups are serial, the next one ends after the callbacks of the previous one
+        config.setDnsThreads(1);
+        URL url = UrlUtils.makeUrl("http://flaky.test/").get();
+
+        try (HostHealth health = new HostHealth(fetcher, config, resolver)) {
+
+            // the probe fails on the resolution
+            assertFailure(health.fetch(url), ConnectException.class);
+            TimeUnit.MILLISECONDS.sleep(150);
+            unknown.set(true);
+            assertFailure(health.fetch(url), UnknownHostException.class);
+            unknown.set(false);
+            down.set(false);
+            assertEquals(200, health.fetch(url).get().getStatusCode());
+            assertEquals(0, health.getDeadHosts());
+
+            // the probe is cancelled while the host is resolved
+            down.set(true);
+            assertFailure(health.fetch(url), ConnectException.class);
+            TimeUnit.MILLISECONDS.sleep(150);
+            gate.set(new CountDownLatch(1));
+            down.set(false);
+            health.fetch(url).cancel(true);
+            gate.getAndSet(null).countDown();
+            assertEquals(200, health.fetch(UrlUtils.makeUrl("http://other.test/").get()).get().getStatusCode());
+            // the cancelled probe downloaded nothing
+            assertEquals(4, calls.get());
+            assertEquals(200, health.fetch(url).get().getStatusCode());
+            assertEquals(0, health.getDeadHosts());
+        }
+    }
+
+    @Test
+    public void testDnsCache() throws Exception {
+
+        Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+        HostHealth.Resolver resolver = host -> {
+            lookups.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+            if (host.startsWith("dead")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        };
+        Set<String> fetched = ConcurrentHashMap.newKeySet();
+        Fetcher fetcher = url -> {
+            fetched.add(url.getHost());
+            return CompletableFuture.completedFuture(new Page(url, 200, "text/html", "<html></html>"));
+        };
+        CrawlerConfig config = new CrawlerConfig();
+        config.setDnsNegativeTtlMills(200);
+
+        try (HostHealth health = new HostHealth(fetcher, config, resolver)) {
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(200, health.fetch(UrlUtils.makeUrl("http://alive.test/page" + i).get()).get()
+                        .getStatusCode());
+                assertFailure(health.fetch(UrlUtils.makeUrl("http://dead.test/page" + i).get()),
+                        UnknownHostException.class);
+            }
+            assertEquals(1, lookups.get("alive.test").get());
+            assertEquals(1, lookups.get("dead.test").get());
+            assertEquals(Set.of("alive.test"), fetched);
+            assertEquals(2, health.getDnsLookups());
+            assertEquals(18, health.getDnsCacheHits());
+
+            // the unknown host is looked up again after the negative ttl
+            TimeUnit.MILLISECONDS.sleep(250);
+            assertFailure(health.fetch(UrlUtils.makeUrl("http://dead.test/").get()), UnknownHostException.class);
+            assertEquals(2, lookups.get("dead.test").get());
+            assertEquals(1, lookups.get("alive.test").get());
+        }
+    }
+
+    @Test
+    public void testRefusingHostIsConnectedOnce() throws Exception {
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(5);
+        config.setMaxInheritance(2);
+        config.setHostMaxConcurrency(1);
+        config.setHostMinDelayMills(0);
+        HttpClientFetcher http = new HttpClientFetcher(config);
+        AtomicInteger connects = new AtomicInteger();
+        Fetcher counting = new Fetcher() {
+            @Override
+            public CompletableFuture<Page> fetch(URL url) {
+                return fetch(url, Map.of());
+            }
+
+            @Override
+            public CompletableFuture<Page> fetch(URL url, Map<String, String> headers) {
+                connects.incrementAndGet();
+                return http.fetch(url, headers);
+            }
+
+            @Override
+            public void close() {
+                http.close();
+            }
+        };
+
+        AtomicInteger completed = new AtomicInteger();
+        try (Crawler crawler = new Crawler(config, counting)) {
+            // the income table repeats the host
+            for (int i = 0; i < 20; i++) {
+                crawler.crawl(new WebSite(String.valueOf(i),
+                        UrlUtils.makeUrl(String.format("http://127.0.0.1:%d/site%d", port, i)).get()),
+                        (site, emails) -> completed.incrementAndGet());
+            }
+            assertTrue(crawler.await(30, TimeUnit.SECONDS));
+
+            // the host is closed after the default 3 refused connections
+            assertEquals(20, completed.get());
+            assertEquals(3, connects.get());
+            assertEquals(17, crawler.getFastFailures());
+            assertEquals(1, crawler.getDeadHosts());
+            assertEquals(17L, (long) crawler.getMetrics().getErrors().get("HostUnavailableException"));
+        }
+    }
+
+    private static void assertFailure(CompletableFuture<Page> future, Class<? extends Throwable> type)
+            throws InterruptedException {
+        try {
+            future.get();
+            fail("Expected " + type.getSimpleName());
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), type.isInstance(e.getCause()));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package jt.upwork.crawler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HostSchedulerTest {
+
+    private static final int PAGES = 20;
+
+    @BeforeClass
+    public static void setUpLogging() {
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.WARNING);
+    }
+
+    @Test
+    public void testRateLimitedHost() throws IOException {
+
+        try (LocalSiteServer server = createServer().rateLimit(2)) {
+
+            // without the limits the burst of the links is mostly rejected
+            CrawlerConfig impolite = createConfig();
+            impolite.setHostMaxConcurrency(0);
+            impolite.setHostMinDelayMills(0);
+            impolite.setRateLimitRetries(0);
+            Set<String> impoliteEmails = crawl(server, impolite);
+            int impoliteRejected = server.getRejected();
+            int impoliteRequests = server.getRequests();
+
+            CrawlerConfig polite = createConfig();
+            polite.setHostMaxConcurrency(2);
+            polite.setHostMinDelayMills(0);
+            Set<String> politeEmails = crawl(server, polite);
+            int politeRejected = server.getRejected() - impoliteRejected;
+            int politeRequests = server.getRequests() - impoliteRequests;
+
+            System.out.printf("Without politeness: %d requests, %d rejected, %d emails%n",
+                    impoliteRequests, impoliteRejected, impoliteEmails.size());
+            System.out.printf("With politeness: %d requests, %d rejected, %d emails%n",
+                    politeRequests, politeRejected, politeEmails.size());
+
+            assertTrue(impoliteRejected > 0);
+            assertEquals(0, politeRejected);
+            assertEquals(PAGES + 1, politeRequests);
+            assertEquals(PAGES, politeEmails.size());
+        }
+    }
+
+    @Test
+    public void testRetryAfterRateLimit() throws IOException {
+
+        try (LocalSiteServer server = createServer().rateLimit(1)) {
+
+            // the crawler is more aggressive than the server allows, the rejected requests are repeated
+            CrawlerConfig config = createConfig();
+            config.setHostMaxConcurrency(3);
+            config.setHostMinDelayMills(0);
+            config.setRateLimitRetries(5);
+            config.setRateLimitBackoffMills(20);
+
+            Set<String> emails = crawl(server, config);
+
+            assertTrue(server.getRejected() > 0);
+            assertEquals(PAGES, emails.size());
+        }
+    }
+
+    @Test
+    public void testMinDelay() throws IOException {
+
+        final long minDelayMills = 30;
+
+        try (LocalSiteServer server = createServer()) {
+
+            CrawlerConfig config = createConfig();
+            config.setHostMaxConcurrency(PAGES);
+            config.setHostMinDelayMills(minDelayMills);
+
+            assertEquals(PAGES, crawl(server, config).size());
+
+            // the pages are requested at once, the opening of the connections shifts the single arrivals,
+            // so the whole span is checked
+            List<Long> times = server.getRequestTimes();
+            long spanMills = TimeUnit.NANOSECONDS.toMillis(times.get(times.size() - 1) - times.get(1));
+            assertTrue("Too short span: " + spanMills, spanMills >= (PAGES - 1) * minDelayMills * 9 / 10);
+        }
+    }
+
+    private static LocalSiteServer createServer() throws IOException {
+        LocalSiteServer server = new LocalSiteServer().delay(50);
+        StringBuilder root = new StringBuilder("<html><body>");
+        for (int i = 0; i < PAGES; i++) {
+            root.append("<a href='/page").append(i).append("'>Page</a>");
+            server.page("/page" + i, "<html><body><p>page" + i + "@example.com</p></body></html>");
+        }
+        server.page("/", root.append("</body></html>").toString());
+        return server;
+    }
+
+    private static CrawlerConfig createConfig() {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(PAGES);
+        config.setMaxInheritance(1);
+        return config;
+    }
+
+    private static Set<String> crawl(LocalSiteServer server, CrawlerConfig config) {
+        Map<String, Set<String>> results = new ConcurrentHashMap<>();
+        try (Crawler crawler = new Crawler(config)) {
+            crawler.crawl(new WebSite("0", server.url("/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+            assertTrue(crawler.await(60, TimeUnit.SECONDS));
+        }
+        return results.get("0");
+    }
+
+}
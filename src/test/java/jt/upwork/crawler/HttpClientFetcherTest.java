@@ -0,0 +1,122 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpClientFetcherTest {
+
+    @Test
+    public void testClosedConnectionIsRetried() throws Exception {
+
+        AtomicInteger connections = new AtomicInteger();
+        AtomicInteger requests = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread thread = serve(server, socket -> {
+                int connection = connections.incrementAndGet();
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                readRequest(in);
+                requests.incrementAndGet();
+                if (connection == 2) {
+                    // the new connection of the client retry is closed too, the fetcher tries once more
+                    return;
+                }
+                respond(out, "<p>page" + connection + "@example.com</p>");
+                if (connection == 1) {
+                    // the keep-alive connection is closed by the server when the client reuses it
+                    readRequest(in);
+                    requests.incrementAndGet();
+                }
+            });
+
+            try (HttpClientFetcher fetcher = new HttpClientFetcher(new CrawlerConfig())) {
+                URL url = new URL(String.format("http://127.0.0.1:%d/", server.getLocalPort()));
+                assertEquals(200, fetcher.fetch(url).join().getStatusCode());
+                Page page = fetcher.fetch(new URL(url, "/second")).join();
+                assertEquals(200, page.getStatusCode());
+                assertTrue(page.getBody().contains("page3@example.com"));
+            }
+            assertEquals(3, connections.get());
+            assertEquals(4, requests.get());
+            thread.interrupt();
+        }
+    }
+
+    @Test
+    public void testResetIsNotRetried() throws Exception {
+
+        AtomicInteger connections = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread thread = serve(server, socket -> {
+                connections.incrementAndGet();
+                readRequest(socket.getInputStream());
+                // the host refusing the crawlers resets the connection
+                socket.setSoLinger(true, 0);
+            });
+
+            try (HttpClientFetcher fetcher = new HttpClientFetcher(new CrawlerConfig())) {
+                fetcher.fetch(new URL(String.format("http://127.0.0.1:%d/", server.getLocalPort()))).join();
+                fail("The connection is reset");
+            } catch (CompletionException e) {
+                assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IOException);
+            }
+            // the http client repeats the request once itself, the fetcher does not add to it
+            assertEquals(2, connections.get());
+            thread.interrupt();
+        }
+    }
+
+    private interface Handler {
+
+        void handle(Socket socket) throws IOException;
+    }
+
+    private static Thread serve(ServerSocket server, Handler handler) {
+        Thread thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try (Socket socket = server.accept()) {
+                    handler.handle(socket);
+                } catch (IOException e) {
+                    // the server is closed or the client is gone
+                }
+            }
+        }, "raw-http-server");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("The request is not complete");
+            }
+            matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : b == '\r' ? 1 : 0;
+        }
+    }
+
+    private static void respond(OutputStream out, String body) throws IOException {
+        byte[] bytes = ("<html><body>" + body + "</body></html>").getBytes(StandardCharsets.UTF_8);
+        out.write(String.format("HTTP/1.1 200 OK\r\nContent-Type: text/html\r\nContent-Length: %d\r\n\r\n",
+                bytes.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+}
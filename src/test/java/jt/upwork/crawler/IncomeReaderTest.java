@@ -0,0 +1,176 @@
+package jt.upwork.crawler;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IncomeReaderTest {
+
+    private BasicDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:income;DB_CLOSE_DELAY=-1");
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE income (id INT PRIMARY KEY, website VARCHAR(255))");
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO income VALUES (?, ?)")) {
+            // ids have gaps, so paging by the id differs from paging by the offset
+            for (int i = 1; i <= 25; i++) {
+                statement.setInt(1, i * 10);
+                statement.setString(2, i == 7 ? "not a url" : "http://site" + i + ".com");
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE income");
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void testKeysetPaging() throws InterruptedException, IOException {
+
+        List<String> ids = new ArrayList<>();
+
+        try (IncomeReader reader = new IncomeReader(dataSource, "income", "id", "website", 4, 3, 2)) {
+            reader.start();
+
+            WebSite webSite;
+            while ((webSite = reader.take()) != null) {
+                ids.add(webSite.getId());
+            }
+
+            assertNull(reader.take());
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 4; i <= 25; i++) {
+            if (i != 7) {
+                expected.add(String.valueOf(i * 10));
+            }
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    public void testResumeAfterId() throws InterruptedException, IOException {
+
+        List<String> ids = new ArrayList<>();
+
+        // the start offset is ignored when the reading is resumed
+        try (IncomeReader reader = new IncomeReader(dataSource, "income", "id", "website", 4, 3, 2, "200")) {
+            reader.start();
+
+            WebSite webSite;
+            while ((webSite = reader.take()) != null) {
+                ids.add(webSite.getId());
+            }
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 21; i <= 25; i++) {
+            expected.add(String.valueOf(i * 10));
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    public void testFailedPageRetried() throws InterruptedException, IOException {
+
+        AtomicInteger connections = new AtomicInteger();
+
+        // the connection of the third page fails twice
+        BasicDataSource failing = new BasicDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                int connection = connections.incrementAndGet();
+                if (connection == 3 || connection == 4) {
+                    throw new SQLException("Connection refused");
+                }
+                return IncomeReaderTest.this.dataSource.getConnection();
+            }
+        };
+
+        List<String> ids = new ArrayList<>();
+
+        try (IncomeReader reader = new IncomeReader(failing, "income", "id", "website", 4, 0, 2)) {
+            reader.start();
+
+            WebSite webSite;
+            while ((webSite = reader.take()) != null) {
+                ids.add(webSite.getId());
+            }
+        }
+
+        // every row is read once
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            if (i != 7) {
+                expected.add(String.valueOf(i * 10));
+            }
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    public void testFailureEndsWithException() throws InterruptedException {
+
+        AtomicInteger connections = new AtomicInteger();
+
+        // the database is down after the first page
+        BasicDataSource failing = new BasicDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (connections.incrementAndGet() > 1) {
+                    throw new SQLException("Connection refused");
+                }
+                return IncomeReaderTest.this.dataSource.getConnection();
+            }
+        };
+
+        List<String> ids = new ArrayList<>();
+
+        try (IncomeReader reader = new IncomeReader(failing, "income", "id", "website", 4, 0, 2)) {
+            reader.start();
+
+            try {
+                WebSite webSite;
+                while ((webSite = reader.take()) != null) {
+                    ids.add(webSite.getId());
+                }
+                fail("The reading is not complete");
+            } catch (IOException e) {
+                assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SQLException);
+            }
+        }
+
+        assertEquals(List.of("10", "20", "30", "40"), ids);
+    }
+
+}
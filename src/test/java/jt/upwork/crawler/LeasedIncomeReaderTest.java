@@ -0,0 +1,234 @@
+package jt.upwork.crawler;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeasedIncomeReaderTest {
+
+    private static final int ROWS = 200;
+
+    private BasicDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:leases;DB_CLOSE_DELAY=-1");
+        dataSource.setMaxActive(20);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE income (id INT PRIMARY KEY, website VARCHAR(255), " +
+                    "lease_owner VARCHAR(64), lease_expires BIGINT)");
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO income (id, website) VALUES (?, ?)")) {
+            for (int i = 1; i <= ROWS; i++) {
+                statement.setInt(1, i);
+                statement.setString(2, "http://site" + i + ".com");
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE income");
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void testWorkersClaimDisjointRows() throws Exception {
+
+        Map<String, String> crawledBy = new ConcurrentHashMap<>();
+        List<String> duplicates = new ArrayList<>();
+
+        ExecutorService workers = Executors.newFixedThreadPool(3);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String owner = "worker" + i;
+            futures.add(workers.submit(() -> {
+                try (LeasedIncomeReader reader = createReader(owner, 2000)) {
+                    reader.start();
+                    WebSite webSite;
+                    while ((webSite = reader.take()) != null) {
+                        if (crawledBy.putIfAbsent(webSite.getId(), owner) != null) {
+                            synchronized (duplicates) {
+                                duplicates.add(webSite.getId());
+                            }
+                        }
+                        reader.finish(webSite.getId());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        workers.shutdown();
+
+        assertEquals(new ArrayList<>(), duplicates);
+        assertEquals(ROWS, crawledBy.size());
+        // every worker got a part of the table
+        assertEquals(3, new HashSet<>(crawledBy.values()).size());
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, lease_owner, lease_expires FROM income")) {
+            while (resultSet.next()) {
+                assertEquals(crawledBy.get(resultSet.getString(1)), resultSet.getString(2));
+                assertNull(resultSet.getObject(3));
+            }
+        }
+    }
+
+    @Test
+    public void testExpiredLeasesAreClaimed() throws Exception {
+
+        long now = System.currentTimeMillis();
+        lease(3, "crashed", now - 1);
+        lease(5, "slow", now + 300);
+        // finished by another process
+        lease(7, "other", null);
+
+        List<String> ids = new ArrayList<>();
+        try (LeasedIncomeReader reader = createReader("worker", 1000)) {
+            reader.start();
+            WebSite webSite;
+            while ((webSite = reader.take()) != null) {
+                ids.add(webSite.getId());
+                reader.finish(webSite.getId());
+            }
+            assertEquals(ROWS - 1, reader.getClaimedRows());
+        }
+
+        assertEquals(ROWS - 1, ids.size());
+        assertEquals(ROWS - 1, new HashSet<>(ids).size());
+        assertTrue(!ids.contains("7"));
+        // the live lease is waited for
+        assertEquals("5", ids.get(ids.size() - 1));
+        assertEquals("worker", owner(3));
+        assertEquals("other", owner(7));
+    }
+
+    @Test
+    public void testCloseReleasesUnfinishedRows() throws Exception {
+
+        Set<String> taken = new HashSet<>();
+        try (LeasedIncomeReader reader = createReader("worker", 60000)) {
+            reader.start();
+            for (int i = 0; i < 3; i++) {
+                taken.add(reader.take().getId());
+            }
+            taken.forEach(reader::finish);
+        }
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, lease_owner, lease_expires FROM income")) {
+            while (resultSet.next()) {
+                // the finished rows are kept, the rest are free for the other processes
+                assertEquals(taken.contains(resultSet.getString(1)) ? "worker" : null, resultSet.getString(2));
+                assertNull(resultSet.getObject(3));
+            }
+        }
+    }
+
+    @Test
+    public void testRenewalOfHeldRows() throws Exception {
+
+        // the lease left by the previous process of the same name is not renewed
+        lease(150, "worker", System.currentTimeMillis() - 1);
+
+        List<String> taken = new ArrayList<>();
+        try (LeasedIncomeReader reader = createReader("worker", 400)) {
+            reader.start();
+            for (int i = 0; i < 3; i++) {
+                taken.add(reader.take().getId());
+            }
+            reader.finish(taken.get(0));
+            TimeUnit.MILLISECONDS.sleep(1000);
+
+            long now = System.currentTimeMillis();
+            assertNull(expires(Integer.parseInt(taken.get(0))));
+            for (String id : taken.subList(1, taken.size())) {
+                assertTrue(expires(Integer.parseInt(id)) > now);
+            }
+            assertTrue(expires(150) < now);
+        }
+    }
+
+    @Test
+    public void testFailureEndsWithException() throws Exception {
+
+        // the lease fields are missing in the table
+        try (LeasedIncomeReader reader = new LeasedIncomeReader(dataSource, "income", "id", "website", "owner",
+                "expires", "worker", 60000, 7, 5)) {
+            reader.start();
+            reader.take();
+            fail("The table is not claimed");
+        } catch (IOException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SQLException);
+        }
+    }
+
+    private LeasedIncomeReader createReader(String owner, long leaseMills) {
+        return new LeasedIncomeReader(dataSource, "income", "id", "website", "lease_owner", "lease_expires",
+                owner, leaseMills, 7, 5);
+    }
+
+    private void lease(int id, String owner, Long expires) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE income SET lease_owner = ?, lease_expires = ? WHERE id = ?")) {
+            statement.setString(1, owner);
+            statement.setObject(2, expires);
+            statement.setInt(3, id);
+            statement.executeUpdate();
+        }
+    }
+
+    private Long expires(int id) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT lease_expires FROM income WHERE id = " + id)) {
+            resultSet.next();
+            return (Long) resultSet.getObject(1);
+        }
+    }
+
+    private String owner(int id) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT lease_owner FROM income WHERE id = " + id)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+}
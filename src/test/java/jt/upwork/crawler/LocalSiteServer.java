@@ -0,0 +1,273 @@
+package jt.upwork.crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Embedded http server serving the pages for the tests
+ *
+ * @author jamestravol
+ */
+final class LocalSiteServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, String> pages = new ConcurrentHashMap<>();
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Function<String, String> generator = path -> null;
+    private volatile long delayMills;
+    private volatile long chunkDelayMills;
+    private volatile int rateLimit;
+    private volatile Semaphore capacity;
+    private volatile boolean validators;
+    private volatile String encoding;
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final Queue<Long> requestTimes = new ConcurrentLinkedQueue<>();
+
+    LocalSiteServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1000);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    LocalSiteServer page(String path, String html) {
+        pages.put(path, html);
+        return this;
+    }
+
+    /**
+     * Serves the raw body of any type
+     */
+    LocalSiteServer resource(String path, String contentType, byte[] body) {
+        resources.put(path, new Resource(contentType, body));
+        return this;
+    }
+
+    /**
+     * @param generator produces the html for the paths without a registered page, null means 404
+     */
+    LocalSiteServer generator(Function<String, String> generator) {
+        this.generator = generator;
+        return this;
+    }
+
+    LocalSiteServer delay(long delayMills) {
+        this.delayMills = delayMills;
+        return this;
+    }
+
+    /**
+     * @param chunkDelayMills the pause after every 16 KB of a body, like a real network slower than the loopback
+     */
+    LocalSiteServer chunkDelay(long chunkDelayMills) {
+        this.chunkDelayMills = chunkDelayMills;
+        return this;
+    }
+
+    /**
+     * @param rateLimit the amount of the parallel requests served, the others get 429. 0 means no limit
+     */
+    LocalSiteServer rateLimit(int rateLimit) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    /**
+     * @param capacity the amount of the requests served at once, the others wait in the queue
+     *                 like on a saturated server. 0 means no limit
+     */
+    LocalSiteServer capacity(int capacity) {
+        this.capacity = capacity > 0 ? new Semaphore(capacity, true) : null;
+        return this;
+    }
+
+    /**
+     * @param validators the pages are served with the ETag header, the matching conditional requests get 304
+     */
+    LocalSiteServer validators(boolean validators) {
+        this.validators = validators;
+        return this;
+    }
+
+    /**
+     * @param encoding the pages are compressed by "gzip" or "deflate" for the clients accepting it, null means never
+     */
+    LocalSiteServer compression(String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    URL url(String path) {
+        return UrlUtils.makeUrl(String.format("http://127.0.0.1:%d%s", server.getAddress().getPort(), path)).get();
+    }
+
+    int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the amount of the requests answered with 429
+     */
+    int getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the amount of the body bytes the clients accepted
+     */
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the amount of the requests answered with 304
+     */
+    int getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return the arrival times of the requests in nanos
+     */
+    List<Long> getRequestTimes() {
+        List<Long> times = new ArrayList<>(requestTimes);
+        Collections.sort(times);
+        return times;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        requestTimes.add(System.nanoTime());
+        if (rateLimit > 0 && inFlight.incrementAndGet() > rateLimit) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+            return;
+        }
+        Semaphore slots = capacity;
+        if (slots == null) {
+            serve(exchange);
+            return;
+        }
+        slots.acquireUninterruptibly();
+        try {
+            serve(exchange);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (delayMills > 0) {
+                TimeUnit.MILLISECONDS.sleep(delayMills);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String path = exchange.getRequestURI().getPath();
+        if (resources.containsKey(path)) {
+            Resource resource = resources.get(path);
+            exchange.getResponseHeaders().add("Content-Type", resource.contentType);
+            exchange.sendResponseHeaders(200, resource.body.length);
+            send(exchange, resource.body);
+            return;
+        }
+        String html = pages.containsKey(path) ? pages.get(path) : generator.apply(path);
+        byte[] body = (html == null ? "<html><body>Not found</body></html>" : html).getBytes(StandardCharsets.UTF_8);
+        if (rateLimit > 0) {
+            // the client may send the next request as soon as it gets this response
+            inFlight.decrementAndGet();
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        if (validators && html != null) {
+            String etag = '"' + Integer.toHexString(html.hashCode()) + '"';
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+        }
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (encoding != null && accepted != null && accepted.contains(encoding)) {
+            body = compress(body);
+            exchange.getResponseHeaders().add("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(html == null ? 404 : 200, body.length);
+        send(exchange, body);
+    }
+
+    private void send(HttpExchange exchange, byte[] body) {
+        final int chunk = 16 * 1024;
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int offset = 0; offset < body.length; offset += chunk) {
+                int length = Math.min(chunk, body.length - offset);
+                out.write(body, offset, length);
+                bytesSent.addAndGet(length);
+                if (chunkDelayMills > 0) {
+                    TimeUnit.MILLISECONDS.sleep(chunkDelayMills);
+                }
+            }
+        } catch (IOException e) {
+            // the client closed the connection without reading the whole body
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] compress(byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static final class Resource {
+
+        private final String contentType;
+        private final byte[] body;
+
+        private Resource(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package jt.upwork.crawler;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PageEventLogTest {
+
+    private static final Pattern URL = Pattern.compile("\"url\":\"([^\"]*)\"");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpLogging() {
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.WARNING);
+    }
+
+    @Test
+    public void testConcurrentPublishing() throws IOException, InterruptedException {
+
+        final int threads = 8;
+        final int events = 20_000;
+        Path file = folder.getRoot().toPath().resolve("events.jsonl");
+
+        PageEventLog eventLog = new PageEventLog(file, 1024);
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            publishers.add(new Thread(() -> {
+                for (int i = 0; i < events; i++) {
+                    eventLog.publish(String.valueOf(thread), "http://example.com/" + thread + "/" + i, 200, i,
+                            1000, 1000, 1, null);
+                }
+            }));
+        }
+        publishers.forEach(Thread::start);
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        eventLog.close();
+
+        // every event is either written once or counted as dropped
+        List<String> lines = Files.readAllLines(file);
+        Set<String> urls = new HashSet<>();
+        for (String line : lines) {
+            Matcher matcher = URL.matcher(line);
+            assertTrue(line, matcher.find());
+            assertTrue(line, urls.add(matcher.group(1)));
+        }
+        assertEquals(lines.size(), eventLog.getWritten());
+        assertEquals(threads * events, eventLog.getWritten() + eventLog.getDropped());
+    }
+
+    @Test
+    public void testEscaping() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("events.jsonl");
+        try (PageEventLog eventLog = new PageEventLog(file, 16)) {
+            eventLog.publish("1", "http://example.com/\"quoted\"\\\n", 0, 0, TimeUnit.MILLISECONDS.toNanos(5), 0, 0,
+                    "HttpTimeoutException");
+        }
+
+        assertEquals("{\"time\":", Files.readAllLines(file).get(0).substring(0, 8));
+        String line = Files.readAllLines(file).get(0).replaceFirst("\"time\":\\d+", "\"time\":0");
+        assertEquals("{\"time\":0,\"site\":\"1\",\"url\":\"http://example.com/\\\"quoted\\\"\\\\\\u000a\"," +
+                "\"status\":0,\"bytes\":0,\"fetchMicros\":5000,\"extractMicros\":0,\"emails\":0," +
+                "\"error\":\"HttpTimeoutException\"}", line);
+    }
+
+    @Test
+    public void testCrawlEvents() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("events.jsonl");
+
+        try (LocalSiteServer server = new LocalSiteServer()) {
+            server.page("/", "<html><body><a href='/contact'>Contact</a><a href='/missing'>Missing</a></body></html>");
+            server.page("/contact", "<html><body>info@example.com sales@example.com</body></html>");
+
+            CrawlerConfig config = new CrawlerConfig();
+            config.setMaxLinksForPage(5);
+            config.setMaxInheritance(1);
+            config.setHostMinDelayMills(0);
+            config.setEventLogFile(file.toString());
+
+            try (Crawler crawler = new Crawler(config)) {
+                crawler.crawl(new WebSite("7", server.url("/")), (site, emails) -> {
+                });
+                assertTrue(crawler.await(60, TimeUnit.SECONDS));
+            }
+        }
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        String contact = lines.stream().filter(line -> line.contains("/contact\"")).findFirst().get();
+        assertTrue(contact, contact.contains("\"site\":\"7\""));
+        assertTrue(contact, contact.contains("\"status\":200"));
+        assertTrue(contact, contact.contains("\"emails\":2"));
+        assertTrue(lines.stream().anyMatch(line -> line.contains("/missing\"") && line.contains("\"status\":404")));
+    }
+
+}
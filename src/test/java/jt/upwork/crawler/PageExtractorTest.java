@@ -0,0 +1,101 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PageExtractorTest {
+
+    static final String[] PAGES = {"contact.html", "shop.html", "blog.html", "messy.html"};
+
+    @Test
+    public void testStreamingMatchesDom() throws IOException {
+        for (Page page : loadPages()) {
+            PageContent dom = DomPageExtractor.INSTANCE.extract(page);
+            PageContent streaming = StreamingPageExtractor.INSTANCE.extract(page);
+
+            assertEquals(page.getUrl().toString(), new ArrayList<>(dom.getEmails()), new ArrayList<>(streaming.getEmails()));
+            assertEquals(page.getUrl().toString(), dom.getHrefs(), streaming.getHrefs());
+        }
+    }
+
+    @Test
+    public void testLongGeneratedPage() throws IOException {
+        // the entities are rare, so the text runs between them are long
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; html.length() < 1024 * 1024; i++) {
+            html.append("<p>Generated row ").append(i).append("</p>\n");
+            if (i % 5000 == 0) {
+                html.append("<p>Sales &amp; support: row").append(i).append("&#64;example.com</p>\n");
+            }
+        }
+        Page page = new Page(new URL("http://example.com/"), 200, "text/html", html.append("</body></html>").toString());
+
+        PageContent dom = DomPageExtractor.INSTANCE.extract(page);
+        PageContent streaming = StreamingPageExtractor.INSTANCE.extract(page);
+
+        assertEquals(new ArrayList<>(dom.getEmails()), new ArrayList<>(streaming.getEmails()));
+        assertTrue(streaming.getEmails().contains("row5000@example.com"));
+    }
+
+    @Test
+    public void testStreamingAllocatesLess() throws IOException {
+        List<Page> pages = loadPages();
+
+        // warm up
+        for (int i = 0; i < 200; i++) {
+            for (Page page : pages) {
+                DomPageExtractor.INSTANCE.extract(page);
+                StreamingPageExtractor.INSTANCE.extract(page);
+            }
+        }
+
+        long[] dom = measure(DomPageExtractor.INSTANCE, pages);
+        long[] streaming = measure(StreamingPageExtractor.INSTANCE, pages);
+
+        System.out.printf("DOM extraction: %d bytes/page, %d ns/page%n", dom[0], dom[1]);
+        System.out.printf("Streaming extraction: %d bytes/page, %d ns/page%n", streaming[0], streaming[1]);
+
+        assertTrue(streaming[0] * 2 < dom[0]);
+    }
+
+    /**
+     * @return allocated bytes and nanoseconds per page
+     */
+    private static long[] measure(PageExtractor extractor, List<Page> pages) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final int rounds = 500;
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (Page page : pages) {
+                extractor.extract(page);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        return new long[]{allocated / rounds / pages.size(), elapsed / rounds / pages.size()};
+    }
+
+    static List<Page> loadPages() throws IOException {
+        List<Page> pages = new ArrayList<>();
+        for (String name : PAGES) {
+            try (InputStream in = PageExtractorTest.class.getResourceAsStream("/pages/" + name)) {
+                String html = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                pages.add(new Page(new URL("http://example.com/" + name), 200, "text/html", html));
+            }
+        }
+        return pages;
+    }
+
+}
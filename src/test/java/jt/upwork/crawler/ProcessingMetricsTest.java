@@ -0,0 +1,106 @@
+package jt.upwork.crawler;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingMetricsTest {
+
+    private static final int PAGES = 10;
+
+    @BeforeClass
+    public static void setUpLogging() {
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.WARNING);
+    }
+
+    @Test
+    public void testHistogram() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMeanMills(), 0.001);
+        assertEquals(1000, histogram.getMaxMills(), 0.001);
+        assertEquals(500, histogram.getPercentileMills(0.5), 500 * 0.125);
+        assertEquals(990, histogram.getPercentileMills(0.99), 990 * 0.125);
+
+        // every value falls into the bucket which bounds it
+        for (int i = 0; i < 100_000; i++) {
+            long value = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE >> ThreadLocalRandom.current().nextInt(63));
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value && value <= LatencyHistogram.upperBound(bucket));
+        }
+    }
+
+    @Test
+    public void testEndpoint() throws IOException, JMException {
+
+        try (LocalSiteServer server = new LocalSiteServer()) {
+            StringBuilder root = new StringBuilder("<html><body><a href='/missing'>Missing</a>");
+            for (int i = 0; i < PAGES; i++) {
+                root.append("<a href='/page").append(i).append("'>Page</a>");
+                server.page("/page" + i, "<html><body><p>page" + i + "@example.com</p></body></html>");
+            }
+            server.page("/", root.append("</body></html>").toString());
+
+            CrawlerConfig config = new CrawlerConfig();
+            config.setMaxLinksForPage(PAGES + 1);
+            config.setMaxInheritance(1);
+            config.setHostMaxConcurrency(0);
+            config.setHostMinDelayMills(0);
+
+            Map<String, Integer> results = new ConcurrentHashMap<>();
+            try (Crawler crawler = new Crawler(config);
+                 ProcessingMetrics metrics = new ProcessingMetrics(crawler, null)) {
+                crawler.crawl(new WebSite("0", server.url("/")), (site, emails) -> results.put(site.getId(), emails.size()));
+                assertTrue(crawler.await(60, TimeUnit.SECONDS));
+                assertEquals(PAGES, (int) results.get("0"));
+
+                assertEquals(PAGES + 2, crawler.getMetrics().getPages());
+                assertEquals(1, crawler.getMetrics().getSites());
+                assertEquals(Long.valueOf(1), crawler.getMetrics().getErrors().get("HTTP 4xx"));
+                assertEquals(PAGES + 2, crawler.getMetrics().getExtractLatency().getCount());
+
+                metrics.registerMBean();
+                MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(ProcessingMetrics.OBJECT_NAME);
+                assertEquals((long) PAGES + 2, mBeanServer.getAttribute(name, "Pages"));
+                assertTrue((Double) mBeanServer.getAttribute(name, "FetchLatencyP99") > 0);
+
+                int port = metrics.startHttp(0);
+                String text;
+                try (InputStream in = new URL("http://127.0.0.1:" + port + "/metrics").openStream()) {
+                    text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                assertTrue(text, text.contains("crawler_pages_total " + (PAGES + 2) + "\n"));
+                assertTrue(text, text.contains("crawler_fetch_seconds_count " + (PAGES + 2) + "\n"));
+                assertTrue(text, text.contains("crawler_errors_total{type=\"HTTP 4xx\"} 1\n"));
+            }
+
+            assertFalse(ManagementFactory.getPlatformMBeanServer()
+                    .isRegistered(new ObjectName(ProcessingMetrics.OBJECT_NAME)));
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package jt.upwork.crawler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResume() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("progress.journal");
+
+        // the crash with the websites 3 and 5 in flight, the journal is not closed
+        ProgressJournal crashed = new ProgressJournal(file);
+        assertNull(crashed.getCheckpoint());
+        for (int i = 1; i <= 6; i++) {
+            assertTrue(crashed.start(String.valueOf(i)));
+        }
+        crashed.finish("2");
+        crashed.finish("1");
+        crashed.finish("4");
+        crashed.finish("6");
+        assertEquals("2", crashed.getCheckpoint());
+        // the record cut off by the crash
+        Files.write(file, "F 5".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (ProgressJournal journal = new ProgressJournal(file)) {
+            assertEquals("2", journal.getCheckpoint());
+            // the reader resumes after the checkpoint, only the websites in flight are crawled again
+            assertTrue(journal.start("3"));
+            assertFalse(journal.start("4"));
+            assertTrue(journal.start("5"));
+            assertFalse(journal.start("6"));
+            assertTrue(journal.start("7"));
+
+            journal.finish("3");
+            assertEquals("4", journal.getCheckpoint());
+            journal.finish("5");
+            assertEquals("6", journal.getCheckpoint());
+        }
+
+        try (ProgressJournal journal = new ProgressJournal(file)) {
+            assertEquals("6", journal.getCheckpoint());
+            assertTrue(journal.start("7"));
+        }
+    }
+
+    @Test
+    public void testCheckpointCoversFinishedOutOfOrder() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("progress.journal");
+        // the website 4 pins the checkpoint, 5, 7 and 6 are finished beyond it, then 4 covers them all
+        Files.write(file, ("S 4\nS 5\nS 6\nS 7\nS 8\nS 9\nF 5\nF 7\nF 6\nF 9\nF 4\nC 7\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        try (ProgressJournal journal = new ProgressJournal(file)) {
+            assertEquals("7", journal.getCheckpoint());
+            assertTrue(journal.start("8"));
+            assertFalse(journal.start("9"));
+        }
+        // the covered websites are not carried over by the compaction, 8 is in flight
+        assertEquals(Arrays.asList("C 7", "S 8", "S 9", "F 9"), Files.readAllLines(file));
+
+        // the same by the live journal crashed before the compaction
+        Files.delete(file);
+        ProgressJournal crashed = new ProgressJournal(file);
+        for (int i = 4; i <= 9; i++) {
+            crashed.start(String.valueOf(i));
+        }
+        for (String id : Arrays.asList("5", "7", "6", "9", "4")) {
+            crashed.finish(id);
+        }
+        assertEquals("7", crashed.getCheckpoint());
+
+        try (ProgressJournal journal = new ProgressJournal(file)) {
+            assertEquals("7", journal.getCheckpoint());
+        }
+        assertEquals(Arrays.asList("C 7", "F 9"), Files.readAllLines(file));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+
+        Path file = folder.getRoot().toPath().resolve("progress.journal");
+
+        try (ProgressJournal journal = new ProgressJournal(file, 100)) {
+            // a slow website pins the checkpoint, the rest are finished beyond it
+            journal.start("slow");
+            for (int i = 0; i < 10_000; i++) {
+                String id = String.valueOf(i);
+                journal.start(id);
+                journal.finish(id);
+            }
+            // the file keeps the started and the finished websites beyond the checkpoint
+            // and at most the records since the compaction
+            assertTrue(Files.readAllLines(file).size() <= 2 * 10_001 + 100);
+            journal.finish("slow");
+            assertEquals("9999", journal.getCheckpoint());
+            for (int i = 10_000; i < 20_000; i++) {
+                String id = String.valueOf(i);
+                journal.start(id);
+                journal.finish(id);
+            }
+            // the recovery does not depend on the amount of the finished websites
+            assertTrue(Files.readAllLines(file).size() <= 200);
+        }
+
+        assertEquals(1, Files.readAllLines(file).size());
+        try (ProgressJournal journal = new ProgressJournal(file)) {
+            assertEquals("19999", journal.getCheckpoint());
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package jt.upwork.crawler;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+
+    private static final int PAGES = 20;
+    private static final PageExtractor EXTRACTOR = ExtractionEngine.STREAMING.extractor();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpLogging() {
+        Logger.getLogger("jt.upwork.crawler").setLevel(Level.WARNING);
+    }
+
+    @Test
+    public void testRecrawl() throws IOException {
+
+        String directory = folder.newFolder("cache").toString();
+
+        try (LocalSiteServer server = createServer()) {
+
+            Set<String> first = crawl(server, directory);
+            assertEquals(PAGES, first.size());
+            assertEquals(0, server.getNotModified());
+
+            // the cache is reopened from the disk, all the pages are not modified
+            Set<String> second = crawl(server, directory);
+            assertEquals(first, second);
+            assertEquals(PAGES + 1, server.getNotModified());
+
+            // the changed page is downloaded again
+            server.page("/page0", "<html><body><p>changed@example.com</p></body></html>");
+            Set<String> third = crawl(server, directory);
+            assertTrue(third.contains("changed@example.com"));
+            assertFalse(third.contains("page0@example.com"));
+            assertEquals(2 * PAGES + 1, server.getNotModified());
+        }
+    }
+
+    @Test
+    public void testHitRatio() throws IOException {
+
+        try (LocalSiteServer server = createServer();
+             ResponseCache cache = new ResponseCache(folder.newFolder("cache").toPath(), 1024 * 1024)) {
+
+            Page page = fetch(server, "/page1");
+            assertNull(cache.lookup(page.getUrl()));
+            cache.store(page, EXTRACTOR.extract(page));
+
+            ResponseCache.Entry entry = cache.lookup(page.getUrl());
+            assertNotNull(entry);
+            assertEquals(page.getEtag(), entry.getEtag());
+            assertEquals(Collections.singleton("page1@example.com"), entry.getContent().getEmails());
+            cache.hit(page.getUrl(), entry);
+
+            assertEquals(2, cache.getLookups());
+            assertEquals(1, cache.getHits());
+            assertEquals(0.5, cache.getHitRatio(), 0.001);
+            assertEquals(page.getBody().length(), cache.getBytesSaved());
+        }
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+
+        Path directory = folder.newFolder("cache").toPath();
+        final long maxBytes = 8 * 1024;
+
+        try (LocalSiteServer server = createServer()) {
+            StringBuilder big = new StringBuilder("<html><body>");
+            for (int i = 0; i < 50; i++) {
+                big.append("<a href='/some/long/link/of/the/big/page/").append(i).append("'>Link</a>");
+            }
+            server.generator(path -> big + "<p>" + path.substring(1) + "@example.com</p></body></html>");
+
+            try (ResponseCache cache = new ResponseCache(directory, maxBytes)) {
+                for (int i = 0; i < 100; i++) {
+                    Page page = fetch(server, "/big" + i);
+                    cache.store(page, EXTRACTOR.extract(page));
+                }
+                // the oldest pages are evicted, the latest are kept
+                assertNull(cache.lookup(server.url("/big0")));
+                assertNotNull(cache.lookup(server.url("/big99")));
+            }
+            assertTrue("Too big cache: " + size(directory), size(directory) <= maxBytes * 2);
+
+            try (ResponseCache cache = new ResponseCache(directory, maxBytes)) {
+                assertNull(cache.lookup(server.url("/big0")));
+                ResponseCache.Entry entry = cache.lookup(server.url("/big99"));
+                assertNotNull(entry);
+                assertEquals(Collections.singleton("big99@example.com"), entry.getContent().getEmails());
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+
+        // the small cache evicts its segments while the workers read and write them
+        try (ResponseCache cache = new ResponseCache(folder.newFolder("cache").toPath(), 64 * 1024)) {
+            ExecutorService workers = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int worker = 0; worker < 8; worker++) {
+                int first = worker * 1000;
+                futures.add(workers.submit(() -> {
+                    for (int i = first; i < first + 1000; i++) {
+                        URL url = UrlUtils.makeUrl("http://example.com/page" + i).get();
+                        cache.store(new Page(url, 200, "text/html", "<html></html>", "\"" + i + "\"", null),
+                                new PageContent(Collections.singleton("page" + i + "@example.com"),
+                                        Collections.nCopies(10, "http://example.com/link" + i)));
+                        URL previous = UrlUtils.makeUrl("http://example.com/page" + (i - 5)).get();
+                        ResponseCache.Entry entry = cache.lookup(previous);
+                        if (entry != null) {
+                            assertEquals(Collections.singleton("page" + (i - 5) + "@example.com"),
+                                    entry.getContent().getEmails());
+                            cache.hit(previous, entry);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            workers.shutdown();
+
+            URL url = UrlUtils.makeUrl("http://example.com/last").get();
+            cache.store(new Page(url, 200, "text/html", "<html></html>", "\"last\"", null),
+                    new PageContent(Collections.singleton("last@example.com"), Collections.emptyList()));
+            ResponseCache.Entry entry = cache.lookup(url);
+            assertNotNull(entry);
+            assertEquals("\"last\"", entry.getEtag());
+            assertTrue(cache.getHits() > 0);
+        }
+    }
+
+    @Test
+    public void testBrokenSegment() throws IOException {
+
+        Path directory = folder.newFolder("cache").toPath();
+
+        try (LocalSiteServer server = createServer()) {
+            try (ResponseCache cache = new ResponseCache(directory, 1024 * 1024)) {
+                for (String path : Arrays.asList("/page1", "/page2")) {
+                    Page page = fetch(server, path);
+                    cache.store(page, EXTRACTOR.extract(page));
+                }
+            }
+
+            // the crash in the middle of the last record
+            Path segment;
+            try (Stream<Path> files = Files.list(directory)) {
+                segment = files.findFirst().get();
+            }
+            byte[] bytes = Files.readAllBytes(segment);
+            Files.write(segment, Arrays.copyOf(bytes, bytes.length - 3));
+
+            try (ResponseCache cache = new ResponseCache(directory, 1024 * 1024)) {
+                assertNotNull(cache.lookup(server.url("/page1")));
+                assertNull(cache.lookup(server.url("/page2")));
+            }
+        }
+    }
+
+    private static LocalSiteServer createServer() throws IOException {
+        LocalSiteServer server = new LocalSiteServer().validators(true);
+        StringBuilder root = new StringBuilder("<html><body>");
+        for (int i = 0; i < PAGES; i++) {
+            root.append("<a href='/page").append(i).append("'>Page</a>");
+            server.page("/page" + i, "<html><body><p>page" + i + "@example.com</p></body></html>");
+        }
+        server.page("/", root.append("</body></html>").toString());
+        return server;
+    }
+
+    private static Page fetch(LocalSiteServer server, String path) {
+        try (Fetcher fetcher = new HttpClientFetcher(new CrawlerConfig())) {
+            return fetcher.fetch(server.url(path)).join();
+        }
+    }
+
+    private static Set<String> crawl(LocalSiteServer server, String directory) {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(PAGES);
+        config.setMaxInheritance(1);
+        config.setHostMaxConcurrency(0);
+        config.setHostMinDelayMills(0);
+        config.setCacheDirectory(directory);
+
+        Map<String, Set<String>> results = new ConcurrentHashMap<>();
+        try (Crawler crawler = new Crawler(config)) {
+            crawler.crawl(new WebSite("0", server.url("/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+            assertTrue(crawler.await(60, TimeUnit.SECONDS));
+        }
+        return results.get("0");
+    }
+
+    private static long size(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package jt.upwork.crawler;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ResultWriterTest {
+
+    private static final String OUTCOME_SQL = "UPDATE outcome SET email = ? WHERE id = ?";
+
+    private static final int ROWS = 20000;
+
+    private BasicDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:outcome;DB_CLOSE_DELAY=-1");
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE outcome (id VARCHAR(16) PRIMARY KEY, email VARCHAR(255))");
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO outcome (id) VALUES (?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                statement.setString(1, String.valueOf(i));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE outcome");
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void testBatchedWriting() throws InterruptedException, SQLException {
+
+        long rowsPerSecond;
+
+        try (ResultWriter writer = new ResultWriter(dataSource, OUTCOME_SQL, 500, 100, 1000, 3, 10)) {
+            writer.start();
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(String.valueOf(i), "info" + i + "@example.com");
+            }
+            writer.close();
+
+            assertEquals(ROWS, writer.getWrittenRows());
+            assertEquals(0, writer.getFailedRows());
+            rowsPerSecond = Math.round(writer.getRowsPerSecond());
+        }
+
+        System.out.printf("Result writer: %d rows/s%n", rowsPerSecond);
+
+        assertEquals(ROWS, countWritten());
+    }
+
+    @Test
+    public void testFailedBatchRetried() throws InterruptedException, SQLException {
+
+        AtomicInteger failures = new AtomicInteger(2);
+
+        // the first two connections fail
+        BasicDataSource failing = new BasicDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (failures.getAndDecrement() > 0) {
+                    throw new SQLException("Connection refused");
+                }
+                return ResultWriterTest.this.dataSource.getConnection();
+            }
+        };
+
+        try (ResultWriter writer = new ResultWriter(failing, OUTCOME_SQL, 10, 50, 100, 2, 10)) {
+            writer.start();
+            for (int i = 0; i < 10; i++) {
+                writer.write(String.valueOf(i), "info" + i + "@example.com");
+            }
+            writer.close();
+
+            assertEquals(10, writer.getWrittenRows());
+            assertEquals(0, writer.getFailedRows());
+        }
+
+        assertEquals(10, countWritten());
+    }
+
+    @Test
+    public void testFailedRowsNotReported() throws InterruptedException {
+
+        // the database is down during the whole run
+        BasicDataSource failing = new BasicDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                throw new SQLException("Connection refused");
+            }
+        };
+
+        AtomicInteger written = new AtomicInteger();
+        try (ResultWriter writer = new ResultWriter(failing, OUTCOME_SQL, 10, 50, 100, 2, 10,
+                id -> written.incrementAndGet())) {
+            writer.start();
+            for (int i = 0; i < 10; i++) {
+                writer.write(String.valueOf(i), "info" + i + "@example.com");
+            }
+            writer.close();
+
+            assertEquals(0, writer.getWrittenRows());
+            assertEquals(10, writer.getFailedRows());
+        }
+
+        // the rows are left unfinished to be crawled again after the restart
+        assertEquals(0, written.get());
+    }
+
+    @Test
+    public void testBadRowIsolated() throws InterruptedException, SQLException {
+
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        // the emails of the row 5 do not fit the column
+        try (ResultWriter writer = new ResultWriter(dataSource, OUTCOME_SQL, 10, 50, 100, 1, 10, written::add)) {
+            writer.start();
+            for (int i = 0; i < 10; i++) {
+                writer.write(String.valueOf(i), i == 5 ? "x".repeat(300) : "info" + i + "@example.com");
+            }
+            writer.close();
+
+            assertEquals(9, writer.getWrittenRows());
+            assertEquals(1, writer.getFailedRows());
+        }
+
+        assertEquals(9, written.size());
+        assertFalse(written.contains("5"));
+        assertEquals(9, countWritten());
+    }
+
+    private int countWritten() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM outcome WHERE email IS NOT NULL")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+}
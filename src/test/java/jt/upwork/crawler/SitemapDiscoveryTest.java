@@ -0,0 +1,146 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SitemapDiscoveryTest {
+
+    @Test
+    public void testParseRobots() {
+        String robots = "User-agent: *\r\nDisallow: /admin # private\r\n\r\n" +
+                "SITEMAP: http://example.com/sitemap_index.xml\nsitemap:http://example.com/pages.xml.gz\n" +
+                "# Sitemap: http://example.com/commented.xml\nSitemap:\n";
+        assertEquals(Arrays.asList("http://example.com/sitemap_index.xml", "http://example.com/pages.xml.gz"),
+                SitemapDiscovery.parseRobots(robots));
+    }
+
+    @Test
+    public void testScanGzipped() throws IOException {
+
+        byte[] index = gzip("<?xml version='1.0' encoding='UTF-8'?>" +
+                "<sitemapindex xmlns='http://www.sitemaps.org/schemas/sitemap/0.9'>" +
+                "<sitemap><loc> http://example.com/pages.xml </loc><lastmod>2020-01-01</lastmod></sitemap>" +
+                "</sitemapindex>");
+        List<String> locations = new ArrayList<>();
+        SitemapDiscovery.scan(index, 0, (location, sitemap) -> locations.add(sitemap + " " + location));
+        assertEquals(Collections.singletonList("true http://example.com/pages.xml"), locations);
+
+        // the unpacked sitemap is cut at the limit, the locations before it are delivered
+        byte[] sitemap = gzip(sitemap("http://example.com", 10_000, "/en/contact"));
+        assertTrue(sitemap.length < 100_000);
+        locations.clear();
+        try {
+            SitemapDiscovery.scan(sitemap, 100_000, (location, nested) -> locations.add(location));
+            fail("The sitemap must be cut");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(locations.size() > 500);
+        assertTrue(locations.size() < 10_000);
+        assertEquals("http://example.com/blog/post-0", locations.get(1));
+    }
+
+    @Test
+    public void testContactPagesFirst() throws IOException {
+
+        try (LocalSiteServer server = new LocalSiteServer().generator(SitemapDiscoveryTest::deepPage)) {
+
+            String site = String.format("http://127.0.0.1:%d", server.url("/").getPort());
+            server.resource("/robots.txt", "text/plain",
+                    ("User-agent: *\nDisallow:\nSitemap: " + site + "/sitemap_index.xml.gz\n")
+                            .getBytes(StandardCharsets.UTF_8));
+            server.resource("/sitemap_index.xml.gz", "application/x-gzip", gzip(
+                    "<sitemapindex xmlns='http://www.sitemaps.org/schemas/sitemap/0.9'>" +
+                            "<sitemap><loc>" + site + "/post-sitemap.xml</loc></sitemap>" +
+                            "<sitemap><loc>" + site + "/page-sitemap.xml.gz</loc></sitemap>" +
+                            "<sitemap><loc>http://other.example.com/page-sitemap.xml</loc></sitemap>" +
+                            "</sitemapindex>"));
+            server.resource("/post-sitemap.xml", "application/xml",
+                    sitemap(site, 500, "http://other.example.com/contact").getBytes(StandardCharsets.UTF_8));
+            server.resource("/page-sitemap.xml.gz", "application/x-gzip",
+                    gzip(sitemap(site, 100, "/p2/p2/p2/contact")));
+
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                int linksOnly = crawl(server, mode, false);
+                int discovered = crawl(server, mode, true);
+                System.out.printf("%s mode: %d requests following the links, %d with the sitemaps%n",
+                        mode, linksOnly, discovered);
+                // robots.txt, 3 sitemaps, the contact page and the root requested with it
+                assertTrue(discovered <= 6);
+                assertTrue(discovered < linksOnly);
+            }
+        }
+    }
+
+    private static int crawl(LocalSiteServer server, ExecutionMode mode, boolean discovery) {
+        CrawlerConfig config = new CrawlerConfig();
+        config.setMaxLinksForPage(3);
+        config.setMaxInheritance(4);
+        config.setMaxEmailsPerSite(1);
+        config.setHostMinDelayMills(0);
+        config.setHostMaxConcurrency(1);
+        config.setExecutionMode(mode);
+        config.setSitemapDiscovery(discovery);
+
+        int requestsBefore = server.getRequests();
+        Map<String, Set<String>> results = new ConcurrentHashMap<>();
+        try (Crawler crawler = new Crawler(config)) {
+            crawler.crawl(new WebSite("0", server.url("/")), (webSite, emails) -> results.put(webSite.getId(), emails));
+            assertTrue(crawler.await(30, TimeUnit.SECONDS));
+        }
+        assertEquals(Collections.singleton("office@example.com"), results.get("0"));
+        return server.getRequests() - requestsBefore;
+    }
+
+    // every page links to 3 subpages without emails, the contact page is linked from the deep one only
+    private static String deepPage(String path) {
+        if (path.endsWith("/contact")) {
+            return "<html><body><p>office@example.com</p></body></html>";
+        }
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 3; i++) {
+            html.append("<a href='").append(path).append("p").append(i).append("/'>Page</a>");
+        }
+        if (path.equals("/p2/p2/p2/")) {
+            html.append("<a href='/p2/p2/p2/contact'>Write us</a>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    private static String sitemap(String site, int posts, String contact) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>" +
+                "<urlset xmlns='http://www.sitemaps.org/schemas/sitemap/0.9'>");
+        xml.append("<url><loc>").append(site).append("/</loc></url>");
+        for (int i = 0; i < posts; i++) {
+            xml.append("<url><loc>").append(site).append("/blog/post-").append(i)
+                    .append("</loc><lastmod>2020-01-01</lastmod><priority>0.5</priority></url>");
+        }
+        xml.append("<url><loc>").append(contact.startsWith("/") ? site + contact : contact).append("</loc></url>");
+        return xml.append("</urlset>").toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+}
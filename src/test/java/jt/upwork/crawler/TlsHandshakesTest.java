@@ -0,0 +1,31 @@
+package jt.upwork.crawler;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+
+public class TlsHandshakesTest {
+
+    @Test
+    public void testClaimedByHost() {
+
+        TlsHandshakes handshakes = new TlsHandshakes();
+
+        // the http client creates an engine for every new connection
+        handshakes.getContext().createSSLEngine("Example.com", 443);
+        handshakes.getContext().createSSLEngine("example.com", 443);
+        handshakes.getContext().createSSLEngine("example.com", 8443);
+        handshakes.getContext().createSSLEngine("other.com", 443);
+
+        assertEquals(2, handshakes.claim(URI.create("https://example.com/contact")));
+        // the reused connections cost nothing
+        assertEquals(0, handshakes.claim(URI.create("https://example.com/about")));
+        assertEquals(1, handshakes.claim(URI.create("https://EXAMPLE.com:8443/")));
+        assertEquals(0, handshakes.claim(URI.create("http://other.com/")));
+        assertEquals(1, handshakes.claim(URI.create("https://other.com/")));
+        assertEquals(4, handshakes.getTotal());
+    }
+
+}